@@ -0,0 +1,132 @@
+package bench;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Handles on the game's classes
+ *
+ * The game lives in the default package, which Java code in a package
+ * cannot name, and JMH will not generate benchmarks outside one. So
+ * each call goes through a constant method handle, typed with Object
+ * for the game's classes, which the JIT inlines like a direct call.
+ */
+
+final class App {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    private static final Class<?> BOARD = load("Board");
+    private static final Class<?> ENGINE = load("LifeEngine");
+    private static final Class<?> RULE = load("Rule");
+    private static final Class<?> HASHLIFE = load("HashLife");
+    private static final Class<?> SAVEFILE = load("SaveFile");
+    private static final Class<?> PIXELS = load("BoardPixels");
+
+    // LifeEngine
+    static final MethodHandle NEW_ENGINE = constructor(ENGINE, int.class, int.class);
+    static final MethodHandle SET_RULE = virtual(ENGINE, "setRule", void.class, RULE);
+    static final MethodHandle SET_POOL = virtual(ENGINE, "setPool", void.class, ForkJoinPool.class);
+    static final MethodHandle SET_VECTORIZED = virtual(ENGINE, "setVectorized", void.class, boolean.class);
+    static final MethodHandle SET_TRACK_COUNTS = virtual(ENGINE, "setTrackCounts", void.class, boolean.class);
+    static final MethodHandle RANDOMIZE = virtual(ENGINE, "randomize", void.class, long.class, double.class);
+    static final MethodHandle STEP = virtual(ENGINE, "step", void.class);
+    static final MethodHandle COUNT_NEIGHBORS = virtual(ENGINE, "countNeighbors", int.class, int.class, int.class);
+    static final MethodHandle GET_COUNT = virtual(ENGINE, "getCount", int.class, int.class, int.class);
+    static final MethodHandle POPULATION = virtual(ENGINE, "population", long.class);
+
+    // Rule
+    static final MethodHandle PARSE_RULE = statik(RULE, "parse", RULE, String.class);
+
+    // HashLife
+    static final MethodHandle NEW_HASHLIFE = constructor(HASHLIFE, RULE, int.class);
+    static final MethodHandle LOAD = virtual(HASHLIFE, "load", void.class, ENGINE);
+    static final MethodHandle JUMP = virtual(HASHLIFE, "jump", void.class, long.class);
+
+    // SaveFile
+    static final MethodHandle WRITE = statik(SAVEFILE, "write", void.class, File.class, BOARD);
+    static final MethodHandle READ = statik(SAVEFILE, "read", ENGINE, File.class);
+
+    // BoardPixels
+    static final int COLORS = constant(PIXELS, "COLORS");
+    static final MethodHandle NEW_PIXELS = constructor(PIXELS, ENGINE);
+    static final MethodHandle SET_PALETTE = virtual(PIXELS, "setPalette", void.class, int[].class);
+    static final MethodHandle SET_SHOW_GROWTH = virtual(PIXELS, "setShowGrowth", void.class, boolean.class);
+    static final MethodHandle FILL = virtual(PIXELS, "fill", void.class,
+            int[].class, int.class, int.class, double.class, double.class, double.class);
+
+    private App() {
+    }
+
+    /**
+     * Return a new board filled with a random soup
+     */
+    static Object soup(int width, int height, double density, String rule) throws Throwable {
+        Object board = (Object) NEW_ENGINE.invokeExact(width, height);
+        SET_RULE.invokeExact(board, (Object) PARSE_RULE.invokeExact(rule));
+        RANDOMIZE.invokeExact(board, 1L, density);
+        return board;
+    }
+
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Game class " + name + " is not on the class path", e);
+        }
+    }
+
+    private static MethodHandle constructor(Class<?> type, Class<?>... params) {
+        try {
+            return erase(LOOKUP.findConstructor(type, MethodType.methodType(void.class, params)));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle virtual(Class<?> type, String name, Class<?> result, Class<?>... params) {
+        try {
+            return erase(LOOKUP.findVirtual(type, name, MethodType.methodType(result, params)));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle statik(Class<?> type, String name, Class<?> result, Class<?>... params) {
+        try {
+            return erase(LOOKUP.findStatic(type, name, MethodType.methodType(result, params)));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int constant(Class<?> type, String name) {
+        try {
+            return type.getField(name).getInt(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Replace the game's classes with Object in a handle's type, so callers can invoke it exactly
+     */
+    private static MethodHandle erase(MethodHandle handle) {
+        MethodType type = handle.type();
+        for (int i = 0; i < type.parameterCount(); i++)
+            if (isGame(type.parameterType(i)))
+                type = type.changeParameterType(i, Object.class);
+        if (isGame(type.returnType()))
+            type = type.changeReturnType(Object.class);
+        return handle.asType(type);
+    }
+
+    private static boolean isGame(Class<?> type) {
+        return type == BOARD || type == ENGINE || type == RULE || type == HASHLIFE || type == SAVEFILE || type == PIXELS;
+    }
+}
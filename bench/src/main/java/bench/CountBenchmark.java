@@ -0,0 +1,70 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Cost of neighbor counts for the number and growth overlays
+ *
+ * Compares counting every cell again after a step, as the overlays
+ * once did, with stepping while the engine keeps the counts itself.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CountBenchmark {
+
+    @Param({"32", "256", "1024"})
+    private int size;
+
+    @Param({"0.35"})
+    private double density;
+
+    private Object board;
+    private Object tracked;
+
+    @Setup(Level.Iteration)
+    public void reset() throws Throwable {
+        board = App.soup(size, size, density, "B3/S23");
+        tracked = App.soup(size, size, density, "B3/S23");
+        App.SET_TRACK_COUNTS.invokeExact(tracked, true);
+    }
+
+    @Benchmark
+    public long stepAndCount() throws Throwable {
+        App.STEP.invokeExact(board);
+        long sum = 0;
+        for (int row = 0; row < size; row++)
+            for (int col = 0; col < size; col++)
+                sum += (int) App.COUNT_NEIGHBORS.invokeExact(board, row, col);
+        return sum;
+    }
+
+    @Benchmark
+    public long stepTracked() throws Throwable {
+        App.STEP.invokeExact(tracked);
+        long sum = 0;
+        for (int row = 0; row < size; row++)
+            for (int col = 0; col < size; col++)
+                sum += (int) App.GET_COUNT.invokeExact(tracked, row, col);
+        return sum;
+    }
+}
@@ -0,0 +1,68 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Generations per second of HashLife jumping a fresh soup
+ *
+ * Every jump starts from an empty cache, so nothing is remembered
+ * from the last one. Comparable with StepBenchmark, though HashLife
+ * gets much faster once a soup settles.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashLifeBenchmark {
+
+    private static final int GENERATIONS = 1024;
+    private static final int MAXNODES = 1 << 22;
+
+    @Param({"32", "256", "1024"})
+    private int size;
+
+    @Param({"0.35"})
+    private double density;
+
+    @Param({"B3/S23", "B36/S23"})
+    private String rule;
+
+    private Object board;
+    private Object hashLife;
+
+    @Setup(Level.Trial)
+    public void soup() throws Throwable {
+        board = App.soup(size, size, density, rule);
+    }
+
+    @Setup(Level.Invocation)
+    public void load() throws Throwable {
+        hashLife = (Object) App.NEW_HASHLIFE.invokeExact((Object) App.PARSE_RULE.invokeExact(rule), MAXNODES);
+        App.LOAD.invokeExact(hashLife, board);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GENERATIONS)
+    public void jump() throws Throwable {
+        App.JUMP.invokeExact(hashLife, (long) GENERATIONS);
+    }
+}
@@ -0,0 +1,68 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Frames per second of a full board repaint
+ *
+ * Fills the largest view, 1024x768, zoomed so the whole board shows,
+ * which is what every refresh after a step costs. The image upload
+ * and canvas draw need JavaFX running and are not included.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+
+    private static final int WIDTH = 1024;
+    private static final int HEIGHT = 768;
+
+    @Param({"32", "256", "1024", "4096"})
+    private int size;
+
+    @Param({"false", "true"})
+    private boolean growth;
+
+    private Object frame;
+    private double cellSize;
+    private int[] pixels = new int[WIDTH * HEIGHT];
+
+    @Setup
+    public void setup() throws Throwable {
+        Object board = App.soup(size, size, 0.35, "B3/S23");
+        App.SET_TRACK_COUNTS.invokeExact(board, growth);
+        for (int i = 0; i < 16; i++)
+            App.STEP.invokeExact(board);
+        frame = (Object) App.NEW_PIXELS.invokeExact(board);
+        int[] palette = new int[App.COLORS];
+        for (int i = 0; i < palette.length; i++)
+            palette[i] = 0xff000000 | i * 0x151515;
+        App.SET_PALETTE.invokeExact(frame, palette);
+        App.SET_SHOW_GROWTH.invokeExact(frame, growth);
+        cellSize = (double) HEIGHT / size;
+    }
+
+    @Benchmark
+    public int[] fill() throws Throwable {
+        App.FILL.invokeExact(frame, pixels, WIDTH, HEIGHT, 0.0, 0.0, cellSize);
+        return pixels;
+    }
+}
@@ -0,0 +1,67 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Time to save and load a board through SaveFile
+ *
+ * Boards go to a temporary file, so the results include the file
+ * system, though the file is usually still in the page cache.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SaveBenchmark {
+
+    @Param({"256", "1024", "4096"})
+    private int size;
+
+    private Object board;
+    private File saved;
+    private File scratch;
+
+    @Setup
+    public void setup() throws Throwable {
+        board = App.soup(size, size, 0.35, "B3/S23");
+        saved = File.createTempFile("life", ".sav");
+        scratch = File.createTempFile("life", ".sav");
+        App.WRITE.invokeExact(saved, board);
+    }
+
+    @TearDown
+    public void delete() throws IOException {
+        saved.delete();
+        scratch.delete();
+    }
+
+    @Benchmark
+    public void save() throws Throwable {
+        App.WRITE.invokeExact(scratch, board);
+    }
+
+    @Benchmark
+    public Object load() throws Throwable {
+        return (Object) App.READ.invokeExact(saved);
+    }
+}
@@ -0,0 +1,80 @@
+package bench;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Generations per second of the packed engine
+ *
+ * Each iteration starts again from the same soup, so boards that
+ * would settle and sleep are measured while still mostly active.
+ * Forks add the Vector API module so dense rows can be vectorized.
+ * Multiply by size squared for cells per second.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class StepBenchmark {
+
+    @Param({"32", "256", "1024", "4096", "8192"})
+    private int size;
+
+    @Param({"0.1", "0.35", "0.5"})
+    private double density;
+
+    @Param({"B3/S23", "B36/S23"})
+    private String rule;
+
+    @Param({"serial", "parallel"})
+    private String engine;
+
+    @Param({"true", "false"})
+    private boolean vector;
+
+    private ForkJoinPool pool;
+    private Object board;
+
+    @Setup(Level.Trial)
+    public void startPool() {
+        if (engine.equals("parallel"))
+            pool = new ForkJoinPool();
+    }
+
+    @Setup(Level.Iteration)
+    public void reset() throws Throwable {
+        board = App.soup(size, size, density, rule);
+        App.SET_POOL.invokeExact(board, pool);
+        App.SET_VECTORIZED.invokeExact(board, vector);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopPool() {
+        if (pool != null)
+            pool.shutdown();
+    }
+
+    @Benchmark
+    public void step() throws Throwable {
+        App.STEP.invokeExact(board);
+    }
+}
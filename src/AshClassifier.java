@@ -0,0 +1,368 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Names the objects left on a board once a soup has settled
+ *
+ * Live cells within two cells of each other, wrapping at the edges, make
+ * up an object. If its parts that touch corner to corner are each objects
+ * on their own, eg. two blocks side by side, those are counted instead.
+ *
+ * Each object is run alone on an unbounded plane until it repeats, which
+ * tells a still life from an oscillator, or a spaceship if it moved. It
+ * is named like Catagolue's apgcodes, eg. xs4_33 for a block, xp2_7 for
+ * a blinker or xq4_153 for a glider: the kind and period or population,
+ * then its cells in extended Wechsler format, picking the shortest then
+ * first of every phase and orientation. Objects too big to write out are
+ * named ov_ with just the kind and period or population, and ones that
+ * don't repeat alone zz_UNKNOWN.
+ *
+ * Names are remembered by the cells of an object, so common ash is only
+ * run once. Not thread safe, so each searching thread has its own.
+ */
+
+public class AshClassifier {
+
+    public static final String UNKNOWN = "zz_UNKNOWN";
+
+    // Most generations an object is run alone to find its period
+    private static final int MAXPERIOD = 256;
+
+    // Largest side written out in a name, and of an object run alone
+    private static final int MAXSIDE = 40;
+    private static final int MAXGROWTH = 256;
+
+    // Most names remembered before starting over
+    private static final int MAXNAMES = 1 << 16;
+
+    private static final String DIGITS = "0123456789abcdefghijklmnopqrstuvwxyz";
+
+    private final Rule rule;
+
+    // Names by the cells of an object alone, and of an object with its parts
+    private final HashMap<String, String> names = new HashMap<>();
+    private final HashMap<String, String[]> objects = new HashMap<>();
+
+    // Cells already in an object, marked with the pass that found them
+    private int[] seen = new int[0];
+    private int pass = 0;
+
+    // Cells of the object being found, not wrapped
+    private int[] rows = new int[0];
+    private int[] cols = new int[0];
+
+    public AshClassifier(Rule rule) {
+        if (!SparseBoard.fits(rule))
+            throw new IllegalArgumentException("B0 rules can't be classified: " + rule);
+        this.rule = rule;
+    }
+
+    /**
+     * Name every object on a board and count them in census
+     */
+    public void classify(LifeEngine board, Census census) {
+        int width = board.getWidth();
+        int height = board.getHeight();
+        if (seen.length != width * height) {
+            seen = new int[width * height];
+            rows = new int[width * height];
+            cols = new int[width * height];
+            pass = 0;
+        }
+        if (++pass == Integer.MAX_VALUE) {
+            java.util.Arrays.fill(seen, 0);
+            pass = 1;
+        }
+        long[] row = new long[board.getWords()];
+        for (int r = 0; r < height; r++) {
+            board.getRow(r, row);
+            for (int w = 0; w < row.length; w++)
+                for (long bits = row[w]; bits != 0; bits &= bits - 1) {
+                    int c = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    if (seen[r * width + c] == pass)
+                        continue;
+                    int size = flood(board, r, c);
+                    for (String name : namesOf(Shape.of(rows, cols, size)))
+                        census.add(name);
+                }
+        }
+    }
+
+    /**
+     * Find the cells within two cells of a live cell and each other, returning how many
+     */
+    private int flood(LifeEngine board, int row, int col) {
+        int width = board.getWidth();
+        int height = board.getHeight();
+        rows[0] = row;
+        cols[0] = col;
+        seen[row * width + col] = pass;
+        int size = 1;
+        for (int k = 0; k < size; k++)
+            for (int i = -2; i <= 2; i++)
+                for (int j = -2; j <= 2; j++) {
+                    int r = rows[k] + i;
+                    int c = cols[k] + j;
+                    int wrappedRow = Math.floorMod(r, height);
+                    int wrappedCol = Math.floorMod(c, width);
+                    int index = wrappedRow * width + wrappedCol;
+                    if (seen[index] != pass && board.get(wrappedRow, wrappedCol)) {
+                        seen[index] = pass;
+                        rows[size] = r;
+                        cols[size] = c;
+                        size++;
+                    }
+                }
+        return size;
+    }
+
+    /**
+     * Return the names to count for an object, its parts' if they are objects alone
+     */
+    private String[] namesOf(Shape whole) {
+        String[] found = objects.get(whole.key);
+        if (found != null)
+            return found;
+        List<Shape> parts = whole.parts();
+        if (parts.size() > 1) {
+            found = new String[parts.size()];
+            for (int i = 0; i < found.length; i++) {
+                found[i] = name(parts.get(i));
+                if (found[i].equals(UNKNOWN)) {
+                    found = null;
+                    break;
+                }
+            }
+        }
+        if (found == null)
+            found = new String[] {name(whole)};
+        if (objects.size() >= MAXNAMES)
+            objects.clear();
+        objects.put(whole.key, found);
+        return found;
+    }
+
+    /**
+     * Return the name of an object, running it alone to find its period
+     */
+    private String name(Shape shape) {
+        String name = names.get(shape.key);
+        if (name != null)
+            return name;
+        SparseBoard plane = new SparseBoard();
+        plane.setRule(rule);
+        for (int y = 0; y < shape.height; y++)
+            for (int x = 0; x < shape.width; x++)
+                if (shape.get(x, y) != 0)
+                    plane.set(y, x, true);
+        List<Shape> phases = new ArrayList<>();
+        phases.add(shape);
+        name = UNKNOWN;
+        for (int t = 1; t <= MAXPERIOD; t++) {
+            plane.step();
+            Shape next = Shape.of(plane);
+            if (next == null || next.height > MAXGROWTH || next.width > MAXGROWTH)
+                break;
+            if (next.key.equals(shape.key)) {
+                String kind = next.top != 0 || next.left != 0 ? "q" + t : t == 1 ? "s" + shape.population : "p" + t;
+                String cells = canonical(phases);
+                name = cells == null ? "ov_" + kind : "x" + kind + "_" + cells;
+                break;
+            }
+            phases.add(next);
+        }
+        if (names.size() >= MAXNAMES)
+            names.clear();
+        names.put(shape.key, name);
+        return name;
+    }
+
+    /**
+     * Return the shortest then first Wechsler code of any phase in any orientation, or null if all are too big
+     */
+    private static String canonical(List<Shape> phases) {
+        String best = null;
+        for (Shape s : phases) {
+            if (s.width > MAXSIDE || s.height > MAXSIDE)
+                continue;
+            int w = s.width;
+            int h = s.height;
+            best = better(best, wechsler(s, w, h, 0, 0, 1, 0, 0, 1));
+            best = better(best, wechsler(s, w, h, w - 1, 0, -1, 0, 0, 1));
+            best = better(best, wechsler(s, w, h, 0, h - 1, 1, 0, 0, -1));
+            best = better(best, wechsler(s, w, h, w - 1, h - 1, -1, 0, 0, -1));
+            best = better(best, wechsler(s, h, w, 0, 0, 0, 1, 1, 0));
+            best = better(best, wechsler(s, h, w, w - 1, 0, 0, -1, 1, 0));
+            best = better(best, wechsler(s, h, w, 0, h - 1, 0, 1, -1, 0));
+            best = better(best, wechsler(s, h, w, w - 1, h - 1, 0, -1, -1, 0));
+        }
+        return best;
+    }
+
+    private static String better(String a, String b) {
+        if (a == null || b.length() < a.length())
+            return b;
+        if (b.length() > a.length())
+            return a;
+        return b.compareTo(a) < 0 ? b : a;
+    }
+
+    /**
+     * Write cells in extended Wechsler format, in strips five cells deep,
+     * stepping (a, c) along a strip and (b, d) across it from (ox, oy)
+     */
+    private static String wechsler(Shape s, int length, int breadth, int ox, int oy, int a, int b, int c, int d) {
+        StringBuilder code = new StringBuilder();
+        for (int v = 0; v <= (breadth - 1) / 5; v++) {
+            if (v != 0)
+                code.append('z');
+            int zeroes = 0;
+            for (int u = 0; u < length; u++) {
+                int column = 0;
+                for (int w = 0; w < 5; w++) {
+                    int x = ox + a * u + b * (5 * v + w);
+                    int y = oy + c * u + d * (5 * v + w);
+                    column = (column >> 1) + 16 * s.get(x, y);
+                }
+                if (column == 0) {
+                    zeroes++;
+                    continue;
+                }
+                // Runs of empty columns are written short
+                for (; zeroes > 39; zeroes -= 39)
+                    code.append("yz");
+                if (zeroes == 1)
+                    code.append('0');
+                else if (zeroes == 2)
+                    code.append('w');
+                else if (zeroes == 3)
+                    code.append('x');
+                else if (zeroes > 3)
+                    code.append('y').append(DIGITS.charAt(zeroes - 4));
+                zeroes = 0;
+                code.append(DIGITS.charAt(column));
+            }
+        }
+        return code.toString();
+    }
+
+    // Cells of an object in their bounding box, with a key that's the same for the same cells anywhere
+    private static final class Shape {
+        private final int top;
+        private final int left;
+        private final int height;
+        private final int width;
+        private final int words;
+        private final long[] bits;
+        private final int population;
+        private final String key;
+
+        private Shape(int top, int left, int height, int width, long[] bits) {
+            this.top = top;
+            this.left = left;
+            this.height = height;
+            this.width = width;
+            this.bits = bits;
+            words = (width + 63) >>> 6;
+            int count = 0;
+            StringBuilder text = new StringBuilder().append(height).append('x').append(width);
+            for (long word : bits) {
+                count += Long.bitCount(word);
+                text.append(':').append(Long.toHexString(word));
+            }
+            population = count;
+            key = text.toString();
+        }
+
+        /**
+         * Make a shape from the first size cells given
+         */
+        static Shape of(int[] rows, int[] cols, int size) {
+            int top = Integer.MAX_VALUE;
+            int left = Integer.MAX_VALUE;
+            int bottom = Integer.MIN_VALUE;
+            int right = Integer.MIN_VALUE;
+            for (int k = 0; k < size; k++) {
+                top = Math.min(top, rows[k]);
+                bottom = Math.max(bottom, rows[k]);
+                left = Math.min(left, cols[k]);
+                right = Math.max(right, cols[k]);
+            }
+            int height = bottom - top + 1;
+            int width = right - left + 1;
+            int words = (width + 63) >>> 6;
+            long[] bits = new long[height * words];
+            for (int k = 0; k < size; k++) {
+                int x = cols[k] - left;
+                bits[(rows[k] - top) * words + (x >>> 6)] |= 1L << x;
+            }
+            return new Shape(top, left, height, width, bits);
+        }
+
+        /**
+         * Make a shape from the live cells on a plane, or null if there are none
+         */
+        static Shape of(SparseBoard plane) {
+            if (plane.population() == 0)
+                return null;
+            int top = plane.getTop();
+            int left = plane.getLeft();
+            int height = plane.getBottom() - top + 1;
+            int width = plane.getRight() - left + 1;
+            if (height > MAXGROWTH || width > MAXGROWTH)
+                return new Shape(top, left, height, width, new long[0]);
+            int words = (width + 63) >>> 6;
+            long[] bits = new long[height * words];
+            for (int y = 0; y < height; y++)
+                for (int x = 0; x < width; x++)
+                    if (plane.get(top + y, left + x))
+                        bits[y * words + (x >>> 6)] |= 1L << x;
+            return new Shape(top, left, height, width, bits);
+        }
+
+        /**
+         * Return 1 if the cell at column x and row y is alive, 0 if dead or outside
+         */
+        int get(int x, int y) {
+            if (x < 0 || y < 0 || x >= width || y >= height)
+                return 0;
+            return (int) (bits[y * words + (x >>> 6)] >>> x & 1L);
+        }
+
+        /**
+         * Split into parts whose cells touch, corner to corner at least
+         */
+        List<Shape> parts() {
+            int[] part = new int[height * width];
+            int[] rows = new int[population];
+            int[] cols = new int[population];
+            List<Shape> parts = new ArrayList<>();
+            for (int y = 0; y < height; y++)
+                for (int x = 0; x < width; x++) {
+                    if (get(x, y) == 0 || part[y * width + x] != 0)
+                        continue;
+                    part[y * width + x] = parts.size() + 1;
+                    rows[0] = y;
+                    cols[0] = x;
+                    int size = 1;
+                    for (int k = 0; k < size; k++)
+                        for (int i = -1; i <= 1; i++)
+                            for (int j = -1; j <= 1; j++) {
+                                int r = rows[k] + i;
+                                int c = cols[k] + j;
+                                if (get(c, r) != 0 && part[r * width + c] == 0) {
+                                    part[r * width + c] = parts.size() + 1;
+                                    rows[size] = r;
+                                    cols[size] = c;
+                                    size++;
+                                }
+                            }
+                    parts.add(of(rows, cols, size));
+                }
+            return parts;
+        }
+    }
+}
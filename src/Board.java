@@ -0,0 +1,108 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * @author Quinn Brittain
+ *
+ * A wrapping board of packed rows, stepped a generation at a time
+ *
+ * Rows are longs of 64 cells, bit b of word w being column w * 64 + b.
+ * Saving, loading and batch runs only go through this, so they work the
+ * same for a LifeEngine on the heap or an OffHeapBoard too big for it.
+ */
+
+public interface Board {
+
+    int getWidth();
+
+    int getHeight();
+
+    /**
+     * Return how many longs hold a row, 64 cells to a long
+     */
+    int getWords();
+
+    long getGeneration();
+
+    void setGeneration(long generation);
+
+    Rule getRule();
+
+    void setRule(Rule rule);
+
+    /**
+     * Set the pool used to step bands of rows in parallel, or null to step on the calling thread
+     */
+    void setPool(ForkJoinPool pool);
+
+    /**
+     * Step with the Vector API if available, or every word one at a time
+     */
+    void setVectorized(boolean vectorized);
+
+    boolean isVectorized();
+
+    /**
+     * Copy a row of packed cells
+     */
+    void getRow(int row, long[] dest);
+
+    /**
+     * Replace a row of packed cells
+     */
+    void setRow(int row, long[] src);
+
+    /**
+     * Copy a row of one bit plane of the death counts, plane 0 is the lowest bit
+     */
+    void getDeathRow(int row, int plane, long[] dest);
+
+    /**
+     * Replace a row of one bit plane of the death counts
+     */
+    void setDeathRow(int row, int plane, long[] src);
+
+    /**
+     * Fill the board with random cells, each alive with chance density, row by row as randomRow gives
+     */
+    void randomize(long seed, double density);
+
+    /**
+     * Fill a row of packed cells at random, the same for the same seed and row on any board
+     * of the same width, however it is kept or split
+     */
+    static void randomRow(long seed, double density, long row, int width, long[] dest) {
+        if (density < 0 || density > 1)
+            throw new IllegalArgumentException("Density must be 0 to 1");
+        SplittableRandom random = new SplittableRandom(seed * 0x9E3779B97F4A7C15L + row);
+        int words = (width + 63) >>> 6;
+        for (int w = 0; w < words; w++) {
+            long word = 0;
+            if (density == 0.5) {
+                word = random.nextLong();
+            } else {
+                for (int bit = 0; bit < 64; bit++)
+                    if (random.nextDouble() < density)
+                        word |= 1L << bit;
+            }
+            dest[w] = word;
+        }
+        if ((width & 63) != 0)
+            dest[words - 1] &= -1L >>> (64 - (width & 63));
+    }
+
+    /**
+     * Count the live cells on the board
+     */
+    long population();
+
+    /**
+     * Return how many tiles were stepped last generation
+     */
+    int getActiveTiles();
+
+    /**
+     * Advance the board one generation
+     */
+    void step();
+}
@@ -0,0 +1,130 @@
+/**
+ * @author Quinn Brittain
+ *
+ * Fills ARGB pixels for a view of a LifeEngine board
+ *
+ * Kept apart from BoardView so a frame can be drawn, and timed,
+ * without starting JavaFX.
+ */
+
+public class BoardPixels {
+
+    // Palette indexes
+    public static final int LIVE = 0;
+    public static final int GRID = 1;
+    public static final int DEATH = 2;
+    public static final int GROWTH = DEATH + LifeEngine.MAX_DEATHS + 1;
+    public static final int COLORS = GROWTH + 3;
+
+    private LifeEngine board;
+
+    // Palette as ARGB colors
+    private int[] palette = new int[COLORS];
+    private boolean showGrid = true;
+    private boolean showGrowth = false;
+
+    // Board column and grid line for each pixel column
+    private int[] colOf = new int[0];
+    private boolean[] gridCol = new boolean[0];
+
+    public BoardPixels(LifeEngine board) {
+        this.board = board;
+    }
+
+    public void setBoard(LifeEngine board) {
+        this.board = board;
+    }
+
+    /**
+     * Set the ARGB colors by palette index
+     */
+    public void setPalette(int[] palette) {
+        System.arraycopy(palette, 0, this.palette, 0, COLORS);
+    }
+
+    public void setShowGrid(boolean showGrid) {
+        this.showGrid = showGrid;
+    }
+
+    public void setShowGrowth(boolean showGrowth) {
+        this.showGrowth = showGrowth;
+    }
+
+    /**
+     * Fill a w by h frame showing the board from a top left position and zoom
+     */
+    public void fill(int[] pixels, int w, int h, double originRow, double originCol, double cellSize) {
+        if (colOf.length != w) {
+            colOf = new int[w];
+            gridCol = new boolean[w];
+        }
+        boolean grid = showGrid && cellSize >= 4;
+        for (int x = 0; x < w; x++) {
+            colOf[x] = wrap(originCol + x / cellSize, board.getWidth());
+            gridCol[x] = grid && onGridLine(originCol, x, cellSize);
+        }
+
+        int lastRow = -1;
+        for (int y = 0; y < h; y++) {
+            int offset = y * w;
+            int row = wrap(originRow + y / cellSize, board.getHeight());
+            if (grid && onGridLine(originRow, y, cellSize)) {
+                java.util.Arrays.fill(pixels, offset, offset + w, palette[GRID]);
+                lastRow = -1;
+            } else if (row == lastRow) {
+                System.arraycopy(pixels, offset - w, pixels, offset, w);
+            } else {
+                fillRow(pixels, row, offset, w);
+                lastRow = row;
+            }
+        }
+    }
+
+    /**
+     * Fill one line of pixels from a board row
+     */
+    private void fillRow(int[] pixels, int row, int offset, int w) {
+        int lastCol = -1;
+        int color = 0;
+        for (int x = 0; x < w; x++) {
+            if (gridCol[x]) {
+                pixels[offset + x] = palette[GRID];
+                continue;
+            }
+            int col = colOf[x];
+            if (col != lastCol) {
+                color = cellColor(row, col);
+                lastCol = col;
+            }
+            pixels[offset + x] = color;
+        }
+    }
+
+    /**
+     * Return the color of a cell
+     */
+    public int cellColor(int row, int col) {
+        boolean alive = board.get(row, col);
+        if (showGrowth) {
+            int growth = board.getGrowth(row, col);
+            if (growth != 1)
+                return palette[GROWTH + growth];
+        }
+        return alive ? palette[LIVE] : palette[DEATH + board.getDeaths(row, col)];
+    }
+
+    /**
+     * Return the board row or column at a position, which wraps around
+     */
+    private static int wrap(double pos, int dim) {
+        return Math.floorMod((long) Math.floor(pos), dim);
+    }
+
+    /**
+     * Return true if a pixel lies on the first line of a cell
+     */
+    private static boolean onGridLine(double origin, int pixel, double cellSize) {
+        double pos = origin + pixel / cellSize;
+        return (pos - Math.floor(pos)) * cellSize < 1;
+    }
+}
@@ -0,0 +1,268 @@
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+
+import java.util.Objects;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Draws a LifeEngine board into one image
+ *
+ * Each frame is written as ARGB pixels from a palette by BoardPixels,
+ * so repainting costs one pass over the visible pixels no matter the
+ * board size.
+ * Scroll to zoom, drag with the right or middle button to pan.
+ */
+
+public class BoardView extends Canvas {
+
+    // Limits of zoom in pixels per cell
+    private static final double MINCELL = 1.0 / 64;
+    private static final double MAXCELL = 64;
+
+    private LifeEngine board;
+    private BoardPixels frame;
+
+    // Palette as ARGB colors, and the names they were made from
+    private int[] palette = new int[BoardPixels.COLORS];
+    private String[] paletteNames = new String[BoardPixels.COLORS];
+    private boolean showNumbers = false;
+
+    // Neighbor count labels, and their font at the current zoom
+    private static final String[] DIGITS = {"0", "1", "2", "3", "4", "5", "6", "7", "8"};
+    private Font numberFont;
+
+    // Top left board position and zoom
+    private double cellSize;
+    private double originRow = 0;
+    private double originCol = 0;
+
+    // Frame buffer, and how long the last frame took
+    private WritableImage image;
+    private int[] pixels = new int[0];
+    private long drawNanos = 0;
+
+    // Pan drag start
+    private double dragX;
+    private double dragY;
+
+    public BoardView(LifeEngine board, double cellSize) {
+        this.board = board;
+        this.cellSize = cellSize;
+        frame = new BoardPixels(board);
+        setOnScroll(this::handleScroll);
+        addEventHandler(MouseEvent.MOUSE_PRESSED, this::handlePanStart);
+        addEventHandler(MouseEvent.MOUSE_DRAGGED, this::handlePan);
+    }
+
+    /**
+     * Show a different board, moving back to its top left
+     */
+    public void setBoard(LifeEngine board) {
+        this.board = board;
+        frame.setBoard(board);
+        originRow = 0;
+        originCol = 0;
+        draw();
+    }
+
+    /**
+     * Show a copy of the board, eg. from a running Simulation, without moving
+     */
+    public void show(LifeEngine copy) {
+        board = copy;
+        frame.setBoard(copy);
+        draw();
+    }
+
+    public LifeEngine getBoard() {
+        return board;
+    }
+
+    /**
+     * Return how long the last draw took
+     */
+    public long getDrawNanos() {
+        return drawNanos;
+    }
+
+    /**
+     * Set the colors used for each cell state, only parsing colors that changed
+     */
+    public void setPalette(String liveColor, String[] deathColor, String[] growthColor, String gridColor) {
+        boolean changed = setColor(BoardPixels.LIVE, liveColor);
+        changed |= setColor(BoardPixels.GRID, gridColor);
+        for (int i = 0; i <= LifeEngine.MAX_DEATHS; i++)
+            changed |= setColor(BoardPixels.DEATH + i, deathColor[i]);
+        for (int i = 0; i < 3; i++)
+            changed |= setColor(BoardPixels.GROWTH + i, growthColor[i]);
+        if (changed)
+            frame.setPalette(palette);
+    }
+
+    /**
+     * Set one palette color by name, or transparent for null, returning whether it changed
+     */
+    private boolean setColor(int index, String name) {
+        if (Objects.equals(name, paletteNames[index]))
+            return false;
+        paletteNames[index] = name;
+        palette[index] = name == null ? 0 : argb(name);
+        return true;
+    }
+
+    public void setShowGrid(boolean showGrid) {
+        frame.setShowGrid(showGrid);
+    }
+
+    public void setShowGrowth(boolean showGrowth) {
+        frame.setShowGrowth(showGrowth);
+    }
+
+    public void setShowNumbers(boolean showNumbers) {
+        this.showNumbers = showNumbers;
+    }
+
+    /**
+     * Return board row under a y coordinate
+     */
+    public int rowAt(double y) {
+        return Math.floorMod((long) Math.floor(originRow + y / cellSize), board.getHeight());
+    }
+
+    /**
+     * Return board column under an x coordinate
+     */
+    public int colAt(double x) {
+        return Math.floorMod((long) Math.floor(originCol + x / cellSize), board.getWidth());
+    }
+
+    @Override
+    public boolean isResizable() {
+        return true;
+    }
+
+    @Override
+    public double prefWidth(double height) {
+        return Math.min(board.getWidth() * cellSize, 1024);
+    }
+
+    @Override
+    public double prefHeight(double width) {
+        return Math.min(board.getHeight() * cellSize, 768);
+    }
+
+    @Override
+    public void resize(double width, double height) {
+        setWidth(width);
+        setHeight(height);
+        draw();
+    }
+
+    /**
+     * Draw the visible part of the board
+     */
+    public void draw() {
+        int w = (int) getWidth();
+        int h = (int) getHeight();
+        if (w <= 0 || h <= 0)
+            return;
+        long start = System.nanoTime();
+        if (image == null || image.getWidth() != w || image.getHeight() != h) {
+            image = new WritableImage(w, h);
+            pixels = new int[w * h];
+        }
+        frame.fill(pixels, w, h, originRow, originCol, cellSize);
+        image.getPixelWriter().setPixels(0, 0, w, h, PixelFormat.getIntArgbInstance(), pixels, 0, w);
+
+        GraphicsContext gc = getGraphicsContext2D();
+        gc.drawImage(image, 0, 0);
+        if (showNumbers && cellSize >= 12)
+            drawNumbers(gc, w, h);
+        drawNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Write the live neighbor count over each visible cell
+     */
+    private void drawNumbers(GraphicsContext gc, int w, int h) {
+        if (numberFont == null || numberFont.getSize() != cellSize * 0.666)
+            numberFont = Font.font(cellSize * 0.666);
+        gc.setFont(numberFont);
+        gc.setTextAlign(TextAlignment.CENTER);
+        gc.setTextBaseline(VPos.CENTER);
+        double startY = (Math.floor(originRow) - originRow) * cellSize;
+        double startX = (Math.floor(originCol) - originCol) * cellSize;
+        for (double y = startY; y < h; y += cellSize)
+            for (double x = startX; x < w; x += cellSize) {
+                int row = rowAt(y + cellSize / 2);
+                int col = colAt(x + cellSize / 2);
+                int back = frame.cellColor(row, col);
+                gc.setFill(luminance(back) > 0.5 ? Color.BLACK : Color.WHITE);
+                gc.fillText(DIGITS[board.getCount(row, col)], x + cellSize / 2, y + cellSize / 2);
+            }
+    }
+
+    /**
+     * Zoom in or out around the mouse
+     */
+    private void handleScroll(ScrollEvent e) {
+        double factor = e.getDeltaY() > 0 ? 1.25 : 0.8;
+        double newSize = Math.max(MINCELL, Math.min(MAXCELL, cellSize * factor));
+        originRow += e.getY() / cellSize - e.getY() / newSize;
+        originCol += e.getX() / cellSize - e.getX() / newSize;
+        cellSize = newSize;
+        wrapOrigin();
+        draw();
+    }
+
+    private void handlePanStart(MouseEvent e) {
+        dragX = e.getX();
+        dragY = e.getY();
+    }
+
+    /**
+     * Pan with the right or middle mouse button
+     */
+    private void handlePan(MouseEvent e) {
+        if (e.getButton() != MouseButton.SECONDARY && e.getButton() != MouseButton.MIDDLE)
+            return;
+        originCol -= (e.getX() - dragX) / cellSize;
+        originRow -= (e.getY() - dragY) / cellSize;
+        dragX = e.getX();
+        dragY = e.getY();
+        wrapOrigin();
+        draw();
+    }
+
+    /**
+     * Keep the origin on the board, since it wraps around
+     */
+    private void wrapOrigin() {
+        originRow = floorMod(originRow, board.getHeight());
+        originCol = floorMod(originCol, board.getWidth());
+    }
+
+    private static double floorMod(double value, int dim) {
+        return value - Math.floor(value / dim) * dim;
+    }
+
+    private static int argb(String color) {
+        Color c = Color.web(color);
+        return (int) Math.round(c.getOpacity() * 255) << 24 | (int) Math.round(c.getRed() * 255) << 16
+                | (int) Math.round(c.getGreen() * 255) << 8 | (int) Math.round(c.getBlue() * 255);
+    }
+
+    private static double luminance(int argb) {
+        return (0.299 * (argb >> 16 & 0xff) + 0.587 * (argb >> 8 & 0xff) + 0.114 * (argb & 0xff)) / 255;
+    }
+}
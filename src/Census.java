@@ -0,0 +1,94 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Counts of the objects left by soups, by name
+ *
+ * Threads add to it at once while searching, so counts are adders that
+ * don't fight over one number for common objects like blocks.
+ */
+
+public class Census {
+
+    private final ConcurrentHashMap<String, LongAdder> counts = new ConcurrentHashMap<>();
+    private final LongAdder soups = new LongAdder();
+    private final LongAdder unsettled = new LongAdder();
+
+    /**
+     * Count one object
+     */
+    public void add(String name) {
+        counts.computeIfAbsent(name, key -> new LongAdder()).increment();
+    }
+
+    /**
+     * Count a soup searched, and whether it settled
+     */
+    public void addSoup(boolean settled) {
+        soups.increment();
+        if (!settled)
+            unsettled.increment();
+    }
+
+    public long getSoups() {
+        return soups.sum();
+    }
+
+    /**
+     * Return how many soups hadn't settled by the most generations
+     */
+    public long getUnsettled() {
+        return unsettled.sum();
+    }
+
+    /**
+     * Return how many objects were counted
+     */
+    public long getObjects() {
+        long total = 0;
+        for (LongAdder count : counts.values())
+            total += count.sum();
+        return total;
+    }
+
+    /**
+     * Return how many different objects were counted
+     */
+    public int getDistinct() {
+        return counts.size();
+    }
+
+    /**
+     * Return the objects and their counts, most common first
+     */
+    public List<Map.Entry<String, Long>> sorted() {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>();
+        for (Map.Entry<String, LongAdder> entry : counts.entrySet())
+            entries.add(Map.entry(entry.getKey(), entry.getValue().sum()));
+        entries.sort((a, b) -> !a.getValue().equals(b.getValue())
+                ? Long.compare(b.getValue(), a.getValue()) : a.getKey().compareTo(b.getKey()));
+        return entries;
+    }
+
+    /**
+     * Write the counts as CSV, most common first
+     */
+    public void write(File file) throws IOException {
+        try (PrintStream out = new PrintStream(new FileOutputStream(file))) {
+            out.println("object,count");
+            for (Map.Entry<String, Long> entry : sorted())
+                out.println(entry.getKey() + "," + entry.getValue());
+            if (out.checkError())
+                throw new IOException("Could not write census: " + file);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Saves checkpoints of a board on a thread of its own while it keeps stepping
+ *
+ * Whatever thread owns the board calls capture() between generations.
+ * When a checkpoint is due, every so many seconds or once asked for, the
+ * board is copied into a spare kept for it, which is only the cost of
+ * copying its arrays, and the copy is handed to the writer thread. The
+ * stepping thread never waits: if the last checkpoint is still being
+ * written, capture() tries again next generation.
+ *
+ * Checkpoints are written as game saves, see SaveFile, first to a file
+ * next to the checkpoint and synced to disk, then renamed over it in one
+ * step, the one before kept as name.1. A crash part way through leaves
+ * the last whole checkpoint in place, and recover() reads back the newest
+ * one that is whole.
+ *
+ * A checkpoint or save that can't be written is passed to the error
+ * handler on the writer thread, with the file it was for.
+ */
+
+public class Checkpointer {
+
+    // Checkpoint, the one before it, and the one being written
+    private final Path path;
+    private final Path previous;
+    private final Path partial;
+
+    // Time between checkpoints, 0 for only when asked, and when the last was taken
+    private volatile long intervalNanos = 0;
+    private volatile long last = System.nanoTime();
+    private volatile boolean requested = false;
+
+    // Copy of the board being written, free to capture into once idle is acquired
+    private final Semaphore idle = new Semaphore(1);
+    private LifeEngine copy;
+
+    // What the last checkpoint written was, or why it failed
+    private volatile long savedGeneration = -1;
+    private volatile IOException error;
+    private volatile BiConsumer<File, IOException> onError = (file, ex) -> ex.printStackTrace();
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "Checkpoint");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public Checkpointer(File file) {
+        path = file.getAbsoluteFile().toPath();
+        previous = sibling(path, ".1");
+        partial = sibling(path, ".tmp");
+    }
+
+    private static Path sibling(Path path, String suffix) {
+        return path.resolveSibling(path.getFileName() + suffix);
+    }
+
+    public File getFile() {
+        return path.toFile();
+    }
+
+    /**
+     * Set seconds between checkpoints, or 0 to only take them when asked
+     */
+    public void setInterval(long seconds) {
+        if (seconds < 0)
+            throw new IllegalArgumentException("Seconds between checkpoints can't be negative");
+        intervalNanos = seconds * 1_000_000_000L;
+        last = System.nanoTime();
+    }
+
+    public long getInterval() {
+        return intervalNanos / 1_000_000_000L;
+    }
+
+    /**
+     * Set what is told of a checkpoint or save that couldn't be written, called on the writer thread
+     */
+    public void setOnError(BiConsumer<File, IOException> onError) {
+        this.onError = onError;
+    }
+
+    /**
+     * Ask for a checkpoint at the next capture()
+     */
+    public void request() {
+        requested = true;
+    }
+
+    /**
+     * Return whether a checkpoint is asked for or its time has come
+     */
+    public boolean isDue() {
+        long interval = intervalNanos;
+        return requested || interval > 0 && System.nanoTime() - last >= interval;
+    }
+
+    /**
+     * Copy the board to be written if a checkpoint is due and the last is done,
+     * returning whether it was, called by the thread that owns the board
+     */
+    public boolean capture(LifeEngine board) {
+        if (!isDue() || !idle.tryAcquire())
+            return false;
+        if (copy == null || copy.getWidth() != board.getWidth() || copy.getHeight() != board.getHeight())
+            copy = new LifeEngine(board.getWidth(), board.getHeight());
+        board.copyTo(copy);
+        requested = false;
+        last = System.nanoTime();
+        LifeEngine snapshot = copy;
+        writer.execute(() -> {
+            try {
+                write(snapshot);
+            } finally {
+                idle.release();
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Take a checkpoint now, for when the board isn't stepping, without waiting: if the last is
+     * still being written the board is copied on its own and written after it
+     */
+    public void checkpoint(LifeEngine board) {
+        request();
+        if (capture(board))
+            return;
+        LifeEngine snapshot = new LifeEngine(board.getWidth(), board.getHeight());
+        board.copyTo(snapshot);
+        requested = false;
+        last = System.nanoTime();
+        writer.execute(() -> write(snapshot));
+    }
+
+    /**
+     * Copy the board and write it to a file of its own on the writer thread, as a pattern
+     * if named like one
+     */
+    public void save(LifeEngine board, File file) {
+        LifeEngine snapshot = new LifeEngine(board.getWidth(), board.getHeight());
+        board.copyTo(snapshot);
+        writer.execute(() -> {
+            try {
+                PatternFile.write(file, snapshot);
+            } catch (IOException ex) {
+                onError.accept(file, ex);
+            }
+        });
+    }
+
+    /**
+     * Wait for the checkpoint being written from the spare, if any
+     */
+    public void await() {
+        idle.acquireUninterruptibly();
+        idle.release();
+    }
+
+    /**
+     * Wait for everything asked to be written, then stop the writer thread
+     */
+    public void close() {
+        await();
+        writer.shutdown();
+        while (!writer.isTerminated())
+            try {
+                writer.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+    }
+
+    /**
+     * Return the generation of the last checkpoint written, or -1 if none yet
+     */
+    public long getSavedGeneration() {
+        return savedGeneration;
+    }
+
+    /**
+     * Return why the last checkpoint couldn't be written, or null if it was
+     */
+    public IOException getError() {
+        return error;
+    }
+
+    /**
+     * Write a copy to the side, sync it, then rename it over the checkpoint
+     */
+    private void write(LifeEngine snapshot) {
+        try {
+            try (FileOutputStream out = new FileOutputStream(partial.toFile())) {
+                SaveFile.write(out, snapshot);
+                out.getFD().sync();
+            }
+            if (Files.exists(path))
+                Files.move(path, previous, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(partial, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory();
+            savedGeneration = snapshot.getGeneration();
+            error = null;
+        } catch (IOException ex) {
+            error = ex;
+            onError.accept(path.toFile(), ex);
+        }
+    }
+
+    /**
+     * Sync the directory so the renames last, where the platform allows it
+     */
+    private void syncDirectory() {
+        try (FileChannel directory = FileChannel.open(path.getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException ex) {
+            // Not every platform can open a directory, the renames still happened
+        }
+    }
+
+    /**
+     * Read back the newest whole checkpoint, the last or the one before, or null if neither can be read
+     */
+    public static LifeEngine recover(File file) {
+        Path path = file.getAbsoluteFile().toPath();
+        for (Path candidate : new Path[] {path, sibling(path, ".1")}) {
+            if (!Files.isRegularFile(candidate))
+                continue;
+            try {
+                return SaveFile.read(candidate.toFile());
+            } catch (IOException | RuntimeException ex) {
+                System.err.println("Skipping checkpoint " + candidate + ": " + ex.getMessage());
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * @author Quinn Brittain
+ *
+ * Spots a board settling into a cycle, from the hash of each generation
+ *
+ * Hashes of the last few generations are kept in a ring, and in a
+ * table from hash to the newest generation with it. Once a generation
+ * has the same hash as one before, every generation after repeats too,
+ * so the board has settled: a board that died out or a still life has
+ * period 1, an oscillator or a spaceship going round a wrapping board
+ * its own period. As each generation is checked, the first repeat found
+ * gives both the shortest period and the generation the cycle started.
+ *
+ * Generations have to be recorded one after another with the same rule,
+ * otherwise it starts over. Nothing is allocated after it is made, so
+ * it can check every generation of a soup search.
+ */
+
+public class CycleDetector {
+
+    // Generations looked back over unless told otherwise, and so the longest period found
+    public static final int WINDOW = 1024;
+
+    // Hash of each generation, at its generation modulo window
+    private final int window;
+    private final long[] ring;
+
+    // Table from hash to the newest generation with it, -1 where empty,
+    // stale generations left in it until too few places are free
+    private final long[] keys;
+    private final long[] generations;
+    private int used = 0;
+
+    // First generation recorded, and the one expected next
+    private long first = -1;
+    private long expected = -1;
+    private Rule rule;
+
+    // Period and first generation of the cycle, once found
+    private long period = 0;
+    private long start = -1;
+
+    public CycleDetector() {
+        this(WINDOW);
+    }
+
+    /**
+     * Look back over window generations, finding periods up to window
+     */
+    public CycleDetector(int window) {
+        if (window < 1 || window > 1 << 24)
+            throw new IllegalArgumentException("Window must be 1 to 2^24 generations");
+        this.window = window;
+        ring = new long[window];
+        keys = new long[Integer.highestOneBit(window * 4 - 1) << 1];
+        generations = new long[keys.length];
+        java.util.Arrays.fill(generations, -1L);
+    }
+
+    /**
+     * Record the board's generation, returning whether it has settled into a cycle
+     */
+    public boolean record(LifeEngine board) {
+        return record(board.getGeneration(), board.getHash(), board.getRule());
+    }
+
+    /**
+     * Record the hash of a generation, returning whether it has settled into a cycle
+     */
+    public boolean record(long generation, long hash, Rule rule) {
+        if (generation != expected || !rule.equals(this.rule)) {
+            reset();
+            this.rule = rule;
+            first = generation;
+        } else if (period > 0) {
+            expected++;
+            return true;
+        }
+        expected = generation + 1;
+        ring[(int) (generation % window)] = hash;
+        long before = put(hash, generation);
+        if (before >= 0 && before > generation - window) {
+            period = generation - before;
+            start = before;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Forget every generation recorded
+     */
+    public void reset() {
+        java.util.Arrays.fill(generations, -1L);
+        used = 0;
+        first = -1;
+        expected = -1;
+        rule = null;
+        period = 0;
+        start = -1;
+    }
+
+    public boolean isSettled() {
+        return period > 0;
+    }
+
+    /**
+     * Return the generations between repeats, or 0 if not settled
+     */
+    public long getPeriod() {
+        return period;
+    }
+
+    /**
+     * Return the first generation of the cycle, which every generation a period later repeats, or -1
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * Put the generation of a hash in the table, returning the generation it replaced, or -1
+     */
+    private long put(long hash, long generation) {
+        if (used >= keys.length / 2)
+            rebuild(generation);
+        int mask = keys.length - 1;
+        for (int slot = slot(hash); ; slot = (slot + 1) & mask) {
+            if (generations[slot] < 0) {
+                keys[slot] = hash;
+                generations[slot] = generation;
+                used++;
+                return -1;
+            }
+            if (keys[slot] == hash) {
+                long before = generations[slot];
+                generations[slot] = generation;
+                return before;
+            }
+        }
+    }
+
+    /**
+     * Fill the table again from the ring, leaving out generations too old to matter
+     */
+    private void rebuild(long generation) {
+        java.util.Arrays.fill(generations, -1L);
+        used = 0;
+        int mask = keys.length - 1;
+        for (long g = Math.max(first, generation - window + 1); g < generation; g++) {
+            long hash = ring[(int) (g % window)];
+            int slot = slot(hash);
+            while (generations[slot] >= 0 && keys[slot] != hash)
+                slot = (slot + 1) & mask;
+            if (generations[slot] < 0)
+                used++;
+            keys[slot] = hash;
+            generations[slot] = g;
+        }
+    }
+
+    private int slot(long hash) {
+        long z = hash * 0x9E3779B97F4A7C15L;
+        return (int) (z >>> 32 ^ z) & (keys.length - 1);
+    }
+}
@@ -0,0 +1,348 @@
+import java.util.SplittableRandom;
+
+/**
+ * @author Quinn Brittain
+ *
+ * 64 boards of the same size stepped together, one bit each
+ *
+ * Each long holds one cell of every board, bit k being board k, so the
+ * bitwise adders LifeEngine runs along a row run across boards instead,
+ * and one pass steps all 64. The three cells in each column around a
+ * row are summed once and shared by the cells either side. Boards wrap
+ * at the edges, and all of them follow the same rule.
+ *
+ * Meant for studies of many small random boards, eg. how long soups last
+ * or how dense they end up. Boards can be loaded and taken out one at a
+ * time, and which boards are alive, changed or settled are kept as masks
+ * of 64 bits, so a study can stop once every board is done.
+ */
+
+public class Ensemble {
+
+    public static final int BOARDS = 64;
+
+    // Dimensions of every board
+    private final int width;
+    private final int height;
+
+    // Current and next generation, swapped after each step
+    private long[] cells;
+    private long[] next;
+
+    // Sum of the three cells in each column around the row being stepped, low and high bits,
+    // from one column before the first to one after the last so the edges wrap
+    private final long[] sum1;
+    private final long[] sum2;
+
+    // All ones where the rule has a cell born or stay alive with each count, and what changed in a row
+    private final long[] born = new long[9];
+    private final long[] stay = new long[9];
+    private final long[] changes = new long[2];
+
+    // Boards changed since one and two generations ago
+    private long changed = -1L;
+    private long changed2 = -1L;
+
+    // Steps until next holds the generation before, after boards were edited
+    private int fresh = 2;
+
+    private Rule rule = Rule.LIFE;
+    private long generation = 0;
+
+    public Ensemble(int width, int height) {
+        if (width < 1 || height < 1)
+            throw new IllegalArgumentException("Board must be at least 1x1");
+        if ((long) width * height > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Board is too large");
+        this.width = width;
+        this.height = height;
+        cells = new long[width * height];
+        next = new long[width * height];
+        sum1 = new long[width + 2];
+        sum2 = new long[width + 2];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public void setGeneration(long generation) {
+        this.generation = generation;
+    }
+
+    public Rule getRule() {
+        return rule;
+    }
+
+    public void setRule(Rule rule) {
+        this.rule = rule;
+        edited();
+    }
+
+    /**
+     * Return whether a cell of a board is alive
+     */
+    public boolean get(int board, int row, int col) {
+        return (cells[row * width + col] >>> board & 1L) != 0;
+    }
+
+    /**
+     * Set status of a cell of a board
+     */
+    public void set(int board, int row, int col, boolean status) {
+        if (status)
+            cells[row * width + col] |= 1L << board;
+        else
+            cells[row * width + col] &= ~(1L << board);
+        edited();
+    }
+
+    /**
+     * Copy the cells of a board of the same size into one board
+     */
+    public void load(int board, LifeEngine src) {
+        if (src.getWidth() != width || src.getHeight() != height)
+            throw new IllegalArgumentException("Boards must be the same size");
+        for (int row = 0; row < height; row++)
+            for (int col = 0; col < width; col++) {
+                long bit = src.get(row, col) ? 1L << board : 0;
+                cells[row * width + col] = cells[row * width + col] & ~(1L << board) | bit;
+            }
+        edited();
+    }
+
+    /**
+     * Copy one board out onto a board of its own, with the rule and generation
+     */
+    public LifeEngine toEngine(int board) {
+        LifeEngine engine = new LifeEngine(width, height);
+        for (int row = 0; row < height; row++)
+            for (int col = 0; col < width; col++)
+                if (get(board, row, col))
+                    engine.set(row, col, true);
+        engine.setRule(rule);
+        engine.setGeneration(generation);
+        return engine;
+    }
+
+    /**
+     * Fill every board with its own random cells, each alive with chance density
+     */
+    public void randomize(long seed, double density) {
+        if (density < 0 || density > 1)
+            throw new IllegalArgumentException("Density must be 0 to 1");
+        SplittableRandom random = new SplittableRandom(seed);
+        // Each bit is built from the binary digits of density, least first,
+        // or-ing in random bits for a one and and-ing for a zero
+        long digits = (long) (density * (1L << 32));
+        for (int i = 0; i < cells.length; i++) {
+            long word = density == 1 ? -1L : 0;
+            for (int d = Long.numberOfTrailingZeros(digits); d < 32; d++) {
+                long bits = random.nextLong();
+                word = (digits >>> d & 1) != 0 ? word | bits : word & bits;
+            }
+            cells[i] = word;
+        }
+        generation = 0;
+        edited();
+    }
+
+    /**
+     * Return a mask of the boards with any live cells
+     */
+    public long getAlive() {
+        long alive = 0;
+        for (long word : cells)
+            alive |= word;
+        return alive;
+    }
+
+    /**
+     * Return a mask of the boards that changed last generation
+     */
+    public long getChanged() {
+        return changed;
+    }
+
+    /**
+     * Return a mask of the boards not the same as two generations ago,
+     * so boards left with still lifes and blinkers count as settled
+     */
+    public long getUnsettled() {
+        return changed2;
+    }
+
+    /**
+     * Return the live cells on each board, counted together with a bit plane per power of two
+     */
+    public long[] populations() {
+        long[] planes = new long[33];
+        for (long word : cells)
+            for (int p = 0; word != 0; p++) {
+                long carry = planes[p] & word;
+                planes[p] ^= word;
+                word = carry;
+            }
+        long[] counts = new long[BOARDS];
+        for (int p = 0; p < planes.length; p++)
+            for (long bits = planes[p]; bits != 0; bits &= bits - 1)
+                counts[Long.numberOfTrailingZeros(bits)] += 1L << p;
+        return counts;
+    }
+
+    /**
+     * Advance every board one generation
+     */
+    public void step() {
+        boolean life = rule.getBirth() == Rule.LIFE.getBirth() && rule.getSurvive() == Rule.LIFE.getSurvive();
+        if (!life)
+            for (int n = 0; n <= 8; n++) {
+                born[n] = (rule.getBirth() >>> n & 1) != 0 ? -1L : 0;
+                stay[n] = (rule.getSurvive() >>> n & 1) != 0 ? -1L : 0;
+            }
+        long diff = 0;
+        long diff2 = 0;
+        for (int row = 0; row < height; row++) {
+            int up = (row == 0 ? height - 1 : row - 1) * width;
+            int mid = row * width;
+            int down = (row == height - 1 ? 0 : row + 1) * width;
+
+            // Sum each column of three cells into two bits
+            for (int col = 0; col < width; col++) {
+                long u = cells[up + col];
+                long m = cells[mid + col];
+                long d = cells[down + col];
+                long x = u ^ m;
+                sum1[col + 1] = x ^ d;
+                sum2[col + 1] = (u & m) | (x & d);
+            }
+            sum1[0] = sum1[width];
+            sum2[0] = sum2[width];
+            sum1[width + 1] = sum1[1];
+            sum2[width + 1] = sum2[1];
+            long[] changes = life ? stepLife(up, mid, down) : stepRule(up, mid, down);
+            diff |= changes[0];
+            diff2 |= changes[1];
+        }
+        long[] swap = cells;
+        cells = next;
+        next = swap;
+        changed = diff;
+        changed2 = fresh > 1 ? -1L : diff2;
+        if (fresh > 0)
+            fresh--;
+        generation++;
+    }
+
+    /**
+     * Step a row by Life, whose cells live with 3 neighbors, or 2 if alive
+     */
+    private long[] stepLife(int up, int mid, int down) {
+        long diff = 0;
+        long diff2 = 0;
+        for (int col = 0; col < width; col++) {
+            long a1 = sum1[col];
+            long a2 = sum2[col];
+            long b1 = sum1[col + 2];
+            long b2 = sum2[col + 2];
+            long u = cells[up + col];
+            long d = cells[down + col];
+            long c1 = u ^ d;
+            long c2 = u & d;
+
+            // Add the columns, 8 wrapping to 0 as it dies either way
+            long s0 = a1 ^ b1 ^ c1;
+            long k1 = (a1 & b1) | (c1 & (a1 ^ b1));
+            long t1 = a2 ^ b2 ^ c2;
+            long t2 = (a2 & b2) | (c2 & (a2 ^ b2));
+            long s1 = t1 ^ k1;
+            long s2 = t2 ^ (t1 & k1);
+
+            long alive = cells[mid + col];
+            long result = s1 & ~s2 & (s0 | alive);
+            diff |= result ^ alive;
+            diff2 |= result ^ next[mid + col];
+            next[mid + col] = result;
+        }
+        changes[0] = diff;
+        changes[1] = diff2;
+        return changes;
+    }
+
+    /**
+     * Step a row by any rule, picking each cell's count out of the rule masks
+     */
+    private long[] stepRule(int up, int mid, int down) {
+        long diff = 0;
+        long diff2 = 0;
+        for (int col = 0; col < width; col++) {
+            long a1 = sum1[col];
+            long a2 = sum2[col];
+            long b1 = sum1[col + 2];
+            long b2 = sum2[col + 2];
+            long u = cells[up + col];
+            long d = cells[down + col];
+            long c1 = u ^ d;
+            long c2 = u & d;
+
+            // Add the columns into a four bit count
+            long s0 = a1 ^ b1 ^ c1;
+            long k1 = (a1 & b1) | (c1 & (a1 ^ b1));
+            long t1 = a2 ^ b2 ^ c2;
+            long t2 = (a2 & b2) | (c2 & (a2 ^ b2));
+            long s1 = t1 ^ k1;
+            long k2 = t1 & k1;
+            long s2 = t2 ^ k2;
+            long s3 = t2 & k2;
+
+            // Masks of the rule for the count of each cell alive or not, taking counts
+            // 0 to 3 from the low bits, then 0, 4 or 8 from the high bits
+            long alive = cells[mid + col];
+            long dead = ~alive;
+            long rule0 = born[0] & dead | stay[0] & alive;
+            long rule1 = born[1] & dead | stay[1] & alive;
+            long rule2 = born[2] & dead | stay[2] & alive;
+            long rule3 = born[3] & dead | stay[3] & alive;
+            long rule4 = born[4] & dead | stay[4] & alive;
+            long rule5 = born[5] & dead | stay[5] & alive;
+            long rule6 = born[6] & dead | stay[6] & alive;
+            long rule7 = born[7] & dead | stay[7] & alive;
+            long rule8 = born[8] & dead | stay[8] & alive;
+            long low = pick(s0, s1, rule0, rule1, rule2, rule3);
+            long high = pick(s0, s1, rule4, rule5, rule6, rule7);
+            long result = ~s2 & ~s3 & low | s2 & high | s3 & rule8;
+            diff |= result ^ alive;
+            diff2 |= result ^ next[mid + col];
+            next[mid + col] = result;
+        }
+        changes[0] = diff;
+        changes[1] = diff2;
+        return changes;
+    }
+
+    /**
+     * Return of four masks the one a two bit count picks, bit by bit
+     */
+    private static long pick(long s0, long s1, long m0, long m1, long m2, long m3) {
+        long even = m0 ^ (s0 & (m0 ^ m1));
+        long odd = m2 ^ (s0 & (m2 ^ m3));
+        return even ^ (s1 & (even ^ odd));
+    }
+
+    /**
+     * Mark what was kept about the last generations as unknown, after boards were changed
+     */
+    private void edited() {
+        changed = -1L;
+        changed2 = -1L;
+        fresh = 2;
+    }
+}
@@ -0,0 +1,364 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.BooleanSupplier;
+
+/**
+ * @author Quinn Brittain
+ *
+ * HashLife for jumping a board far ahead
+ *
+ * The board is a quadtree of canonical nodes, so repeated regions are
+ * stored and stepped only once, and each node remembers its future.
+ * A torus of size 2^k is stepped as a 2x2 tiling of itself, whose
+ * center is the torus shifted by half, so the edges wrap exactly.
+ *
+ * The cache is kept near maxNodes. It is cleared between jumps of a
+ * power of two once over, and a jump that would grow it past twice what
+ * is left, or maxNodes, is given up part way and tried again half as far.
+ * A jump can also be stopped part way, leaving the torus at the last
+ * power of two it reached.
+ */
+
+public class HashLife {
+
+    // Smallest torus level, 8x8
+    private static final int MINLEVEL = 3;
+
+    // Rows written to a board at a time
+    private static final int BAND = 64;
+
+    // Thrown out of result() to give up a jump part way, no stack trace as it is expected
+    private static final class GiveUp extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        GiveUp() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final GiveUp GIVEUP = new GiveUp();
+
+    private Rule rule;
+    private int maxNodes;
+
+    // Most nodes during the jump under way, and whether to stop it, checked every so many results
+    private int bound = Integer.MAX_VALUE;
+    private BooleanSupplier stopped = () -> false;
+    private int results = 0;
+
+    // Canonical nodes, and the empty node at each level
+    private HashMap<Node, Node> nodes = new HashMap<>();
+    private Node[] empty = new Node[64];
+    private Node on;
+    private Node off;
+
+    // Centers of every 4x4 after one generation, by packed cells
+    private Node[] base = new Node[1 << 16];
+
+    // Torus being stepped, and the board size it repeats
+    private Node root;
+    private int width;
+    private int height;
+    private long generation = 0;
+
+    public HashLife(Rule rule, int maxNodes) {
+        this.rule = rule;
+        this.maxNodes = maxNodes;
+        off = new Node(0, 0);
+        on = new Node(0, 1);
+        empty[0] = off;
+    }
+
+    /**
+     * Return true if a board can be stepped here, sides must be powers of two
+     */
+    public static boolean fits(LifeEngine board) {
+        return Integer.bitCount(board.getWidth()) == 1 && Integer.bitCount(board.getHeight()) == 1;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Return how many nodes are cached
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Read the torus from a board
+     */
+    public void load(LifeEngine board) {
+        if (!fits(board))
+            throw new IllegalArgumentException("Board sides must be powers of two");
+        width = board.getWidth();
+        height = board.getHeight();
+        int level = Math.max(MINLEVEL, Integer.numberOfTrailingZeros(Math.max(width, height)));
+        root = build(board, level, 0, 0);
+        generation = board.getGeneration();
+    }
+
+    /**
+     * Write the torus back to a board of the same size, a band of rows at a time
+     */
+    public void store(LifeEngine board) {
+        board.clear();
+        long[][] band = new long[BAND][board.getWords()];
+        for (int top = 0; top < height; top += BAND) {
+            for (long[] row : band)
+                Arrays.fill(row, 0L);
+            if (write(band, top, root, 0, 0))
+                for (int r = 0; r < BAND && top + r < height; r++)
+                    board.setRow(top + r, band[r]);
+        }
+        board.setGeneration(generation);
+    }
+
+    /**
+     * Advance the torus a number of generations
+     */
+    public void jump(long generations) {
+        jump(generations, () -> false);
+    }
+
+    /**
+     * Advance the torus a number of generations, or until stopped returns true,
+     * leaving it at the last power of two reached
+     */
+    public void jump(long generations, BooleanSupplier stopped) {
+        this.stopped = stopped;
+        int maxStep = root.level - 1;
+        try {
+            while (generations > 0 && !stopped.getAsBoolean()) {
+                int step = Math.min(maxStep, 63 - Long.numberOfLeadingZeros(generations));
+                if (nodes.size() > maxNodes)
+                    collect();
+                // A single generation can't be split, so it may go over
+                bound = step == 0 ? Integer.MAX_VALUE : Math.max(maxNodes, nodes.size() * 2);
+                Node center;
+                try {
+                    center = result(join(root, root, root, root), step);
+                } catch (GiveUp ex) {
+                    if (stopped.getAsBoolean())
+                        return;
+                    collect();
+                    maxStep = step - 1;
+                    continue;
+                }
+                root = join(center.se, center.sw, center.ne, center.nw);
+                generations -= 1L << step;
+                generation += 1L << step;
+            }
+        } finally {
+            bound = Integer.MAX_VALUE;
+            this.stopped = () -> false;
+        }
+    }
+
+    /**
+     * Drop every node not in the current torus, and all remembered futures
+     */
+    private void collect() {
+        HashMap<Node, Node> kept = new HashMap<>();
+        keep(root, kept);
+        for (Node n : empty)
+            if (n != null && n.level > 0)
+                keep(n, kept);
+        for (Node n : base)
+            if (n != null)
+                keep(n, kept);
+        nodes = kept;
+    }
+
+    private void keep(Node n, HashMap<Node, Node> kept) {
+        if (n.level == 0 || kept.containsKey(n))
+            return;
+        n.result = null;
+        kept.put(n, n);
+        keep(n.nw, kept);
+        keep(n.ne, kept);
+        keep(n.sw, kept);
+        keep(n.se, kept);
+    }
+
+    /**
+     * Build the node covering a square of the board, repeating the board to fill it
+     */
+    private Node build(LifeEngine board, int level, int row, int col) {
+        if (level == 0)
+            return board.get(row % height, col % width) ? on : off;
+        int half = 1 << (level - 1);
+        return join(build(board, level - 1, row, col), build(board, level - 1, row, col + half),
+                build(board, level - 1, row + half, col), build(board, level - 1, row + half, col + half));
+    }
+
+    /**
+     * Set the live cells of a node in a band of rows starting at top, returning whether there were any
+     */
+    private boolean write(long[][] band, int top, Node n, int row, int col) {
+        if (n.population == 0 || row >= height || col >= width || row >= top + band.length
+                || row + (1L << n.level) <= top)
+            return false;
+        if (n.level == 0) {
+            band[row - top][col >>> 6] |= 1L << col;
+            return true;
+        }
+        int half = 1 << (n.level - 1);
+        boolean any = write(band, top, n.nw, row, col);
+        any |= write(band, top, n.ne, row, col + half);
+        any |= write(band, top, n.sw, row + half, col);
+        any |= write(band, top, n.se, row + half, col + half);
+        return any;
+    }
+
+    /**
+     * Return the canonical node with these quadrants
+     */
+    private Node join(Node nw, Node ne, Node sw, Node se) {
+        Node key = new Node(nw, ne, sw, se);
+        Node n = nodes.get(key);
+        if (n == null) {
+            nodes.put(key, key);
+            n = key;
+        }
+        return n;
+    }
+
+    private Node empty(int level) {
+        if (empty[level] == null) {
+            Node sub = empty(level - 1);
+            empty[level] = join(sub, sub, sub, sub);
+        }
+        return empty[level];
+    }
+
+    /**
+     * Return the center half of a node advanced 2^step generations, at most 2^(level - 2)
+     */
+    private Node result(Node n, int step) {
+        if (n.result != null && n.resultStep == step)
+            return n.result;
+        if (nodes.size() > bound || (++results & 0xFFF) == 0 && stopped.getAsBoolean())
+            throw GIVEUP;
+        Node r;
+        if (n.population == 0 && !rule.next(false, 0)) {
+            r = empty(n.level - 1);
+        } else if (n.level == 2) {
+            r = base(n);
+        } else {
+            // Nine overlapping sub nodes
+            Node n00 = n.nw;
+            Node n01 = join(n.nw.ne, n.ne.nw, n.nw.se, n.ne.sw);
+            Node n02 = n.ne;
+            Node n10 = join(n.nw.sw, n.nw.se, n.sw.nw, n.sw.ne);
+            Node n11 = join(n.nw.se, n.ne.sw, n.sw.ne, n.se.nw);
+            Node n12 = join(n.ne.sw, n.ne.se, n.se.nw, n.se.ne);
+            Node n20 = n.sw;
+            Node n21 = join(n.sw.ne, n.se.nw, n.sw.se, n.se.sw);
+            Node n22 = n.se;
+
+            // Advance each by half the step, or not at all when stepping slower than full speed
+            boolean full = step >= n.level - 2;
+            Node c00 = full ? result(n00, step) : center(n00);
+            Node c01 = full ? result(n01, step) : center(n01);
+            Node c02 = full ? result(n02, step) : center(n02);
+            Node c10 = full ? result(n10, step) : center(n10);
+            Node c11 = full ? result(n11, step) : center(n11);
+            Node c12 = full ? result(n12, step) : center(n12);
+            Node c20 = full ? result(n20, step) : center(n20);
+            Node c21 = full ? result(n21, step) : center(n21);
+            Node c22 = full ? result(n22, step) : center(n22);
+
+            r = join(result(join(c00, c01, c10, c11), step), result(join(c01, c02, c11, c12), step),
+                    result(join(c10, c11, c20, c21), step), result(join(c11, c12, c21, c22), step));
+        }
+        n.result = r;
+        n.resultStep = step;
+        return r;
+    }
+
+    /**
+     * Return the center half of a node without advancing it
+     */
+    private Node center(Node n) {
+        return join(n.nw.se, n.ne.sw, n.sw.ne, n.se.nw);
+    }
+
+    /**
+     * Advance the center 2x2 of a 4x4 node one generation
+     */
+    private Node base(Node n) {
+        // Pack the 4x4 into bits, row major from the top left
+        int bits = quad(n.nw) | quad(n.ne) << 2 | quad(n.sw) << 8 | quad(n.se) << 10;
+        if (base[bits] == null) {
+            Node[] center = new Node[4];
+            for (int i = 0; i < 4; i++) {
+                int row = 1 + (i >> 1);
+                int col = 1 + (i & 1);
+                int count = 0;
+                for (int dr = -1; dr <= 1; dr++)
+                    for (int dc = -1; dc <= 1; dc++)
+                        if ((dr != 0 || dc != 0) && (bits >>> ((row + dr) * 4 + col + dc) & 1) != 0)
+                            count++;
+                boolean alive = (bits >>> (row * 4 + col) & 1) != 0;
+                center[i] = rule.next(alive, count) ? on : off;
+            }
+            base[bits] = join(center[0], center[1], center[2], center[3]);
+        }
+        return base[bits];
+    }
+
+    /**
+     * Pack a 2x2 node into bits 0, 1, 4 and 5
+     */
+    private static int quad(Node n) {
+        return (int) (n.nw.population | n.ne.population << 1 | n.sw.population << 4 | n.se.population << 5);
+    }
+
+    // A square of 2^level cells, made of four quadrants or a single cell
+    private static class Node {
+        private final Node nw;
+        private final Node ne;
+        private final Node sw;
+        private final Node se;
+        private final int level;
+        private final long population;
+        private final int hash;
+        private Node result;
+        private int resultStep;
+
+        Node(int level, long population) {
+            nw = ne = sw = se = null;
+            this.level = level;
+            this.population = population;
+            hash = (int) population;
+        }
+
+        Node(Node nw, Node ne, Node sw, Node se) {
+            this.nw = nw;
+            this.ne = ne;
+            this.sw = sw;
+            this.se = se;
+            level = nw.level + 1;
+            population = nw.population + ne.population + sw.population + se.population;
+            hash = ((System.identityHashCode(nw) * 31 + System.identityHashCode(ne)) * 31
+                    + System.identityHashCode(sw)) * 31 + System.identityHashCode(se);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Node))
+                return false;
+            Node n = (Node) o;
+            return nw == n.nw && ne == n.ne && sw == n.sw && se == n.se && level == n.level
+                    && population == n.population;
+        }
+    }
+}
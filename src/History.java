@@ -0,0 +1,477 @@
+/**
+ * @author Quinn Brittain
+ *
+ * Past generations of a board, kept within a memory budget
+ *
+ * Each generation recorded is kept as the words that changed since the
+ * one before, xored, so applying a frame again takes it back off. Every
+ * so often a keyframe is kept instead, the change from an empty board,
+ * so any generation is rebuilt from the keyframe before it and a few
+ * frames after. A frame lists the words changed, or holds every word if
+ * that is smaller, so a quiet board costs little and a busy one no more
+ * than a copy.
+ *
+ * When the board has only been stepped once since the last generation
+ * recorded, only the tiles the step changed are compared, see
+ * LifeEngine.findChanged, so a quiet board is quick to record too.
+ *
+ * Frames are kept in a ring, oldest first, their words one after the
+ * other in a second ring of longs that grows up to the budget and is
+ * then reused, so recording allocates nothing once it is full. The
+ * oldest keyframe and its frames are dropped to make room. Recording
+ * after a restore, or at a generation before the newest, drops the
+ * frames after it, as the board has gone a different way since.
+ *
+ * Methods are synchronized, so the simulation thread can record while
+ * the application thread reads and scrubs the timeline.
+ */
+
+public class History {
+
+    // Most frames between keyframes
+    private static final int MAXRUN = 64;
+
+    // Bytes for a frame besides its words
+    private static final long OVERHEAD = 24;
+
+    // Fewest longs to hold the words of frames
+    private static final int MINSTORE = 1 << 12;
+
+    private long budget;
+    private long bytes = 0;
+
+    // Frames oldest first, starting at head and wrapping round the ring, each its
+    // generation, whether it is a keyframe, and where its words start in store and how many
+    private long[] generations = new long[64];
+    private boolean[] keys = new boolean[64];
+    private int[] starts = new int[64];
+    private int[] counts = new int[64];
+    private int head = 0;
+    private int size = 0;
+
+    // Words of every frame in the same order, a changed word as its index then its xor,
+    // or every word if a frame has them all, used from first up to tail
+    private long[] store = new long[0];
+    private int first = 0;
+    private int tail = 0;
+    private int used = 0;
+
+    // State of the newest frame, the state being recorded when it can't be found by tile,
+    // and the indexes of the words changed when it can
+    private long[] last;
+    private long[] current;
+    private int[] indexes;
+
+    // Board, edits and generation last recorded, to tell if it has only been stepped since
+    private LifeEngine recorded;
+    private long recordedEdits;
+    private long recordedGeneration;
+
+    // Frames and bytes since the newest keyframe, and that keyframe's bytes
+    private int run = 0;
+    private long runBytes = 0;
+    private long keyBytes = 0;
+
+    // Generation restored, whose later frames go on the next record, or -1
+    private long restored = -1;
+
+    public History(long budget) {
+        setBudget(budget);
+    }
+
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Set the most bytes to keep, dropping the oldest frames to fit, 0 to keep nothing
+     */
+    public synchronized void setBudget(long budget) {
+        if (budget < 0)
+            throw new IllegalArgumentException("Budget must be at least 0");
+        this.budget = budget;
+        if (last != null && !fits(last.length))
+            clear();
+        evict(0);
+        if (last != null && store.length > maxStore())
+            resize(maxStore());
+    }
+
+    /**
+     * Return the bytes in use, counting the two states and indexes kept to record
+     */
+    public synchronized long getBytes() {
+        return last == null ? 0 : bytes + last.length * 20L;
+    }
+
+    /**
+     * Return how many generations are kept
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Return the oldest generation kept, or -1 if none are
+     */
+    public synchronized long getOldest() {
+        return size == 0 ? -1 : generations[slot(0)];
+    }
+
+    /**
+     * Return the newest generation kept, or -1 if none are
+     */
+    public synchronized long getNewest() {
+        return size == 0 ? -1 : generations[slot(size - 1)];
+    }
+
+    /**
+     * Forget every generation, eg. for a new board
+     */
+    public synchronized void clear() {
+        head = 0;
+        size = 0;
+        bytes = 0;
+        store = new long[0];
+        first = 0;
+        tail = 0;
+        used = 0;
+        run = 0;
+        runBytes = 0;
+        keyBytes = 0;
+        restored = -1;
+        recorded = null;
+        last = null;
+        current = null;
+        indexes = null;
+    }
+
+    /**
+     * Keep the board's generation, unless it is the newest kept and hasn't changed
+     */
+    public synchronized void record(LifeEngine board) {
+        int length = board.getStateLength();
+        if (last == null || last.length != length) {
+            clear();
+            if (!fits(length))
+                return;
+            last = new long[length];
+            current = new long[length];
+            indexes = new int[length];
+        }
+        long generation = board.getGeneration();
+        if (restored >= 0) {
+            truncate(restored);
+            restored = -1;
+        }
+        if (size > 0 && generation < getNewest()) {
+            truncate(generation);
+            if (size > 0)
+                rebuild(size - 1, last);
+            else
+                java.util.Arrays.fill(last, 0L);
+        }
+
+        // Only the tiles the last step changed can differ if nothing else changed the board since
+        boolean stepped = size > 0 && board == recorded && board.getEdits() == recordedEdits
+                && generation == recordedGeneration + 1 && recordedGeneration == getNewest();
+        recorded = board;
+        recordedEdits = board.getEdits();
+        recordedGeneration = generation;
+        int changed;
+        if (stepped) {
+            changed = board.findChanged(last, indexes);
+        } else {
+            board.getState(current);
+            changed = 0;
+            for (int i = 0; i < length; i++)
+                if (current[i] != last[i])
+                    changed++;
+        }
+        if (size > 0 && changed == 0 && generation == getNewest())
+            return;
+
+        // A keyframe once the frames since the last one would take as long to apply
+        boolean key = size == 0 || run >= MAXRUN || runBytes >= keyBytes;
+        if (!key) {
+            int count = changed * 2 < length ? changed * 2 : length;
+            evict(OVERHEAD + count * 8L);
+            // Nothing left to build on
+            key = size == 0;
+            if (!key) {
+                start(generation, false, count);
+                if (stepped) {
+                    writeChanged(board, changed, count < length);
+                } else {
+                    write(current, last, count < length);
+                    long[] swap = last;
+                    last = current;
+                    current = swap;
+                }
+                finish(false);
+                return;
+            }
+        }
+        if (stepped) {
+            for (int k = 0; k < changed; k++)
+                last[indexes[k]] = board.getStateWord(indexes[k]);
+        } else {
+            long[] swap = last;
+            last = current;
+            current = swap;
+        }
+        int live = 0;
+        for (int i = 0; i < length; i++)
+            if (last[i] != 0)
+                live++;
+        int count = live * 2 < length ? live * 2 : length;
+        evict(OVERHEAD + count * 8L);
+        start(generation, true, count);
+        write(last, null, count < length);
+        finish(true);
+    }
+
+    /**
+     * Put the newest generation kept at or before generation on the board,
+     * returning the generation restored, or -1 if there is none
+     */
+    public synchronized long restore(long generation, LifeEngine board) {
+        if (last == null || board.getStateLength() != last.length)
+            return -1;
+        int index = find(generation);
+        if (index < 0)
+            return -1;
+        rebuild(index, last);
+        board.setState(last);
+        restored = generations[slot(index)];
+        recorded = null;
+        board.setGeneration(restored);
+        return restored;
+    }
+
+    /**
+     * Return whether the two states and indexes needed to record a board of length longs
+     * take at most half the budget
+     */
+    private boolean fits(int length) {
+        return length * 20L <= budget / 2;
+    }
+
+    /**
+     * Return the most longs the words of frames can take, besides what is kept to record
+     */
+    private int maxStore() {
+        return (int) Math.min(Integer.MAX_VALUE - 8, (budget - last.length * 20L) / 8);
+    }
+
+    private int slot(int index) {
+        return (head + index) % generations.length;
+    }
+
+    /**
+     * Return the newest frame at or before generation, or -1
+     */
+    private int find(long generation) {
+        int low = 0;
+        int high = size - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (generations[slot(mid)] <= generation) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Fill state with the generation of a frame, from the keyframe before it
+     */
+    private void rebuild(int index, long[] state) {
+        int key = index;
+        while (!keys[slot(key)])
+            key--;
+        java.util.Arrays.fill(state, 0L);
+        for (int i = key; i <= index; i++)
+            apply(slot(i), state);
+    }
+
+    /**
+     * Xor the changed words of a frame into state, every word if it has them all
+     */
+    private void apply(int s, long[] state) {
+        int p = starts[s];
+        if (counts[s] == state.length) {
+            for (int i = 0; i < state.length; i++) {
+                state[i] ^= store[p];
+                p = p + 1 == store.length ? 0 : p + 1;
+            }
+        } else {
+            for (int k = 0; k < counts[s]; k += 2) {
+                int i = (int) store[p];
+                p = p + 1 == store.length ? 0 : p + 1;
+                state[i] ^= store[p];
+                p = p + 1 == store.length ? 0 : p + 1;
+            }
+        }
+    }
+
+    /**
+     * Add the words findChanged found to the newest frame, as a list or every word,
+     * and to the last state
+     */
+    private void writeChanged(LifeEngine board, int changed, boolean list) {
+        if (list) {
+            for (int k = 0; k < changed; k++) {
+                int i = indexes[k];
+                long word = board.getStateWord(i);
+                put(i);
+                put(word ^ last[i]);
+                last[i] = word;
+            }
+            return;
+        }
+        for (int i = 0, k = 0; i < last.length; i++) {
+            if (k < changed && indexes[k] == i) {
+                long word = board.getStateWord(i);
+                put(word ^ last[i]);
+                last[i] = word;
+                k++;
+            } else {
+                put(0);
+            }
+        }
+    }
+
+    /**
+     * Add the change from base to state to the newest frame, or from an empty board
+     * if base is null, as a list of changed words or every word
+     */
+    private void write(long[] state, long[] base, boolean list) {
+        for (int i = 0; i < state.length; i++) {
+            long word = state[i] ^ (base == null ? 0 : base[i]);
+            if (!list) {
+                put(word);
+            } else if (word != 0) {
+                put(i);
+                put(word);
+            }
+        }
+    }
+
+    /**
+     * Add a frame of count words to the ring, making room in store for them
+     */
+    private void start(long generation, boolean key, int count) {
+        if (size == generations.length) {
+            int bigger = generations.length * 2;
+            long[] newGenerations = new long[bigger];
+            boolean[] newKeys = new boolean[bigger];
+            int[] newStarts = new int[bigger];
+            int[] newCounts = new int[bigger];
+            for (int i = 0; i < size; i++) {
+                newGenerations[i] = generations[slot(i)];
+                newKeys[i] = keys[slot(i)];
+                newStarts[i] = starts[slot(i)];
+                newCounts[i] = counts[slot(i)];
+            }
+            generations = newGenerations;
+            keys = newKeys;
+            starts = newStarts;
+            counts = newCounts;
+            head = 0;
+        }
+        if (used + count > store.length)
+            resize(Math.max(used + count, Math.min(maxStore(), Math.max(MINSTORE, store.length * 2))));
+        int s = slot(size);
+        generations[s] = generation;
+        keys[s] = key;
+        starts[s] = store.length == 0 ? 0 : tail;
+        counts[s] = count;
+        size++;
+    }
+
+    /**
+     * Count the newest frame, just written, towards the bytes kept and the run since the last keyframe
+     */
+    private void finish(boolean key) {
+        long frame = OVERHEAD + counts[slot(size - 1)] * 8L;
+        bytes += frame;
+        if (key) {
+            run = 0;
+            runBytes = 0;
+            keyBytes = frame;
+        } else {
+            run++;
+            runBytes += frame;
+        }
+    }
+
+    private void put(long word) {
+        store[tail] = word;
+        tail = tail + 1 == store.length ? 0 : tail + 1;
+        used++;
+    }
+
+    /**
+     * Move the words of every frame into a store of a new length, oldest first
+     */
+    private void resize(int length) {
+        long[] bigger = new long[length];
+        for (int k = 0, p = first; k < used; k++) {
+            bigger[k] = store[p];
+            p = p + 1 == store.length ? 0 : p + 1;
+        }
+        for (int i = 0; i < size; i++) {
+            int s = slot(i);
+            starts[s] = starts[s] >= first ? starts[s] - first : starts[s] + store.length - first;
+        }
+        store = bigger;
+        first = 0;
+        tail = used == length ? 0 : used;
+    }
+
+    /**
+     * Drop the oldest keyframes and their frames until a frame of bytes more fits within the budget
+     */
+    private void evict(long frame) {
+        while (size > 0 && getBytes() + frame > budget) {
+            do {
+                bytes -= OVERHEAD + counts[head] * 8L;
+                used -= counts[head];
+                head = (head + 1) % generations.length;
+                size--;
+            } while (size > 0 && !keys[head]);
+            first = size > 0 ? starts[head] : tail;
+        }
+        if (size == 0) {
+            run = 0;
+            runBytes = 0;
+        }
+    }
+
+    /**
+     * Drop the frames after generation, and count the frames since the keyframe left newest
+     */
+    private void truncate(long generation) {
+        while (size > 0 && generations[slot(size - 1)] > generation) {
+            int s = slot(size - 1);
+            bytes -= OVERHEAD + counts[s] * 8L;
+            used -= counts[s];
+            tail = starts[s];
+            size--;
+        }
+        recorded = null;
+        run = 0;
+        runBytes = 0;
+        int i = size - 1;
+        for (; i >= 0 && !keys[slot(i)]; i--) {
+            run++;
+            runBytes += OVERHEAD + counts[slot(i)] * 8L;
+        }
+        keyBytes = i < 0 ? 0 : OVERHEAD + counts[slot(i)] * 8L;
+    }
+}
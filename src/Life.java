@@ -1,22 +1,21 @@
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
 import javafx.scene.input.KeyCombination;
+import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.*;
-import javafx.scene.paint.Color;
-import javafx.scene.text.Font;
 import javafx.scene.text.Text;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
-import javafx.util.Duration;
 
 import java.io.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * @author Quinn Brittain
@@ -29,22 +28,42 @@ import java.io.*;
 
 public class Life extends Application {
 
-    // Dimensions of cell grid
-    private static final int DIM = 32;
+    // Dimensions of board and of cells on screen
+    private static final int MAXDIM = 32768;
     private static final int CELLDIM = 24;
+    private int width = 32;
+    private int height = 32;
 
-    // Create and initialize cell
-    private Cell[][] cell = new Cell[DIM][DIM];
+    // Create and initialize board and its view
+    private LifeEngine board;
+    private BoardView view;
     private boolean lastStatus;
+    private int[] lastCell = new int[2];
+
+    // Threads stepping the board
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private ForkJoinPool pool;
+
+    // HashLife for jumping ahead, kept between jumps to reuse its cache
+    private static final int MAXNODES = 1 << 22;
+    private HashLife hashLife;
+
+    // Past generations to step back and scrub through, in a budget of megabytes
+    private static final int HISTORYMB = 64;
+    private static final int MAXHISTORYMB = 1 << 16;
+    private History history = new History((long) HISTORYMB << 20);
+
+    // Checkpoints saved while playing, every so many seconds or when asked for, and read back on startup
+    private static final String CHECKPOINT = "checkpoint.sav";
+    private Checkpointer checkpointer;
 
     // Create style
     private String liveColor = "green";
     private String deadColor = "black";
-    private int maxDeathCount = 7;
+    private int maxDeathCount = LifeEngine.MAX_DEATHS + 1;
     private String[] deathColor = new String[maxDeathCount];
     private String[] growthColor = new String[3];
     private String gridColor = "#303030";
-    private String grid = "-fx-border-color: " + gridColor;
 
     // Global Menu Items
     private RadioMenuItem menuItemMirrorHorizontal = new RadioMenuItem("Horizontal");
@@ -69,23 +88,67 @@ public class Life extends Application {
     private CheckMenuItem menuItemGrid = new CheckMenuItem("Grid");
     private CheckMenuItem menuItemGrayscale = new CheckMenuItem("Greyscale");
     private CheckMenuItem menuItemNumbers = new CheckMenuItem("Numbers");
+    private CheckMenuItem menuItemPerformance = new CheckMenuItem("Performance");
 
     private MenuItem menuItemPlay = new MenuItem("Play");
     private MenuItem menuItemStop = new MenuItem("Stop");
+    private CheckMenuItem menuItemStopSettled = new CheckMenuItem("Stop When Settled");
     private MenuItem menuItemStep = new MenuItem("Step");
+    private MenuItem menuItemStepBack = new MenuItem("Step Back");
+    private MenuItem menuItemJump = new MenuItem("Jump...");
+    private MenuItem menuItemThreads = new MenuItem("Threads...");
+    private MenuItem menuItemHistory = new MenuItem("History...");
 
     // Global Controls
+    private Button btBack = new Button("Back");
     private Button btStep = new Button("Step");
     private Button btPlay = new Button("Play");
     private Slider slRate = new Slider();
-    private RadioButton rbLife = new RadioButton("Life");
-    private RadioButton rbHighLife = new RadioButton("High Life");
+    private Text txtRateValue = new Text();
+    private ComboBox<String> cbRule = new ComboBox<>();
+    private Slider slHistory = new Slider();
+    private boolean updatingTimeline = false;
+
+    // Rule in use
+    private Rule rule = Rule.LIFE;
 
-    // Timeline
+    // Simulation thread, and the copy of the board shown while it runs
     private boolean playing = false;
-    private Timeline animation = new Timeline(new KeyFrame(Duration.millis(3000), e -> calc()));
+    private boolean jumping = false;
+    private Simulation simulation;
+    private LifeEngine shown;
+    private AnimationTimer animation = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            showLatest();
+        }
+    };
+
+    // Whether the board was last asked to keep neighbor counts
+    private boolean trackingCounts = false;
+
+    // Performance overlay, updated a few times a second
+    private static final long HUDNANOS = 500_000_000L;
+    private Metrics metrics = new Metrics();
+    private Label hud = new Label();
+    private AnimationTimer hudTimer = new AnimationTimer() {
+        private long last = 0;
+
+        @Override
+        public void handle(long now) {
+            if (now - last < HUDNANOS)
+                return;
+            last = now;
+            hud.setText(metrics.sample().toDisplayString());
+        }
+    };
 
     public static void main(String[] args) {
+        // Run without a window with --batch, see LifeBatch
+        for (String arg : args)
+            if (arg.equals("--batch")) {
+                System.exit(LifeBatch.run(args, System.out));
+            }
         launch(args);
     }
 
@@ -104,14 +167,18 @@ public class Life extends Application {
         MenuItem menuItemNewGame = new MenuItem("New Game");
         MenuItem menuItemSaveAs = new MenuItem("Save As...");
         MenuItem menuItemLoadGame = new MenuItem("Load Game");
+        MenuItem menuItemCheckpoint = new MenuItem("Checkpoint");
+        MenuItem menuItemCheckpointEvery = new MenuItem("Checkpoint Every...");
         MenuItem menuItemExit = new MenuItem("Quit");
 
-        menuFile.getItems().addAll(menuItemNewGame, new SeparatorMenuItem(), menuItemSaveAs, menuItemLoadGame, new SeparatorMenuItem(), menuItemExit);
+        menuFile.getItems().addAll(menuItemNewGame, new SeparatorMenuItem(), menuItemSaveAs, menuItemLoadGame, new SeparatorMenuItem(), menuItemCheckpoint, menuItemCheckpointEvery, new SeparatorMenuItem(), menuItemExit);
 
         // MenuFile event handling
-        menuItemNewGame.setOnAction(e -> newGame());
+        menuItemNewGame.setOnAction(e -> newGame(primaryStage));
         menuItemSaveAs.setOnAction(e -> saveAs(primaryStage));
         menuItemLoadGame.setOnAction(e -> loadGame(primaryStage));
+        menuItemCheckpoint.setOnAction(e -> checkpoint());
+        menuItemCheckpointEvery.setOnAction(e -> setCheckpointInterval());
         menuItemExit.setOnAction(e -> System.exit(0));
 
         menuItemNewGame.setAccelerator(
@@ -120,6 +187,8 @@ public class Life extends Application {
                 KeyCombination.keyCombination("Ctrl+S"));
         menuItemLoadGame.setAccelerator(
                 KeyCombination.keyCombination("Ctrl+L"));
+        menuItemCheckpoint.setAccelerator(
+                KeyCombination.keyCombination("Ctrl+K"));
         menuItemExit.setAccelerator(
                 KeyCombination.keyCombination("Ctrl+Q"));
 
@@ -181,7 +250,7 @@ public class Life extends Application {
         menuItemGrayscale.setSelected(false);
         menuItemNumbers.setSelected(false);
 
-        menuView.getItems().addAll(subMenuTheme, subMenuTrail, subMenuFilter, new SeparatorMenuItem(), menuItemGrid, menuItemGrayscale, menuItemNumbers);
+        menuView.getItems().addAll(subMenuTheme, subMenuTrail, subMenuFilter, new SeparatorMenuItem(), menuItemGrid, menuItemGrayscale, menuItemNumbers, new SeparatorMenuItem(), menuItemPerformance);
 
         // MenuView event handling
         menuItemThemeDark.setOnAction(e -> setTheme());
@@ -193,6 +262,7 @@ public class Life extends Application {
         menuItemGrid.setOnAction(e -> toggleGrid());
         menuItemGrayscale.setOnAction(e -> toggleGreyscale());
         menuItemNumbers.setOnAction(e -> toggleNumbers());
+        menuItemPerformance.setOnAction(e -> togglePerformance());
 
         menuItemGrid.setAccelerator(
                 KeyCombination.keyCombination("Ctrl+G")
@@ -203,16 +273,25 @@ public class Life extends Application {
         menuItemNumbers.setAccelerator(
                 KeyCombination.keyCombination("Ctrl+C")
         );
+        menuItemPerformance.setAccelerator(
+                KeyCombination.keyCombination("F3")
+        );
 
         // MenuRun
         menuItemStop.setDisable(true);
+        menuItemStopSettled.setSelected(true);
 
-        menuRun.getItems().addAll(menuItemPlay, menuItemStop, new SeparatorMenuItem(), menuItemStep);
+        menuRun.getItems().addAll(menuItemPlay, menuItemStop, menuItemStopSettled, new SeparatorMenuItem(), menuItemStep, menuItemStepBack, menuItemJump, new SeparatorMenuItem(), menuItemThreads, menuItemHistory);
 
         // MenuRun event handling
         menuItemPlay.setOnAction(e -> play());
         menuItemStop.setOnAction(e -> stopLife());
+        menuItemStopSettled.setOnAction(e -> simulation.setStopOnCycle(menuItemStopSettled.isSelected()));
         menuItemStep.setOnAction(e -> calc());
+        menuItemStepBack.setOnAction(e -> stepBack());
+        menuItemJump.setOnAction(e -> jump());
+        menuItemThreads.setOnAction(e -> setThreads());
+        menuItemHistory.setOnAction(e -> setHistorySize());
 
         menuItemPlay.setAccelerator(
                 KeyCombination.keyCombination("Shift+F10")
@@ -223,14 +302,36 @@ public class Life extends Application {
         menuItemStep.setAccelerator(
                 KeyCombination.keyCombination("Shift+Space")
         );
+        menuItemStepBack.setAccelerator(
+                KeyCombination.keyCombination("Shift+Backspace")
+        );
+        menuItemJump.setAccelerator(
+                KeyCombination.keyCombination("Ctrl+J")
+        );
 
-        // Pane to hold cells
-        GridPane cellPane = new GridPane();
-        for (int i = 0; i < DIM; i++)
-            for (int j = 0; j < DIM; j++) {
-                cellPane.add(cell[i][j] = new Cell(), j, i);
-                cell[i][j].pos = new int[] {i, j};
-            }
+        // Board, sized from the command line eg. --width=256 --height=128
+        width = parseDim(getParameters().getNamed().get("width"), width);
+        height = parseDim(getParameters().getNamed().get("height"), height);
+        board = new LifeEngine(width, height);
+
+        // Threads, from the command line eg. --threads=8
+        threads = parseThreads(getParameters().getNamed().get("threads"), threads);
+        pool = new ForkJoinPool(threads);
+        board.setPool(pool);
+        simulation = new Simulation(board);
+        simulation.setMetrics(metrics);
+
+        // History, from the command line in megabytes eg. --history=256, 0 to keep none
+        int historyMB = parseHistory(getParameters().getNamed().get("history"), HISTORYMB);
+        history.setBudget((long) historyMB << 20);
+        simulation.setHistory(history);
+        simulation.setStopOnCycle(menuItemStopSettled.isSelected());
+
+        // Checkpoints, from the command line eg. --checkpoint=run.sav --checkpoint-every=600, 0 to only take them when asked
+        checkpointer = new Checkpointer(new File(getParameters().getNamed().getOrDefault("checkpoint", CHECKPOINT)));
+        checkpointer.setInterval(parseSeconds(getParameters().getNamed().get("checkpoint-every"), 0));
+        checkpointer.setOnError((file, ex) -> Platform.runLater(() -> reportSaveFailed(file, ex)));
+        simulation.setCheckpointer(checkpointer);
 
         for (int i = 0; i < maxDeathCount; i++) {
             deathColor[i] = deadColor;
@@ -240,36 +341,48 @@ public class Life extends Application {
         growthColor[1] = null;
         growthColor[2] = "#003322";
 
+        // Canvas to draw cells
+        view = new BoardView(board, CELLDIM);
+        view.setOnMousePressed(this::handleMouseClick);
+        view.setOnMouseDragged(this::handleMouseDrag);
+        view.setPalette(liveColor, deathColor, growthColor, gridColor);
+
         // Control bar and controls
         HBox controlBar = new HBox();
         btPlay.setDefaultButton(true);
         Text txtRate = new Text("Rate:");
         Button btClear = new Button("Clear");
 
-        VBox vBoxVersion = new VBox(5);
-        vBoxVersion.setPadding(new Insets(5, 5, 5, 5));
-        vBoxVersion.getChildren().addAll(rbLife, rbHighLife);
-        vBoxVersion.setPadding(new Insets(5, 5, 5, 5));
-        ToggleGroup tgVersion = new ToggleGroup();
-        rbLife.setToggleGroup(tgVersion);
-        rbHighLife.setToggleGroup(tgVersion);
-        rbLife.setSelected(true);
+        Text txtHistory = new Text("History:");
+        slHistory.setDisable(true);
 
-        controlBar.getChildren().addAll(btStep, btPlay, txtRate, slRate, btClear, vBoxVersion);
+        Text txtRule = new Text("Rule:");
+        for (Rule preset : Rule.PRESETS)
+            cbRule.getItems().add(preset.toDisplayString());
+        cbRule.setEditable(true);
+        cbRule.setValue(rule.toDisplayString());
+
+        controlBar.getChildren().addAll(btBack, btStep, btPlay, txtRate, slRate, txtRateValue, txtHistory, slHistory, btClear, txtRule, cbRule);
+        controlBar.setPadding(new Insets(5, 5, 5, 5));
         controlBar.setAlignment(Pos.CENTER);
         controlBar.setSpacing(20);
 
         // Control bar event handling
+        btBack.setOnAction(e -> stepBack());
         btStep.setOnAction(e -> calc());
         btPlay.setOnAction(e -> play());
         btClear.setOnAction(e -> clear());
-        rbLife.setOnAction(event -> setVersion());
-        rbHighLife.setOnAction(event -> setVersion());
+        cbRule.setOnAction(event -> setRule());
 
         // Order UI elements
         BorderPane borderPane = new BorderPane();
         borderPane.setTop(menuBar);
-        borderPane.setCenter(cellPane);
+        hud.setVisible(false);
+        hud.setMouseTransparent(true);
+        hud.setStyle("-fx-background-color: rgba(0, 0, 0, 0.6); -fx-text-fill: white; -fx-font-family: monospace; -fx-padding: 4;");
+        StackPane.setAlignment(hud, Pos.TOP_LEFT);
+        StackPane.setMargin(hud, new Insets(5));
+        borderPane.setCenter(new StackPane(view, hud));
         borderPane.setBottom(controlBar);
 
         // Create a scene and place it in the stage
@@ -279,54 +392,98 @@ public class Life extends Application {
         primaryStage.setScene(scene);
         primaryStage.show();
 
-        // Scene Event Handling
-        scene.addEventFilter(MouseEvent.DRAG_DETECTED, e -> scene.startFullDrag());
+        // Rate, far right is as fast as possible
+        slRate.valueProperty().addListener(e -> setRate());
+        slRate.setValue(30);
+
+        // Timeline, dragging it puts that generation on the board
+        slHistory.valueProperty().addListener(e -> scrub());
 
-        // Animation
-        slRate.setValue(50);
-        animation.setCycleCount(Timeline.INDEFINITE);
-        animation.rateProperty().bind(slRate.valueProperty());
+        resumeCheckpoint(primaryStage);
     }
 
-    private void newGame() {
+    private void newGame(Stage primaryStage) {
         stopLife();
-        for (int i = 0; i < DIM; i++)
-            for (int j = 0; j < DIM; j++) {
-                cell[i][j].setCell(false);
-                cell[i][j].deathCount = 0;
-                cell[i][j].setLiveCount(0);
-            }
-        calcGrowth();
-        rbLife.setSelected(true);
-        refreshCells();
+        TextInputDialog dialog = new TextInputDialog(width + "x" + height);
+        dialog.setTitle("New Game");
+        dialog.setHeaderText("Board size, up to " + MAXDIM + "x" + MAXDIM);
+        dialog.setContentText("Width x Height:");
+        String size = dialog.showAndWait().orElse(null);
+        if (size == null)
+            return;
+        String[] dims = size.toLowerCase().split("x");
+        int newWidth = parseDim(dims[0], -1);
+        int newHeight = dims.length > 1 ? parseDim(dims[1], -1) : newWidth;
+        if (newWidth < 0 || newHeight < 0 || dims.length > 2) {
+            new Alert(Alert.AlertType.ERROR, "Invalid board size: " + size).showAndWait();
+            return;
+        }
+        resizeBoard(newWidth, newHeight, primaryStage);
+        cbRule.setValue(Rule.LIFE.toDisplayString());
+        setRule();
+    }
+
+    /**
+     * Parse a board dimension, returning fallback if it is missing or out of range
+     */
+    private static int parseDim(String value, int fallback) {
+        try {
+            int dim = Integer.parseInt(value.trim());
+            if (dim >= 1 && dim <= MAXDIM)
+                return dim;
+        } catch (NullPointerException | NumberFormatException ex) {
+            // Use fallback
+        }
+        return fallback;
+    }
+
+    /**
+     * Replace the board with an empty one of a new size
+     */
+    private void resizeBoard(int newWidth, int newHeight, Stage primaryStage) {
+        setBoard(new LifeEngine(newWidth, newHeight), primaryStage);
+    }
+
+    /**
+     * Replace the board and show it
+     */
+    private void setBoard(LifeEngine newBoard, Stage primaryStage) {
+        board = newBoard;
+        trackingCounts = false;
+        width = board.getWidth();
+        height = board.getHeight();
+        board.setPool(pool);
+        simulation = new Simulation(board);
+        simulation.setMetrics(metrics);
+        history.clear();
+        simulation.setHistory(history);
+        simulation.setStopOnCycle(menuItemStopSettled.isSelected());
+        simulation.setCheckpointer(checkpointer);
+        setRate();
+        view.setBoard(board);
+        primaryStage.sizeToScene();
     }
 
     private void saveAs(Stage primaryStage) {
-        stopLife();
         FileChooser fileChooser = new FileChooser();
         fileChooser.setInitialDirectory(new File("."));
         fileChooser.setTitle("Enter file name");
         fileChooser.getExtensionFilters().addAll(
                 new FileChooser.ExtensionFilter("Game Save files", "*.sav"),
-                new FileChooser.ExtensionFilter("All File Types", "*"));
+                new FileChooser.ExtensionFilter("RLE patterns", "*.rle"),
+                new FileChooser.ExtensionFilter("Macrocell patterns", "*.mc"),
+                new FileChooser.ExtensionFilter("Plaintext patterns", "*.cells"));
         File selectedFile = fileChooser.showSaveDialog(primaryStage);
         if (selectedFile != null) {
             String filePath = selectedFile.getAbsolutePath();
-            if(!filePath.endsWith(".sav")) {
-                selectedFile = new File(filePath.concat(".sav"));
-            }
-            try ( // Create an output stream for file object.sav
-                  ObjectOutputStream output =
-                          new ObjectOutputStream(new FileOutputStream(selectedFile))) {
-                boolean[][] cellStates = new boolean[DIM][DIM];
-                for (int i = 0; i < DIM; i++)
-                    for (int j = 0; j < DIM; j++)
-                        cellStates[i][j] = cell[i][j].getCell();
-                output.writeObject(cellStates);
-                output.writeObject(rbLife.isSelected());
-            } catch (IOException ex) {
-                ex.printStackTrace();
+            if(!filePath.endsWith(".sav") && !PatternFile.isPattern(selectedFile)) {
+                String extension = fileChooser.getSelectedExtensionFilter() == null ? "*.sav"
+                        : fileChooser.getSelectedExtensionFilter().getExtensions().get(0);
+                selectedFile = new File(filePath.concat(extension.substring(1)));
             }
+            // Copied between generations if playing, and written without waiting
+            File file = selectedFile;
+            simulation.edit(() -> checkpointer.save(board, file));
         }
     }
 
@@ -336,42 +493,261 @@ public class Life extends Application {
         fileChooser.setInitialDirectory(new File("."));
         fileChooser.setTitle("Enter file name");
         fileChooser.getExtensionFilters().addAll(
-                new FileChooser.ExtensionFilter("Game Save files", "*.sav"),
+                new FileChooser.ExtensionFilter("Game Saves and Patterns", "*.sav", "*.rle", "*.mc", "*.cells"),
                 new FileChooser.ExtensionFilter("All File Types", "*"));
         File selectedFile = fileChooser.showOpenDialog(primaryStage);
         if (selectedFile != null)
             try {
-                try ( // Create an input stream for file object.sav
-                      ObjectInputStream input =
-                              new ObjectInputStream(new FileInputStream(selectedFile))) {
-                        boolean[][] cellStates = (boolean[][]) (input.readObject());
-                        for (int i = 0; i < DIM; i++)
-                            for (int j = 0; j < DIM; j++)
-                                cell[i][j].setCell(cellStates[i][j]);
-                        if ((boolean) input.readObject())
-                            rbLife.setSelected(true);
-                        else
-                            rbHighLife.setSelected(true);
-                }
+                // Patterns go in the middle of a board at least the current size
+                setBoard(PatternFile.read(selectedFile, width, height), primaryStage);
+                cbRule.setValue(board.getRule().toDisplayString());
             } catch (Exception ex) {
                 ex.printStackTrace();
             }
-        calcNumbers();
-        if (menuItemFilterGrowth.isSelected())
-            calcGrowth();
-        refreshCells();
+        setRule();
     }
 
-    private void setVersion() {
-        if (menuItemFilterGrowth.isSelected())
-            calcGrowth();
+    /**
+     * Take a checkpoint, at the next generation if playing
+     */
+    private void checkpoint() {
+        if (playing)
+            checkpointer.request();
+        else
+            checkpointer.checkpoint(board);
     }
 
-    private void refreshCells() {
-        for (int i = 0; i < DIM; i++)
-            for (int j = 0; j < DIM; j++) {
-                cell[i][j].setCell(cell[i][j].getCell());
+    private void setCheckpointInterval() {
+        TextInputDialog dialog = new TextInputDialog(String.valueOf(checkpointer.getInterval()));
+        dialog.setTitle("Checkpoint Every");
+        dialog.setHeaderText("Seconds between checkpoints to " + checkpointer.getFile().getName()
+                + " while playing, 0 to only take them when asked");
+        dialog.setContentText("Seconds:");
+        String value = dialog.showAndWait().orElse(null);
+        if (value == null)
+            return;
+        long seconds = parseSeconds(value, -1);
+        if (seconds < 0) {
+            new Alert(Alert.AlertType.ERROR, "Invalid seconds: " + value).showAndWait();
+            return;
+        }
+        checkpointer.setInterval(seconds);
+    }
+
+    /**
+     * Parse seconds between checkpoints, returning fallback if it is missing or invalid
+     */
+    private static long parseSeconds(String value, long fallback) {
+        try {
+            long seconds = Long.parseLong(value.trim());
+            if (seconds >= 0 && seconds <= Integer.MAX_VALUE)
+                return seconds;
+        } catch (NullPointerException | NumberFormatException ex) {
+            // Use fallback
+        }
+        return fallback;
+    }
+
+    /**
+     * Offer to carry on from the last checkpoint, if one was left behind
+     */
+    private void resumeCheckpoint(Stage primaryStage) {
+        LifeEngine recovered = Checkpointer.recover(checkpointer.getFile());
+        if (recovered == null)
+            return;
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION,
+                "Resume from the checkpoint at generation " + recovered.getGeneration() + "?");
+        alert.setTitle("Checkpoint");
+        alert.setHeaderText(recovered.getWidth() + "x" + recovered.getHeight() + " board found in "
+                + checkpointer.getFile().getName());
+        if (alert.showAndWait().orElse(ButtonType.CANCEL) != ButtonType.OK)
+            return;
+        setBoard(recovered, primaryStage);
+        cbRule.setValue(board.getRule().toDisplayString());
+        setRule();
+    }
+
+    private void jump() {
+        stopLife();
+        TextInputDialog dialog = new TextInputDialog("2^10");
+        dialog.setTitle("Jump");
+        dialog.setHeaderText("Generations to jump ahead, eg. 1000000 or 2^20");
+        dialog.setContentText("Generations:");
+        String value = dialog.showAndWait().orElse(null);
+        if (value == null)
+            return;
+        long generations = parseGenerations(value);
+        if (generations < 0) {
+            new Alert(Alert.AlertType.ERROR, "Invalid generations: " + value).showAndWait();
+            return;
+        }
+        jumping = true;
+        if (!HashLife.fits(board)) {
+            // HashLife needs sides that are powers of two, so play as fast as possible up to
+            // the generation instead, which Stop cancels
+            simulation.setUntil(board.getGeneration() + generations);
+            simulation.setTarget(0);
+            play();
+            return;
+        }
+        // Jumped on the simulation thread, which Stop cancels too
+        if (hashLife == null)
+            hashLife = new HashLife(rule, MAXNODES);
+        history.record(board);
+        simulation.jump(hashLife, generations);
+        started();
+    }
+
+    /**
+     * Parse a generation count as a number or a power of two, returning -1 if invalid
+     */
+    private static long parseGenerations(String value) {
+        try {
+            value = value.trim();
+            if (value.startsWith("2^")) {
+                int power = Integer.parseInt(value.substring(2).trim());
+                return power >= 0 && power <= 62 ? 1L << power : -1;
             }
+            long generations = Long.parseLong(value);
+            return generations >= 0 ? generations : -1;
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private void setThreads() {
+        stopLife();
+        TextInputDialog dialog = new TextInputDialog(String.valueOf(threads));
+        dialog.setTitle("Threads");
+        dialog.setHeaderText("Threads used to step the board");
+        dialog.setContentText("Threads:");
+        String value = dialog.showAndWait().orElse(null);
+        if (value == null)
+            return;
+        int newThreads = parseThreads(value, -1);
+        if (newThreads < 0) {
+            new Alert(Alert.AlertType.ERROR, "Invalid thread count: " + value).showAndWait();
+            return;
+        }
+        threads = newThreads;
+        pool.shutdown();
+        pool = new ForkJoinPool(threads);
+        board.setPool(pool);
+    }
+
+    /**
+     * Parse a thread count, returning fallback if it is missing or out of range
+     */
+    private static int parseThreads(String value, int fallback) {
+        try {
+            int count = Integer.parseInt(value.trim());
+            if (count >= 1 && count <= 1024)
+                return count;
+        } catch (NullPointerException | NumberFormatException ex) {
+            // Use fallback
+        }
+        return fallback;
+    }
+
+    private void setHistorySize() {
+        TextInputDialog dialog = new TextInputDialog(String.valueOf(history.getBudget() >> 20));
+        dialog.setTitle("History");
+        dialog.setHeaderText("Megabytes kept of past generations, 0 to keep none");
+        dialog.setContentText("Megabytes:");
+        String value = dialog.showAndWait().orElse(null);
+        if (value == null)
+            return;
+        int megabytes = parseHistory(value, -1);
+        if (megabytes < 0) {
+            new Alert(Alert.AlertType.ERROR, "Invalid history size: " + value).showAndWait();
+            return;
+        }
+        history.setBudget((long) megabytes << 20);
+        updateTimeline(board.getGeneration());
+    }
+
+    /**
+     * Parse a history size in megabytes, returning fallback if it is missing or out of range
+     */
+    private static int parseHistory(String value, int fallback) {
+        try {
+            int megabytes = Integer.parseInt(value.trim());
+            if (megabytes >= 0 && megabytes <= MAXHISTORYMB)
+                return megabytes;
+        } catch (NullPointerException | NumberFormatException ex) {
+            // Use fallback
+        }
+        return fallback;
+    }
+
+    private void setRule() {
+        try {
+            if (cbRule.getValue() != null)
+                rule = Rule.forName(cbRule.getValue());
+        } catch (IllegalArgumentException ex) {
+            new Alert(Alert.AlertType.ERROR, ex.getMessage() + "\nRules look like B3/S23").showAndWait();
+        }
+        cbRule.setValue(rule.toDisplayString());
+        Rule newRule = rule;
+        simulation.edit(() -> board.setRule(newRule));
+        hashLife = null;
+        refreshCells();
+    }
+
+    private void refreshCells() {
+        boolean counts = menuItemNumbers.isSelected() || menuItemFilterGrowth.isSelected();
+        if (counts != trackingCounts) {
+            trackingCounts = counts;
+            simulation.edit(() -> board.setTrackCounts(counts));
+        }
+        view.setPalette(liveColor, deathColor, growthColor, gridColor);
+        view.setShowGrid(menuItemGrid.isSelected());
+        view.setShowGrowth(menuItemFilterGrowth.isSelected());
+        view.setShowNumbers(menuItemNumbers.isSelected());
+        view.draw();
+        metrics.recordRender(view.getDrawNanos());
+        if (!playing) {
+            metrics.recordBoard(board);
+            updateTimeline(board.getGeneration());
+        }
+    }
+
+    /**
+     * Fit the timeline to the generations kept and move it to generation
+     */
+    private void updateTimeline(long generation) {
+        long oldest = history.getOldest();
+        long newest = history.getNewest();
+        updatingTimeline = true;
+        slHistory.setDisable(oldest < 0 || oldest == newest);
+        if (oldest >= 0) {
+            slHistory.setMin(oldest);
+            slHistory.setMax(Math.max(newest, generation));
+            slHistory.setValue(generation);
+        }
+        updatingTimeline = false;
+    }
+
+    /**
+     * Put the generation under the timeline on the board, after it was dragged
+     */
+    private void scrub() {
+        if (updatingTimeline)
+            return;
+        stopLife();
+        long generation = Math.round(slHistory.getValue());
+        if (generation != board.getGeneration())
+            history.restore(generation, board);
+        refreshCells();
+    }
+
+    /**
+     * Put the generation before this one back on the board, if it is kept
+     */
+    private void stepBack() {
+        stopLife();
+        if (history.restore(board.getGeneration() - 1, board) >= 0)
+            refreshCells();
     }
 
     private void setTheme() {
@@ -394,9 +770,6 @@ public class Life extends Application {
             setGrowth();
         if (menuItemTrailDeath.isSelected() || menuItemTrailFrequency.isSelected())
             setTrail();
-        if (menuItemGrid.isSelected()) {
-            grid = "-fx-border-color: " + gridColor;
-        }
         refreshCells();
     }
 
@@ -462,11 +835,6 @@ public class Life extends Application {
     }
 
     private void toggleGrid() {
-        if (menuItemGrid.isSelected()) {
-            grid = "-fx-border-color: " + gridColor;
-        } else {
-            grid = "";
-        }
         refreshCells();
     }
 
@@ -490,24 +858,15 @@ public class Life extends Application {
     }
 
     private void toggleNumbers() {
-        if (!menuItemNumbers.isSelected()) {
-            for (int i = 0; i < DIM; i++)
-                for (int j = 0; j < DIM; j++) {
-                    cell[i][j].vCent.getChildren().clear();
-                }
-        } else {
-            calcNumbers();
-            refreshCells();
-        }
+        refreshCells();
     }
 
-    private void calcNumbers() {
-        for (int i = 0; i < DIM; i++)
-            for (int j = 0; j < DIM; j++) {
-                cell[i][j].setLiveCount(countLive(i, j));
-                if (menuItemNumbers.isSelected())
-                    cell[i][j].setText();
-            }
+    private void togglePerformance() {
+        hud.setVisible(menuItemPerformance.isSelected());
+        if (menuItemPerformance.isSelected())
+            hudTimer.start();
+        else
+            hudTimer.stop();
     }
 
     private void setGrowth() {
@@ -529,31 +888,10 @@ public class Life extends Application {
                     growthColor[2] = "#003020";
                 }
             }
-            calcGrowth();
         }
         refreshCells();
     }
 
-    private void calcGrowth() {
-        for (int i = 0; i < DIM; i++)
-            for (int j = 0; j < DIM; j++) {
-                int count = cell[i][j].liveCount;
-                if (!cell[i][j].status) {
-                    if (rbLife.isSelected() && count == 3)
-                        cell[i][j].growthValue = 2;
-                    else if (rbHighLife.isSelected() && (count == 3 || count == 6))
-                        cell[i][j].growthValue = 2;
-                    else
-                        cell[i][j].growthValue = 1;
-                } else if (cell[i][j].status && count != 2 && count != 3) {
-                    cell[i][j].growthValue = 0;
-                } else {
-                    cell[i][j].growthValue = 1;
-                }
-            }
-        refreshCells();
-    }
-
     private void duplicate(int row, int col, boolean state) {
         if (menuItemDuplicateHorizontal.isSelected())
             duplicateHorizontal(row, col, state);
@@ -566,27 +904,21 @@ public class Life extends Application {
     }
 
     private void duplicateHorizontal(int row, int col, boolean state) {
-        cell[row][((DIM / 2) + col + DIM) % DIM].setCell(state);
-        calc3x3Area(row, ((DIM / 2) + col + DIM) % DIM);
+        setBoardCell(row, (width / 2 + col) % width, state);
     }
 
     private void duplicateVertical(int row, int col, boolean state) {
-        cell[((DIM / 2) + row + DIM) % DIM][col].setCell(state);
-        calc3x3Area(((DIM / 2) + row + DIM) % DIM, col);
+        setBoardCell((height / 2 + row) % height, col, state);
     }
 
     private void duplicateDiagonal(int row, int col, boolean state) {
-        cell[((DIM / 2) + row + DIM) % DIM][((DIM / 2) + col + DIM) % DIM].setCell(state);
-        calc3x3Area(((DIM / 2) + row + DIM) % DIM, ((DIM / 2) + col + DIM) % DIM);
+        setBoardCell((height / 2 + row) % height, (width / 2 + col) % width, state);
     }
 
     private void duplicateBoth(int row, int col, boolean state) {
-        cell[row][((DIM / 2) + col + DIM) % DIM].setCell(state);
-        calc3x3Area(row, ((DIM / 2) + col + DIM) % DIM);
-        cell[((DIM / 2) + row + DIM) % DIM][col].setCell(state);
-        calc3x3Area(((DIM / 2) + row + DIM) % DIM, col);
-        cell[((DIM / 2) + row + DIM) % DIM][((DIM / 2) + col + DIM) % DIM].setCell(state);
-        calc3x3Area(((DIM / 2) + row + DIM) % DIM, ((DIM / 2) + col + DIM) % DIM);
+        setBoardCell(row, (width / 2 + col) % width, state);
+        setBoardCell((height / 2 + row) % height, col, state);
+        setBoardCell((height / 2 + row) % height, (width / 2 + col) % width, state);
     }
 
 
@@ -602,255 +934,185 @@ public class Life extends Application {
     }
 
     private void mirrorHorizontal(int row, int col, boolean state) {
-        cell[row][((col * -1) + DIM) - 1].setCell(state);
-        calc3x3Area(row, ((col * -1) + DIM) - 1);
+        setBoardCell(row, width - 1 - col, state);
     }
 
     private void mirrorVertical(int row, int col, boolean state) {
-        cell[((row * -1) + DIM) - 1][col].setCell(state);
-        calc3x3Area(((row * -1) + DIM) - 1, col);
+        setBoardCell(height - 1 - row, col, state);
     }
 
     private void mirrorDiagonal(int row, int col, boolean state) {
-        cell[((row * -1) + DIM) - 1][((col * -1) + DIM) - 1].setCell(state);
-        calc3x3Area(((row * -1) + DIM) - 1, ((col * -1) + DIM) - 1);
+        setBoardCell(height - 1 - row, width - 1 - col, state);
     }
 
     private void mirrorBoth(int row, int col, boolean state) {
-        cell[row][((col * -1) + DIM) - 1].setCell(state);
-        calc3x3Area(row, ((col * -1) + DIM) - 1);
-        cell[((row * -1) + DIM) - 1][col].setCell(state);
-        calc3x3Area(((row * -1) + DIM) - 1, col);
-        cell[((row * -1) + DIM) - 1][((col * -1) + DIM) - 1].setCell(state);
-        calc3x3Area(((row * -1) + DIM) - 1, ((col * -1) + DIM) - 1);
+        setBoardCell(row, width - 1 - col, state);
+        setBoardCell(height - 1 - row, col, state);
+        setBoardCell(height - 1 - row, width - 1 - col, state);
+    }
+
+    /**
+     * Set a cell, between generations if playing
+     */
+    private void setBoardCell(int row, int col, boolean state) {
+        simulation.edit(() -> board.set(row, col, state));
     }
 
     private void play() {
         if (playing) {
-            animation.pause();
-            btPlay.setText("Play");
-            btStep.setDisable(false);
-            menuItemPlay.setDisable(false);
-            menuItemStop.setDisable(true);
-            menuItemStep.setDisable(false);
-        } else {
-            animation.play();
-            btPlay.setText("Stop");
-            btStep.setDisable(true);
-            menuItemPlay.setDisable(true);
-            menuItemStop.setDisable(false);
-            menuItemStep.setDisable(true);
+            stopLife();
+            return;
         }
-        playing = !playing;
+        history.record(board);
+        simulation.start();
+        started();
+    }
+
+    /**
+     * Show the simulation running, and let it be stopped
+     */
+    private void started() {
+        animation.start();
+        btPlay.setText("Stop");
+        btStep.setDisable(true);
+        menuItemPlay.setDisable(true);
+        menuItemStop.setDisable(false);
+        menuItemStep.setDisable(true);
+        menuItemJump.setDisable(true);
+        playing = true;
     }
 
     private void stopLife() {
-        animation.pause();
+        if (playing) {
+            animation.stop();
+            simulation.stop();
+            simulation.recycle(shown);
+            shown = null;
+            view.show(board);
+        }
+        if (jumping) {
+            jumping = false;
+            simulation.setUntil(Long.MAX_VALUE);
+            setRate();
+        }
         btPlay.setText("Play");
         playing = false;
         btStep.setDisable(false);
         menuItemPlay.setDisable(false);
         menuItemStop.setDisable(true);
         menuItemStep.setDisable(false);
+        menuItemJump.setDisable(false);
     }
 
     private void clear() {
         stopLife();
-        for (int i = 0; i < DIM; i++)
-            for (int j = 0; j < DIM; j++) {
-                cell[i][j].setCell(false);
-                cell[i][j].deathCount = 0;
-                cell[i][j].setLiveCount(0);
-            }
-        calcGrowth();
+        board.clear();
         refreshCells();
     }
 
     private void calc() {
-        if (rbLife.isSelected()) {
-            calcLife();
-        } else if (rbHighLife.isSelected()) {
-            calcHighLife();
-        }
-        calcNumbers();
-        if (menuItemFilterGrowth.isSelected())
-            calcGrowth();
-    }
-
-    private void calcLife() {
-        boolean[][] cellStatesNew = new boolean[DIM][DIM];
-        for (int i = 0; i < DIM; i++)
-            for (int j = 0; j < DIM; j++) {
-                int liveCount = countLive(i, j);
-                if (liveCount == 3) {
-                    cellStatesNew[i][j] = true;
-                } else if (liveCount == 2) {
-                    cellStatesNew[i][j] = cell[i][j].getCell();
-                } else {
-                    if (cell[i][j].getCell() && cell[i][j].deathCount < (maxDeathCount - 1)) {
-                        cell[i][j].deathCount++;
-                    }
-                    cellStatesNew[i][j] = false;
-                }
-            }
-        for (int i = 0; i < DIM; i++)
-            for (int j = 0; j < DIM; j++) {
-                cell[i][j].setCell(cellStatesNew[i][j]);
-            }
-    }
-
-    private void calcHighLife() {
-        boolean[][] cellStatesNew = new boolean[DIM][DIM];
-        for (int i = 0; i < DIM; i++)
-            for (int j = 0; j < DIM; j++) {
-                int liveCount = countLive(i, j);
-                if (3 == liveCount || liveCount == 6) {
-                    cellStatesNew[i][j] = true;
-                } else if (liveCount == 2) {
-                    cellStatesNew[i][j] = cell[i][j].getCell();
-                } else {
-                    if (cell[i][j].getCell() && cell[i][j].deathCount < (maxDeathCount - 1)) {
-                        cell[i][j].deathCount++;
-                    }
-                    cellStatesNew[i][j] = false;
-                }
-            }
-        for (int i = 0; i < DIM; i++)
-            for (int j = 0; j < DIM; j++) {
-                cell[i][j].setCell(cellStatesNew[i][j]);
-            }
+        history.record(board);
+        long start = System.nanoTime();
+        board.step();
+        metrics.recordStep(System.nanoTime() - start, board);
+        history.record(board);
+        refreshCells();
     }
 
-    private int countLive(int row, int col) {
-        int liveCount = 0;
-        for (int i = -1; i <= 1; i++)
-            for (int j = -1; j <= 1; j++)
-                if (cell[(row + i + DIM) % DIM][(col + j + DIM) % DIM].getCell())
-                    liveCount++;
-        if (cell[row][col].getCell())
-            liveCount--;
-        return liveCount;
-    }
-
-    private void calc3x3Area(int row, int col) {
-        for (int i = -1; i <= 1; i++)
-            for (int j = -1; j <= 1; j++)
-                cell[(row + i + DIM) % DIM][(col + j + DIM) % DIM].setLiveCount(countLive((row + i + DIM) % DIM, (col + j + DIM) % DIM));
-    }
-
-    // An inner class for a cell
-    public class Cell extends Pane {
-        // Token used for this cell
-        private boolean status = false;
-        private int deathCount = 0;
-        private int liveCount = 0;
-        private int growthValue = 1;
-        private int[] pos;
-        private Text txtCount = new Text(String.valueOf(liveCount));
-        private VBox vCent = new VBox();
-
-        Cell() {
-            setStyle("-fx-background-color: " + deadColor + "; " + grid);
-            txtCount.setFont(Font.font(CELLDIM * 0.666));
-            vCent.setPadding(new Insets(CELLDIM / 18.0, 0, 0, CELLDIM / 3.0));
-            this.getChildren().addAll(vCent);
-            this.setPrefSize(CELLDIM, CELLDIM);
-            this.setOnMousePressed(e -> handleMouseClick());
-            this.setOnMouseDragEntered(e -> handleMouseDrag());
-        }
-
-        /**
-         * Return status
-         */
-        private boolean getCell() {
-            return status;
-        }
-
-        /**
-         * Set Cell status
-         */
-        private void setCell(boolean status) {
-            this.status = status;
-            if (menuItemFilterGrowth.isSelected() && growthValue != 1)
-                setStyle("-fx-background-color: " + growthColor[growthValue] + "; " + grid);
-            else {
-                if (status) {
-                    setStyle("-fx-background-color: " + liveColor + "; " + grid);
-                } else {
-                    if (deathCount >= 0) {
-                        setStyle("-fx-background-color: " + deathColor[deathCount] + "; " + grid);
-                    }
-                }
-            }
-            if (menuItemNumbers.isSelected())
-                setText();
+    /**
+     * Show the newest copy from the simulation, if there is one, called every frame while playing
+     */
+    private void showLatest() {
+        LifeEngine latest = simulation.take();
+        if (latest == null)
+            return;
+        simulation.recycle(shown);
+        shown = latest;
+        view.show(latest);
+        metrics.recordRender(view.getDrawNanos());
+        updateTimeline(latest.getGeneration());
+        if (simulation.isSettled()) {
+            stopLife();
+            reportSettled(simulation.getCycles());
+        } else if (simulation.isReached()) {
+            stopLife();
         }
+    }
 
-        private void setLiveCount(int count) {
-            liveCount = count;
-            if (menuItemNumbers.isSelected())
-                txtCount.setText(String.valueOf(count));
-        }
+    /**
+     * Say a save or checkpoint couldn't be written, without waiting as saves finish while playing
+     */
+    private void reportSaveFailed(File file, IOException ex) {
+        Alert alert = new Alert(Alert.AlertType.ERROR, ex.getMessage());
+        alert.setHeaderText("Couldn't save " + file.getName());
+        alert.show();
+    }
 
-        private void setText() {
-            this.vCent.getChildren().clear();
-            this.vCent.getChildren().addAll(this.txtCount);
-            if (menuItemThemeDark.isSelected() && !status)
-                if (deathCount >= 4 && menuItemTrailFrequency.isSelected())
-                    txtCount.setFill(Color.BLACK);
-                else
-                    txtCount.setFill(Color.WHITE);
-            else
-                if (menuItemGrayscale.isSelected() && status)
-                    txtCount.setFill(Color.WHITE);
-                else
-                    txtCount.setFill(Color.BLACK);
-        }
+    /**
+     * Say what the board settled into, without waiting as this is called while animating
+     */
+    private void reportSettled(CycleDetector cycles) {
+        String message;
+        if (board.population() == 0)
+            message = "Died out at generation " + cycles.getStart();
+        else if (cycles.getPeriod() == 1)
+            message = "Settled into still lifes at generation " + cycles.getStart();
+        else
+            message = "Settled into period " + cycles.getPeriod() + " at generation " + cycles.getStart();
+        Alert alert = new Alert(Alert.AlertType.INFORMATION, message);
+        alert.setHeaderText("Board settled");
+        alert.show();
+    }
 
-        /**
-         * Toggle Cells status
-         */
-        private void toggleCell() {
-            if (menuItemFilterGrowth.isSelected() && growthValue != 1)
-                setStyle("-fx-background-color: " + growthColor[growthValue] + "; " + grid);
-            else {
-                if (status) {
-                    if (deathCount >= 0) {
-                        setStyle("-fx-background-color: " + deathColor[deathCount] + "; " + grid);
-                    }
-                } else {
-                    setStyle("-fx-background-color: " + liveColor + "; " + grid);
-                }
-            }
-            status = !status;
-            if (menuItemNumbers.isSelected()) {
-                setText();
-            }
+    /**
+     * Set the simulation rate from the slider, 1 to 10,000 generations per second or as fast as possible
+     */
+    private void setRate() {
+        double value = slRate.getValue();
+        if (value >= slRate.getMax()) {
+            simulation.setTarget(0);
+            txtRateValue.setText("Max");
+        } else {
+            double rate = Math.pow(10, value / 25);
+            simulation.setTarget(rate);
+            txtRateValue.setText(rate < 10 ? String.format("%.1f/s", rate) : String.format("%.0f/s", rate));
         }
+        if (jumping)
+            simulation.setTarget(0);
+    }
 
-        /**
-         * Handle a mouse click event
-         */
-        private void handleMouseClick() {
-            toggleCell();
-            calc3x3Area(pos[0], pos[1]);
-            if (menuItemFilterGrowth.isSelected())
-                calcGrowth();
-            mirror(pos[0], pos[1], status);
-            duplicate(pos[0], pos[1], status);
-            lastStatus = getCell();
-        }
+    /**
+     * Handle a mouse click event
+     */
+    private void handleMouseClick(MouseEvent e) {
+        if (e.getButton() != MouseButton.PRIMARY)
+            return;
+        int row = view.rowAt(e.getY());
+        int col = view.colAt(e.getX());
+        lastStatus = !view.getBoard().get(row, col);
+        lastCell[0] = row;
+        lastCell[1] = col;
+        setBoardCell(row, col, lastStatus);
+        mirror(row, col, lastStatus);
+        duplicate(row, col, lastStatus);
+        refreshCells();
+    }
 
-        /**
-         * Handle a mouse click event
-         */
-        private void handleMouseDrag() {
-            setCell(lastStatus);
-            calc3x3Area(pos[0], pos[1]);
-            if (menuItemFilterGrowth.isSelected())
-                calcGrowth();
-            mirror(pos[0], pos[1], status);
-            duplicate(pos[0], pos[1], status);
-        }
+    /**
+     * Handle a mouse drag event
+     */
+    private void handleMouseDrag(MouseEvent e) {
+        if (e.getButton() != MouseButton.PRIMARY)
+            return;
+        int row = view.rowAt(e.getY());
+        int col = view.colAt(e.getX());
+        if (row == lastCell[0] && col == lastCell[1])
+            return;
+        lastCell[0] = row;
+        lastCell[1] = col;
+        setBoardCell(row, col, lastStatus);
+        mirror(row, col, lastStatus);
+        duplicate(row, col, lastStatus);
+        refreshCells();
     }
 }
@@ -0,0 +1,568 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Runs a board for some generations without a window
+ *
+ * Starts from a save, a pattern or a random soup, steps it, then
+ * reports the population and timing and optionally saves the final
+ * board. With --settle it stops as soon as the board repeats itself.
+ * Only headless classes are used, so JavaFX is never started.
+ *
+ * With --soups it searches many random soups instead, see SoupSearch,
+ * and reports the objects they leave. With --ensemble it runs many small
+ * random boards 64 at a time, see Ensemble, and reports how long they
+ * last and how dense they end up. With --workers it splits one soup into
+ * stripes stepped by that many processes, see StripeCluster.
+ *
+ * With --checkpoint the board is saved every so often while it steps,
+ * see Checkpointer, and a run started again with the same options
+ * carries on from the last checkpoint rather than starting over.
+ *
+ * java -cp Life.jar LifeBatch --width=1024 --height=1024 --generations=5000
+ */
+
+public class LifeBatch {
+
+    // Time between metrics samples, and between writing the census of a search
+    private static final long METRICS_NANOS = 1_000_000_000L;
+    private static final long CENSUS_NANOS = 10_000_000_000L;
+
+    // Seconds between checkpoints unless told otherwise
+    private static final int CHECKPOINT_SECONDS = 600;
+
+    // Most common objects reported after a search
+    private static final int TOP = 10;
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: java -cp Life.jar LifeBatch [options]",
+            "  --pattern=FILE       start from a save or a .rle, .mc or .cells pattern,",
+            "                       otherwise a random soup",
+            "  --width=N            soup width (default 256), or least pattern board width",
+            "  --height=N           soup height (default 256), or least pattern board height",
+            "  --density=D          chance each soup cell is alive (default 0.5)",
+            "  --seed=N             soup seed (default 0)",
+            "  --rule=RULE          rule eg. B36/S23 (default the pattern's, or Life)",
+            "  --generations=N      generations to run (default 1000)",
+            "  --settle             stop early once the board settles into a cycle, on the heap",
+            "  --threads=N          threads stepping the board (default one per core)",
+            "  --hashlife           jump with HashLife when the sides are powers of two",
+            "  --scalar             step without the Vector API even when it is available",
+            "  --offheap            keep the board outside the heap, width a multiple of 64",
+            "  --map=FILE           keep the board off the heap in a memory mapped file",
+            "  --unbounded          run on an endless plane instead of wrapping, on one thread",
+            "  --out=FILE           save the final board, as a pattern if named .rle, .mc or .cells,",
+            "                       only as .rle when unbounded",
+            "  --stats=FILE         write statistics to a file instead of the console",
+            "  --metrics=FILE       write a metrics sample each second, as JSON if named .json else CSV",
+            "  --checkpoint=FILE    save the board to FILE while it steps and at the end, on the heap,",
+            "                       carrying on from it if it is there when started",
+            "  --checkpoint-every=N seconds between checkpoints (default 600)",
+            "  --soups=N            search N random soups from --seed for the objects they leave,",
+            "                       on boards 128x128 by default, for at most 30000 generations each",
+            "  --soup=N             side of each soup searched (default 16)",
+            "  --census=FILE        write the objects found as CSV every 10 seconds and at the end",
+            "  --ensemble=N         run N random boards 64 at a time until they settle, reporting how",
+            "                       long they last and how dense they end up, on boards 32x32 by default",
+            "  --workers=N          split the soup into N stripes, each stepped by a process of its own",
+            "                       on --threads threads, swapping edge rows with its neighbors",
+            "  --halo=N             edge rows swapped at a time, and generations between swaps (default 1)");
+
+    private static final List<String> OPTIONS = Arrays.asList("batch", "help", "pattern", "width", "height",
+            "density", "seed", "rule", "generations", "settle", "threads", "hashlife", "scalar", "offheap", "map", "unbounded", "out", "stats", "metrics",
+            "checkpoint", "checkpoint-every", "soups", "soup", "census", "ensemble", "workers", "halo");
+
+    private LifeBatch() {
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out));
+    }
+
+    /**
+     * Run from command line arguments, returning the exit status
+     */
+    public static int run(String[] args, PrintStream out) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            String name = equals < 0 ? arg : arg.substring(0, equals);
+            if (!name.startsWith("--") || !OPTIONS.contains(name.substring(2))) {
+                System.err.println("Unknown argument: " + arg);
+                System.err.println(USAGE);
+                return 1;
+            }
+            if (equals < 0)
+                options.put(arg.substring(2), "true");
+            else
+                options.put(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        if (options.containsKey("help")) {
+            out.println(USAGE);
+            return 0;
+        }
+
+        if (options.containsKey("soups") || options.containsKey("ensemble") || options.containsKey("workers"))
+            try {
+                if (options.containsKey("workers"))
+                    return distribute(options, out);
+                return options.containsKey("soups") ? search(options, out) : study(options, out);
+            } catch (IOException | IllegalArgumentException ex) {
+                System.err.println(ex.getMessage());
+                System.err.println(USAGE);
+                return 1;
+            }
+
+        Board board = null;
+        try {
+            if (options.containsKey("offheap") || options.containsKey("map"))
+                board = loadOffHeap(options);
+            else if (options.containsKey("pattern"))
+                board = PatternFile.read(new File(options.get("pattern")),
+                        intOption(options, "width", 1), intOption(options, "height", 1));
+            else
+                board = new LifeEngine(intOption(options, "width", 256), intOption(options, "height", 256));
+            if (!options.containsKey("pattern"))
+                board.randomize(Long.parseLong(options.getOrDefault("seed", "0")),
+                        Double.parseDouble(options.getOrDefault("density", "0.5")));
+            if (options.containsKey("rule"))
+                board.setRule(Rule.forName(options.get("rule")));
+            long generations = Long.parseLong(options.getOrDefault("generations", "1000"));
+
+            // Carries on from the last checkpoint, stepping only the generations left
+            Checkpointer checkpointer = null;
+            long resumedAt = -1;
+            if (options.containsKey("checkpoint")) {
+                if (!(board instanceof LifeEngine) || options.containsKey("unbounded") || options.containsKey("hashlife"))
+                    throw new IllegalArgumentException("--checkpoint needs a wrapping board on the heap, without --hashlife");
+                checkpointer = new Checkpointer(new File(options.get("checkpoint")));
+                checkpointer.setInterval(intOption(options, "checkpoint-every", CHECKPOINT_SECONDS));
+                long end = board.getGeneration() + generations;
+                LifeEngine recovered = Checkpointer.recover(checkpointer.getFile());
+                if (recovered != null) {
+                    if (recovered.getWidth() != board.getWidth() || recovered.getHeight() != board.getHeight())
+                        throw new IllegalArgumentException("Checkpoint is a different size: " + checkpointer.getFile());
+                    board = recovered;
+                    resumedAt = board.getGeneration();
+                    generations = Math.max(0, end - resumedAt);
+                }
+            }
+            int threads = intOption(options, "threads", Runtime.getRuntime().availableProcessors());
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            board.setPool(pool);
+            board.setVectorized(!options.containsKey("scalar"));
+
+            // An endless plane starting from the board
+            SparseBoard plane = null;
+            if (options.containsKey("unbounded")) {
+                if (!(board instanceof LifeEngine))
+                    throw new IllegalArgumentException("--unbounded can't be used off the heap");
+                if (!SparseBoard.fits(board.getRule()))
+                    throw new IllegalArgumentException("--unbounded can't run B0 rules, they fill the plane");
+                if (options.containsKey("out") && !options.get("out").toLowerCase().endsWith(".rle"))
+                    throw new IllegalArgumentException("--out must be an .rle with --unbounded");
+                plane = new SparseBoard();
+                plane.setRule(board.getRule());
+                plane.setGeneration(board.getGeneration());
+                plane.load(board, 0, 0);
+            }
+
+            // Spots the board settling, checked before each step
+            CycleDetector cycles = null;
+            if (options.containsKey("settle")) {
+                if (!(board instanceof LifeEngine) || plane != null)
+                    throw new IllegalArgumentException("--settle needs a wrapping board on the heap");
+                cycles = new CycleDetector();
+            }
+
+            long startPopulation = board.population();
+            long start = System.nanoTime();
+            boolean hashLife = options.containsKey("hashlife") && board instanceof LifeEngine
+                    && HashLife.fits((LifeEngine) board) && plane == null && cycles == null;
+            if (plane != null) {
+                for (long i = 0; i < generations; i++)
+                    plane.step();
+            } else if (hashLife) {
+                HashLife jumper = new HashLife(board.getRule(), 1 << 22);
+                jumper.load((LifeEngine) board);
+                jumper.jump(generations);
+                jumper.store((LifeEngine) board);
+            } else if (options.containsKey("metrics")) {
+                generations = stepWithMetrics(board, generations, new File(options.get("metrics")), cycles, checkpointer);
+            } else {
+                generations = step(board, generations, cycles, checkpointer);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if (checkpointer != null) {
+                checkpointer.checkpoint((LifeEngine) board);
+                checkpointer.close();
+                if (checkpointer.getError() != null)
+                    throw checkpointer.getError();
+            }
+            pool.shutdown();
+
+            if (options.containsKey("out") && plane != null)
+                PatternFile.write(new File(options.get("out")), plane);
+            else if (options.containsKey("out"))
+                PatternFile.write(new File(options.get("out")), board);
+
+            PrintStream stats = options.containsKey("stats")
+                    ? new PrintStream(new FileOutputStream(options.get("stats")), true) : out;
+            stats.println("rule=" + board.getRule());
+            if (plane != null) {
+                stats.println("size=unbounded");
+                stats.println("engine=sparse");
+                stats.println("chunks=" + plane.getChunks());
+                stats.println("bounds=" + plane.getTop() + "," + plane.getLeft() + " to "
+                        + plane.getBottom() + "," + plane.getRight());
+            } else {
+                stats.println("size=" + board.getWidth() + "x" + board.getHeight());
+                stats.println("engine=" + (hashLife ? "hashlife" : board instanceof OffHeapBoard ? "offheap" : "packed"));
+            }
+            stats.println("threads=" + threads);
+            stats.println("vector=" + (!hashLife && plane == null && board.isVectorized()));
+            stats.println("generations=" + generations);
+            if (resumedAt >= 0)
+                stats.println("resumed.at=" + resumedAt);
+            if (cycles != null) {
+                stats.println("settled=" + cycles.isSettled());
+                if (cycles.isSettled()) {
+                    stats.println("period=" + cycles.getPeriod());
+                    stats.println("settled.at=" + cycles.getStart());
+                }
+            }
+            stats.println("start.population=" + startPopulation);
+            stats.println("end.population=" + (plane == null ? board.population() : plane.population()));
+            if (board instanceof LifeEngine && plane == null)
+                stats.println("hash=" + Long.toHexString(((LifeEngine) board).getHash()));
+            stats.printf("seconds=%.3f%n", seconds);
+            stats.printf("gens.per.sec=%.1f%n", generations / seconds);
+            if (plane == null)
+                stats.printf("cells.per.sec=%.4g%n", generations / seconds * board.getWidth() * board.getHeight());
+            if (stats != out)
+                stats.close();
+            return 0;
+        } catch (IOException | IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(USAGE);
+            return 1;
+        } finally {
+            if (board instanceof OffHeapBoard)
+                try {
+                    ((OffHeapBoard) board).close();
+                } catch (IOException ex) {
+                    System.err.println(ex.getMessage());
+                }
+        }
+    }
+
+    /**
+     * Search soups on a pool, writing the census as it fills, then report the most common objects
+     */
+    private static int search(Map<String, String> options, PrintStream out) throws IOException {
+        long soups = Long.parseLong(options.get("soups"));
+        if (soups < 1)
+            throw new IllegalArgumentException("--soups must be at least 1");
+        int width = intOption(options, "width", 128);
+        int height = intOption(options, "height", 128);
+        int size = intOption(options, "soup", 16);
+        long seed = Long.parseLong(options.getOrDefault("seed", "0"));
+        Rule rule = options.containsKey("rule") ? Rule.forName(options.get("rule")) : Rule.LIFE;
+        long generations = Long.parseLong(options.getOrDefault("generations", "30000"));
+        int threads = intOption(options, "threads", Runtime.getRuntime().availableProcessors());
+        File censusFile = options.containsKey("census") ? new File(options.get("census")) : null;
+        SoupSearch search = new SoupSearch(width, height, size,
+                Double.parseDouble(options.getOrDefault("density", "0.5")), rule, generations);
+        Census census = search.getCensus();
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            ForkJoinTask<Void> task = search.start(seed, 0, soups, pool);
+            while (!task.isDone()) {
+                try {
+                    task.get(CENSUS_NANOS, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException ex) {
+                    if (censusFile != null)
+                        census.write(censusFile);
+                } catch (InterruptedException | ExecutionException ex) {
+                    // Any failure is thrown again by join
+                    break;
+                }
+            }
+            task.join();
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (censusFile != null)
+            census.write(censusFile);
+
+        PrintStream stats = options.containsKey("stats")
+                ? new PrintStream(new FileOutputStream(options.get("stats")), true) : out;
+        stats.println("rule=" + rule);
+        stats.println("size=" + width + "x" + height);
+        stats.println("soup=" + size + "x" + size);
+        stats.println("threads=" + threads);
+        stats.println("seed=" + seed);
+        stats.println("soups=" + census.getSoups());
+        stats.println("unsettled=" + census.getUnsettled());
+        stats.println("objects=" + census.getObjects());
+        stats.println("distinct=" + census.getDistinct());
+        stats.printf("seconds=%.3f%n", seconds);
+        stats.printf("soups.per.sec=%.1f%n", census.getSoups() / seconds);
+        List<Map.Entry<String, Long>> common = census.sorted();
+        for (Map.Entry<String, Long> entry : common.subList(0, Math.min(TOP, common.size())))
+            stats.println("census." + entry.getKey() + "=" + entry.getValue());
+        if (stats != out)
+            stats.close();
+        return 0;
+    }
+
+    /**
+     * Step a soup split into stripes between processes, then report the population and timing
+     */
+    private static int distribute(Map<String, String> options, PrintStream out) throws IOException {
+        for (String option : Arrays.asList("pattern", "offheap", "map", "unbounded", "hashlife", "settle", "out", "metrics"))
+            if (options.containsKey(option))
+                throw new IllegalArgumentException("--" + option + " can't be used with --workers");
+        int workers = intOption(options, "workers", 1);
+        int width = intOption(options, "width", 256);
+        int height = intOption(options, "height", 256);
+        int halo = intOption(options, "halo", 1);
+        int threads = intOption(options, "threads",
+                Math.max(1, Runtime.getRuntime().availableProcessors() / workers));
+        long seed = Long.parseLong(options.getOrDefault("seed", "0"));
+        double density = Double.parseDouble(options.getOrDefault("density", "0.5"));
+        Rule rule = options.containsKey("rule") ? Rule.forName(options.get("rule")) : Rule.LIFE;
+        long generations = Long.parseLong(options.getOrDefault("generations", "1000"));
+        StripeCluster cluster = new StripeCluster(width, height, workers, halo, threads, rule);
+
+        long start = System.nanoTime();
+        cluster.run(seed, density, generations);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        PrintStream stats = options.containsKey("stats")
+                ? new PrintStream(new FileOutputStream(options.get("stats")), true) : out;
+        stats.println("rule=" + rule);
+        stats.println("size=" + width + "x" + height);
+        stats.println("workers=" + workers);
+        stats.println("threads=" + threads);
+        stats.println("halo=" + halo);
+        stats.println("seed=" + seed);
+        stats.println("generations=" + generations);
+        stats.println("population=" + cluster.getPopulation());
+        stats.println("hash=" + Long.toHexString(cluster.getHash()));
+        stats.printf("seconds=%.3f%n", seconds);
+        stats.printf("gens.per.sec=%.1f%n", generations / seconds);
+        stats.printf("exchange.share=%.3f%n", cluster.getExchangeShare());
+        if (stats != out)
+            stats.close();
+        return 0;
+    }
+
+    /**
+     * Run random boards in ensembles on a pool, then report how long they lasted and how dense they ended up
+     */
+    private static int study(Map<String, String> options, PrintStream out) throws IOException {
+        long boards = Long.parseLong(options.get("ensemble"));
+        if (boards < 1)
+            throw new IllegalArgumentException("--ensemble must be at least 1");
+        int width = intOption(options, "width", 32);
+        int height = intOption(options, "height", 32);
+        double density = Double.parseDouble(options.getOrDefault("density", "0.5"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "0"));
+        Rule rule = options.containsKey("rule") ? Rule.forName(options.get("rule")) : Rule.LIFE;
+        long generations = Long.parseLong(options.getOrDefault("generations", "1000"));
+        int threads = intOption(options, "threads", Runtime.getRuntime().availableProcessors());
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long[] totals = new long[5];
+        try {
+            List<ForkJoinTask<long[]>> tasks = new ArrayList<>();
+            for (long first = 0; first < boards; first += Ensemble.BOARDS) {
+                long n = first / Ensemble.BOARDS;
+                long mask = boards - first >= Ensemble.BOARDS ? -1L : (1L << (boards - first)) - 1;
+                tasks.add(pool.submit(() -> runEnsemble(width, height, rule,
+                        seed * 0x9E3779B97F4A7C15L + n, density, generations, mask)));
+            }
+            for (ForkJoinTask<long[]> task : tasks) {
+                long[] result = task.join();
+                for (int i = 0; i < totals.length; i++)
+                    totals[i] += result[i];
+            }
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long died = totals[0];
+        long settled = totals[1];
+
+        PrintStream stats = options.containsKey("stats")
+                ? new PrintStream(new FileOutputStream(options.get("stats")), true) : out;
+        stats.println("rule=" + rule);
+        stats.println("size=" + width + "x" + height);
+        stats.println("threads=" + threads);
+        stats.println("seed=" + seed);
+        stats.println("boards=" + boards);
+        stats.println("died=" + died);
+        stats.println("settled=" + settled);
+        stats.println("unsettled=" + (boards - settled));
+        stats.printf("mean.lifetime=%.2f%n", settled == 0 ? 0.0 : (double) totals[2] / settled);
+        stats.printf("mean.density=%.5f%n", (double) totals[3] / boards / ((long) width * height));
+        stats.printf("seconds=%.3f%n", seconds);
+        stats.printf("boards.per.sec=%.1f%n", boards / seconds);
+        stats.printf("cells.per.sec=%.3e%n", totals[4] * (double) width * height / seconds);
+        if (stats != out)
+            stats.close();
+        return 0;
+    }
+
+    /**
+     * Run the boards of one ensemble in mask until they settle or reach the most generations, returning
+     * how many died, how many settled, the generations they lasted, their final population and the
+     * board generations stepped
+     */
+    private static long[] runEnsemble(int width, int height, Rule rule, long seed, double density,
+            long generations, long mask) {
+        Ensemble ensemble = new Ensemble(width, height);
+        ensemble.setRule(rule);
+        ensemble.randomize(seed, density);
+        long[] lifetimes = new long[Ensemble.BOARDS];
+        long unsettled = mask;
+        while (unsettled != 0 && ensemble.getGeneration() < generations) {
+            ensemble.step();
+            unsettled &= ensemble.getUnsettled();
+            for (long bits = unsettled; bits != 0; bits &= bits - 1)
+                lifetimes[Long.numberOfTrailingZeros(bits)] = ensemble.getGeneration();
+        }
+        long[] populations = ensemble.populations();
+        long[] result = new long[5];
+        for (long bits = mask; bits != 0; bits &= bits - 1) {
+            int k = Long.numberOfTrailingZeros(bits);
+            if (populations[k] == 0)
+                result[0]++;
+            if ((unsettled >>> k & 1) == 0) {
+                result[1]++;
+                result[2] += lifetimes[k];
+            }
+            result[3] += populations[k];
+        }
+        result[4] = ensemble.getGeneration() * Ensemble.BOARDS;
+        return result;
+    }
+
+    /**
+     * Make an off heap board, mapped if a file is given, from a save, a pattern, or empty for a soup
+     */
+    private static OffHeapBoard loadOffHeap(Map<String, String> options) throws IOException {
+        File map = options.containsKey("map") ? new File(options.get("map")) : null;
+        if (!options.containsKey("pattern")) {
+            int width = intOption(options, "width", 256);
+            int height = intOption(options, "height", 256);
+            return map == null ? new OffHeapBoard(width, height) : new OffHeapBoard(width, height, map);
+        }
+        File file = new File(options.get("pattern"));
+        if (!PatternFile.isPattern(file))
+            return SaveFile.readOffHeap(file, map);
+
+        // Patterns are small, so read onto the heap, as wide as a whole number of words
+        int minHeight = intOption(options, "height", 1);
+        LifeEngine pattern = PatternFile.read(file, intOption(options, "width", 1), minHeight);
+        if (pattern.getWidth() % 64 != 0)
+            pattern = PatternFile.read(file, (pattern.getWidth() + 63) & ~63, minHeight);
+        OffHeapBoard board = map == null ? new OffHeapBoard(pattern.getWidth(), pattern.getHeight())
+                : new OffHeapBoard(pattern.getWidth(), pattern.getHeight(), map);
+        long[] row = new long[pattern.getWords()];
+        for (int r = 0; r < pattern.getHeight(); r++) {
+            pattern.getRow(r, row);
+            board.setRow(r, row);
+        }
+        board.setRule(pattern.getRule());
+        board.setGeneration(pattern.getGeneration());
+        return board;
+    }
+
+    /**
+     * Step a board, stopping early if cycles isn't null and it settles, returning the generations stepped,
+     * and taking checkpoints as they come due if checkpointer isn't null
+     */
+    private static long step(Board board, long generations, CycleDetector cycles, Checkpointer checkpointer) {
+        for (long i = 0; i < generations; i++) {
+            if (cycles != null && cycles.record((LifeEngine) board))
+                return i;
+            board.step();
+            if (checkpointer != null)
+                checkpointer.capture((LifeEngine) board);
+        }
+        return generations;
+    }
+
+    /**
+     * Step a board like step(), writing a metrics sample about once a second and once at the end
+     */
+    private static long stepWithMetrics(Board board, long generations, File file, CycleDetector cycles,
+            Checkpointer checkpointer) throws IOException {
+        boolean json = file.getName().toLowerCase().endsWith(".json");
+        try (PrintStream metricsOut = new PrintStream(new FileOutputStream(file), true)) {
+            Metrics metrics = new Metrics();
+            if (json)
+                metricsOut.println("[");
+            else
+                Metrics.writeCsvHeader(metricsOut);
+            long next = System.nanoTime() + METRICS_NANOS;
+            long stepped = 0;
+            for (; stepped < generations; stepped++) {
+                if (cycles != null && cycles.record((LifeEngine) board))
+                    break;
+                long start = System.nanoTime();
+                board.step();
+                long end = System.nanoTime();
+                metrics.recordStep(end - start, board);
+                if (checkpointer != null)
+                    checkpointer.capture((LifeEngine) board);
+                if (end >= next) {
+                    metrics.recordBoard(board);
+                    writeSample(metricsOut, metrics.sample(), json, false);
+                    next = end + METRICS_NANOS;
+                }
+            }
+            metrics.recordBoard(board);
+            writeSample(metricsOut, metrics.sample(), json, true);
+            if (metricsOut.checkError())
+                throw new IOException("Could not write metrics: " + file);
+            return stepped;
+        }
+    }
+
+    private static void writeSample(PrintStream out, Metrics.Sample sample, boolean json, boolean last) {
+        if (!json)
+            out.println(sample.toCsv());
+        else
+            out.println("  " + sample.toJson() + (last ? "\n]" : ","));
+    }
+
+    private static int intOption(Map<String, String> options, String name, int fallback) {
+        if (!options.containsKey(name))
+            return fallback;
+        int value = Integer.parseInt(options.get(name));
+        if (value < 1)
+            throw new IllegalArgumentException("--" + name + " must be at least 1");
+        return value;
+    }
+}
@@ -0,0 +1,825 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Headless Game of Life board
+ *
+ * Cells are packed 64 to a long, one row after another, and each
+ * generation is computed a whole word at a time with bitwise adders.
+ * The board wraps around at the edges like a torus.
+ *
+ * Given a pool, each step is split into bands of rows computed in
+ * parallel. Bands read their edge rows from the shared current
+ * generation and write only their own rows of the next one, see
+ * StepBands.
+ *
+ * The board is also split into tiles one word wide. A tile is only
+ * stepped if it or a neighbor changed last generation, otherwise it
+ * sleeps. A sleeping tile is the same in both buffers, so it needs
+ * no copying either. Likewise if a tile and its neighbors are the
+ * same as two generations ago, its next generation is already in the
+ * other buffer, so blinkers and other period 2 ash sleep too.
+ *
+ * Rows where most tiles step are stepped whole by a RowStepper using
+ * the Vector API, when started with --add-modules jdk.incubator.vector.
+ * Only the two edge words of a row wrap, so they are always stepped
+ * here, and the rows above and below are found once per row.
+ *
+ * Neighbor counts per cell can also be kept, as four bit planes, with
+ * two more marking the cells that will be born or die next generation,
+ * for drawing numbers and growth. They are worked out in the same sweep
+ * as the step, a row behind it, from the new rows just written, and only
+ * around words that changed. Only the first and last row of each row of
+ * tiles, whose neighbors may belong to another band, are left for after.
+ *
+ * A 64 bit hash of the cells is kept the same way, each word adding a
+ * mix of its value and place, so only words that changed are hashed.
+ * Boards with the same cells have the same hash, for spotting cycles.
+ */
+
+public class LifeEngine implements Board {
+
+    // Deaths counted per cell for trails, saturating
+    public static final int MAX_DEATHS = 6;
+
+    // Fewest tile rows worth handing to another thread
+    private static final int MINBAND = 2;
+
+    // Rows in a tile
+    private static final int TILEROWS = 32;
+
+    // Dimensions of board
+    private final int width;
+    private final int height;
+    private final int words;
+    private final int lastBit;
+    private final long lastMask;
+    private final int tileRows;
+
+    // Current and next generation, swapped after each step
+    private long[] cells;
+    private long[] next;
+
+    // Tile modes
+    private static final byte SLEEP = 0;
+    private static final byte FLIP = 1;
+    private static final byte STEP = 2;
+
+    // Tiles changed since one and two generations ago, and what to do with each tile
+    private boolean[] changed;
+    private boolean[] changedNext;
+    private boolean[] flipped;
+    private boolean[] flippedNext;
+    private byte[] mode;
+    private int activeTiles = 0;
+
+    // Tiles to step in each row of tiles
+    private int[] stepping;
+
+    // Live neighbors of each cell as four bit planes, and cells that will be born or die, or null if not kept
+    private long[] counts0;
+    private long[] counts1;
+    private long[] counts2;
+    private long[] counts3;
+    private long[] bornNext;
+    private long[] diesNext;
+
+    // Steps left to step every tile, after the board was edited, and
+    // every tile in each row of tiles, after cells in or next to it were set
+    private int forced = 2;
+    private byte[] forcedRows;
+
+    // Hash of the live cells, kept as words change
+    private long hash = 0;
+
+    // Times the cells or deaths were changed other than by stepping
+    private long edits = 0;
+
+    // Death counts per cell as three bit planes
+    private long[] deaths0;
+    private long[] deaths1;
+    private long[] deaths2;
+
+    private Rule rule = Rule.LIFE;
+    private int birth = rule.getBirth();
+    private int survive = rule.getSurvive();
+    private boolean life = true;
+    private long generation = 0;
+    private ForkJoinPool pool;
+
+    // Tasks splitting a step into bands, kept and reused every step
+    private StepBands<long[]> bands;
+
+    // Steps dense rows with the Vector API where it is available, or null
+    private static final RowStepper VECTOR = RowStepper.vector();
+    private RowStepper stepper = VECTOR;
+    private long[] denseRow;
+
+    public LifeEngine(int width, int height) {
+        if (width < 1 || height < 1)
+            throw new IllegalArgumentException("Board must be at least 1x1");
+        if ((long) ((width + 63) >>> 6) * height > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Board is too large");
+        this.width = width;
+        this.height = height;
+        words = (width + 63) >>> 6;
+        lastBit = (width - 1) & 63;
+        lastMask = -1L >>> (63 - lastBit);
+        tileRows = (height + TILEROWS - 1) / TILEROWS;
+        cells = new long[words * height];
+        next = new long[words * height];
+        changed = new boolean[words * tileRows];
+        changedNext = new boolean[words * tileRows];
+        flipped = new boolean[words * tileRows];
+        flippedNext = new boolean[words * tileRows];
+        mode = new byte[words * tileRows];
+        stepping = new int[tileRows];
+        forcedRows = new byte[tileRows];
+        denseRow = new long[words];
+        deaths0 = new long[words * height];
+        deaths1 = new long[words * height];
+        deaths2 = new long[words * height];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public void setGeneration(long generation) {
+        this.generation = generation;
+    }
+
+    public Rule getRule() {
+        return rule;
+    }
+
+    /**
+     * Set the pool used to step bands of rows in parallel, or null to step on the calling thread
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Return whether the Vector API could be loaded, eg. with --add-modules jdk.incubator.vector
+     */
+    public static boolean isVectorAvailable() {
+        return VECTOR != null;
+    }
+
+    /**
+     * Step dense rows with the Vector API if available, or every word one at a time
+     */
+    public void setVectorized(boolean vectorized) {
+        stepper = vectorized ? VECTOR : null;
+    }
+
+    public boolean isVectorized() {
+        return stepper != null;
+    }
+
+    public void setRule(Rule rule) {
+        boolean same = rule.equals(this.rule);
+        this.rule = rule;
+        birth = rule.getBirth();
+        survive = rule.getSurvive();
+        life = birth == Rule.LIFE.getBirth() && survive == Rule.LIFE.getSurvive();
+        forced = 2;
+        if (!same)
+            recount();
+    }
+
+    /**
+     * Return how many tiles were stepped last generation
+     */
+    public int getActiveTiles() {
+        return activeTiles;
+    }
+
+    /**
+     * Return how many times the cells or deaths were changed other than by stepping,
+     * so a step since a board was last looked at can be told from an edit
+     */
+    public long getEdits() {
+        return edits;
+    }
+
+    /**
+     * Return status of a cell
+     */
+    public boolean get(int row, int col) {
+        return (cells[row * words + (col >>> 6)] >>> col & 1L) != 0;
+    }
+
+    /**
+     * Set status of a cell
+     */
+    public void set(int row, int col, boolean status) {
+        int i = row * words + (col >>> 6);
+        long old = cells[i];
+        if (status)
+            cells[i] |= 1L << col;
+        else
+            cells[i] &= ~(1L << col);
+        hash ^= hashWord(i, old) ^ hashWord(i, cells[i]);
+        edits++;
+        force(row);
+        recountAround(row);
+    }
+
+    /**
+     * Keep a count of live neighbors for every cell, or stop and free it
+     */
+    public void setTrackCounts(boolean track) {
+        if (!track) {
+            counts0 = null;
+            counts1 = null;
+            counts2 = null;
+            counts3 = null;
+            bornNext = null;
+            diesNext = null;
+        } else if (counts0 == null) {
+            allocateCounts();
+            recount();
+        }
+    }
+
+    private void allocateCounts() {
+        counts0 = new long[words * height];
+        counts1 = new long[words * height];
+        counts2 = new long[words * height];
+        counts3 = new long[words * height];
+        bornNext = new long[words * height];
+        diesNext = new long[words * height];
+    }
+
+    /**
+     * Return the live neighbors of a cell, from the kept counts if there are any
+     */
+    public int getCount(int row, int col) {
+        if (counts0 == null)
+            return countNeighbors(row, col);
+        int i = row * words + (col >>> 6);
+        return (int) ((counts0[i] >>> col & 1L) | (counts1[i] >>> col & 1L) << 1
+                | (counts2[i] >>> col & 1L) << 2 | (counts3[i] >>> col & 1L) << 3);
+    }
+
+    /**
+     * Return 0 if a live cell will die next generation, 2 if a dead cell will be born, otherwise 1
+     */
+    public int getGrowth(int row, int col) {
+        if (counts0 == null) {
+            boolean alive = get(row, col);
+            boolean next = rule.next(alive, countNeighbors(row, col));
+            return alive == next ? 1 : next ? 2 : 0;
+        }
+        int i = row * words + (col >>> 6);
+        return (int) (1 + (bornNext[i] >>> col & 1L) - (diesNext[i] >>> col & 1L));
+    }
+
+    /**
+     * Return how many times a cell has died, up to MAX_DEATHS
+     */
+    public int getDeaths(int row, int col) {
+        int i = row * words + (col >>> 6);
+        return (int) ((deaths0[i] >>> col & 1L) | (deaths1[i] >>> col & 1L) << 1 | (deaths2[i] >>> col & 1L) << 2);
+    }
+
+    /**
+     * Return how many longs hold a row, 64 cells to a long
+     */
+    public int getWords() {
+        return words;
+    }
+
+    /**
+     * Copy a row of packed cells, bit b of word w is column w * 64 + b
+     */
+    public void getRow(int row, long[] dest) {
+        System.arraycopy(cells, row * words, dest, 0, words);
+    }
+
+    /**
+     * Replace a row of packed cells
+     */
+    public void setRow(int row, long[] src) {
+        for (int w = 0; w < words; w++) {
+            int i = row * words + w;
+            long word = w == words - 1 ? src[w] & lastMask : src[w];
+            hash ^= hashWord(i, cells[i]) ^ hashWord(i, word);
+            cells[i] = word;
+        }
+        edits++;
+        force(row);
+        recountAround(row);
+    }
+
+    /**
+     * Step every tile in the row of tiles holding a row, and the rows of tiles either side, for two steps
+     */
+    private void force(int row) {
+        int tr = row / TILEROWS;
+        forcedRows[tr] = 2;
+        forcedRows[(tr + 1) % tileRows] = 2;
+        forcedRows[(tr + tileRows - 1) % tileRows] = 2;
+    }
+
+    /**
+     * Copy a row of one bit plane of the death counts, plane 0 is the lowest bit
+     */
+    public void getDeathRow(int row, int plane, long[] dest) {
+        System.arraycopy(deathPlane(plane), row * words, dest, 0, words);
+    }
+
+    /**
+     * Replace a row of one bit plane of the death counts
+     */
+    public void setDeathRow(int row, int plane, long[] src) {
+        System.arraycopy(src, 0, deathPlane(plane), row * words, words);
+        deathPlane(plane)[row * words + words - 1] &= lastMask;
+        edits++;
+    }
+
+    private long[] deathPlane(int plane) {
+        if (plane == 0)
+            return deaths0;
+        return plane == 1 ? deaths1 : deaths2;
+    }
+
+    /**
+     * Copy the cells, deaths, counts, rule and generation onto a board of the same size
+     */
+    public void copyTo(LifeEngine dest) {
+        if (dest.width != width || dest.height != height)
+            throw new IllegalArgumentException("Boards must be the same size");
+        System.arraycopy(cells, 0, dest.cells, 0, cells.length);
+        System.arraycopy(deaths0, 0, dest.deaths0, 0, deaths0.length);
+        System.arraycopy(deaths1, 0, dest.deaths1, 0, deaths1.length);
+        System.arraycopy(deaths2, 0, dest.deaths2, 0, deaths2.length);
+        if (counts0 == null) {
+            dest.setTrackCounts(false);
+        } else {
+            if (dest.counts0 == null)
+                dest.allocateCounts();
+            System.arraycopy(counts0, 0, dest.counts0, 0, counts0.length);
+            System.arraycopy(counts1, 0, dest.counts1, 0, counts1.length);
+            System.arraycopy(counts2, 0, dest.counts2, 0, counts2.length);
+            System.arraycopy(counts3, 0, dest.counts3, 0, counts3.length);
+            System.arraycopy(bornNext, 0, dest.bornNext, 0, bornNext.length);
+            System.arraycopy(diesNext, 0, dest.diesNext, 0, diesNext.length);
+        }
+        dest.setRule(rule);
+        dest.hash = hash;
+        dest.generation = generation;
+        dest.activeTiles = activeTiles;
+        dest.edits++;
+    }
+
+    /**
+     * Return how many longs getState and setState use, the cells then each plane of deaths
+     */
+    public int getStateLength() {
+        return cells.length * 4;
+    }
+
+    /**
+     * Copy the cells and deaths into one array, without the rule or generation
+     */
+    public void getState(long[] dest) {
+        int n = cells.length;
+        System.arraycopy(cells, 0, dest, 0, n);
+        System.arraycopy(deaths0, 0, dest, n, n);
+        System.arraycopy(deaths1, 0, dest, n * 2, n);
+        System.arraycopy(deaths2, 0, dest, n * 3, n);
+    }
+
+    /**
+     * Return one long of what getState copies
+     */
+    public long getStateWord(int i) {
+        int n = cells.length;
+        if (i < n)
+            return cells[i];
+        if (i < n * 2)
+            return deaths0[i - n];
+        return i < n * 3 ? deaths1[i - n * 2] : deaths2[i - n * 3];
+    }
+
+    /**
+     * Find the longs of getState that differ from state, looking only in tiles the last
+     * step changed, putting their indexes into dest in order and returning how many
+     */
+    public int findChanged(long[] state, int[] dest) {
+        int n = cells.length;
+        int count = 0;
+        for (int plane = 0; plane < 4; plane++) {
+            long[] src = plane == 0 ? cells : deathPlane(plane - 1);
+            for (int tr = 0; tr < tileRows; tr++) {
+                int tile = tr * words;
+                boolean any = false;
+                for (int w = 0; w < words; w++)
+                    any |= changed[tile + w];
+                if (!any)
+                    continue;
+                for (int row = tr * TILEROWS; row < Math.min(height, (tr + 1) * TILEROWS); row++)
+                    for (int w = 0; w < words; w++) {
+                        int i = row * words + w;
+                        if (changed[tile + w] && src[i] != state[plane * n + i])
+                            dest[count++] = plane * n + i;
+                    }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Replace the cells and deaths from an array filled by getState
+     */
+    public void setState(long[] src) {
+        int n = cells.length;
+        System.arraycopy(src, 0, cells, 0, n);
+        System.arraycopy(src, n, deaths0, 0, n);
+        System.arraycopy(src, n * 2, deaths1, 0, n);
+        System.arraycopy(src, n * 3, deaths2, 0, n);
+        hash = 0;
+        for (int i = 0; i < n; i++)
+            hash ^= hashWord(i, cells[i]);
+        edits++;
+        recount();
+        forced = 2;
+    }
+
+    /**
+     * Kill every cell and forget their deaths
+     */
+    public void clear() {
+        java.util.Arrays.fill(cells, 0L);
+        hash = 0;
+        java.util.Arrays.fill(deaths0, 0L);
+        java.util.Arrays.fill(deaths1, 0L);
+        java.util.Arrays.fill(deaths2, 0L);
+        edits++;
+        recount();
+        forced = 2;
+        generation = 0;
+    }
+
+    /**
+     * Fill the board with random cells, each alive with chance density
+     */
+    public void randomize(long seed, double density) {
+        if (density < 0 || density > 1)
+            throw new IllegalArgumentException("Density must be 0 to 1");
+        long[] src = new long[words];
+        clear();
+        for (int row = 0; row < height; row++) {
+            Board.randomRow(seed, density, row, width, src);
+            for (int w = 0; w < words; w++) {
+                int i = row * words + w;
+                cells[i] = src[w];
+                hash ^= hashWord(i, cells[i]);
+            }
+        }
+        recount();
+    }
+
+    /**
+     * Count the live neighbors of a cell, wrapping at the edges
+     */
+    public int countNeighbors(int row, int col) {
+        int liveCount = 0;
+        for (int i = -1; i <= 1; i++)
+            for (int j = -1; j <= 1; j++)
+                if ((i != 0 || j != 0) && get((row + i + height) % height, (col + j + width) % width))
+                    liveCount++;
+        return liveCount;
+    }
+
+    /**
+     * Count the live cells on the board
+     */
+    public long population() {
+        long count = 0;
+        for (long word : cells)
+            count += Long.bitCount(word);
+        return count;
+    }
+
+    /**
+     * Advance the board one generation
+     */
+    public void step() {
+        activeTiles = 0;
+        for (int tr = 0; tr < tileRows; tr++) {
+            stepping[tr] = 0;
+            for (int w = 0; w < words; w++) {
+                byte m = forced > 0 || forcedRows[tr] > 0 ? STEP : tileMode(tr, w);
+                mode[tr * words + w] = m;
+                if (m == STEP)
+                    stepping[tr]++;
+            }
+            activeTiles += stepping[tr];
+            if (forcedRows[tr] > 0)
+                forcedRows[tr]--;
+        }
+        if (forced > 0)
+            forced--;
+        if (pool != null && pool.getParallelism() > 1 && tileRows >= MINBAND * 2) {
+            int band = Math.max(MINBAND, tileRows / (pool.getParallelism() * 4));
+            if (bands == null || bands.getBand() != band)
+                bands = new StepBands<>(0, tileRows, band, () -> new long[words], this::stepTiles);
+            hash ^= bands.run(pool);
+        } else
+            hash ^= stepTiles(0, tileRows, denseRow);
+        long[] swap = cells;
+        cells = next;
+        next = swap;
+        // Counts of the edge rows of each row of tiles, which the sweep left
+        if (counts0 != null)
+            for (int tr = 0; tr < tileRows; tr++) {
+                int first = tr * TILEROWS;
+                int last = Math.min(height, first + TILEROWS) - 1;
+                countRow(cells, next, first);
+                if (last != first)
+                    countRow(cells, next, last);
+            }
+        boolean[] swapChanged = changed;
+        changed = changedNext;
+        changedNext = swapChanged;
+        swapChanged = flipped;
+        flipped = flippedNext;
+        flippedNext = swapChanged;
+        generation++;
+    }
+
+    /**
+     * Return STEP if a tile must be stepped, FLIP if it repeats two generations ago, or SLEEP
+     */
+    private byte tileMode(int tr, int w) {
+        boolean anyChanged = false;
+        boolean anyFlipped = false;
+        for (int i = -1; i <= 1; i++)
+            for (int j = -1; j <= 1; j++) {
+                int tile = (tr + i + tileRows) % tileRows * words + (w + j + words) % words;
+                anyChanged |= changed[tile];
+                anyFlipped |= flipped[tile];
+            }
+        return !anyChanged ? SLEEP : !anyFlipped ? FLIP : STEP;
+    }
+
+    /**
+     * Work out the kept counts and growth of every cell again, if they are kept
+     */
+    private void recount() {
+        if (counts0 != null)
+            for (int row = 0; row < height; row++)
+                countRow(cells, null, row);
+    }
+
+    /**
+     * Work out the kept counts and growth of a row and the rows either side again, after it was edited
+     */
+    private void recountAround(int row) {
+        if (counts0 == null)
+            return;
+        countRow(cells, null, (row - 1 + height) % height);
+        countRow(cells, null, row);
+        countRow(cells, null, (row + 1) % height);
+    }
+
+    /**
+     * Work out the counts and growth of a row of the generation in src, only
+     * where a word around it differs from the generation before if given
+     */
+    private void countRow(long[] src, long[] before, int row) {
+        int up = ((row - 1 + height) % height) * words;
+        int mid = row * words;
+        int down = ((row + 1) % height) * words;
+        // Changes in the three rows of the words west, here and east of each word,
+        // only the edge cell next to this word mattering in the words either side
+        long changedWest = before == null ? -1L : changes(src, before, up, mid, down, words - 1);
+        long changedHere = before == null ? -1L : changes(src, before, up, mid, down, 0);
+        for (int w = 0; w < words; w++) {
+            long changedEast = before == null ? -1L : changes(src, before, up, mid, down, w == words - 1 ? 0 : w + 1);
+            long westCell = changedWest >>> (w == 0 ? lastBit : 63) & 1L;
+            boolean same = (changedHere | westCell | changedEast & 1L) == 0;
+            changedWest = changedHere;
+            changedHere = changedEast;
+            if (same)
+                continue;
+            long a = src[up + w];
+            long aW = west(src, up, w);
+            long aE = east(src, up, w);
+            long b = src[down + w];
+            long bW = west(src, down, w);
+            long bE = east(src, down, w);
+            long cW = west(src, mid, w);
+            long cE = east(src, mid, w);
+
+            long a1 = aW ^ a ^ aE;
+            long a2 = (aW & a) | (aE & (aW ^ a));
+            long b1 = bW ^ b ^ bE;
+            long b2 = (bW & b) | (bE & (bW ^ b));
+            long c1 = cW ^ cE;
+            long c2 = cW & cE;
+
+            long s0 = a1 ^ b1 ^ c1;
+            long k1 = (a1 & b1) | (c1 & (a1 ^ b1));
+            long t1 = a2 ^ b2 ^ c2;
+            long t2 = (a2 & b2) | (c2 & (a2 ^ b2));
+            long s1 = t1 ^ k1;
+            long k2 = t1 & k1;
+            long s2 = t2 ^ k2;
+            long s3 = t2 & k2;
+
+            long alive = src[mid + w];
+            long next = applyRule(alive, s0, s1, s2, s3);
+            counts0[mid + w] = s0;
+            counts1[mid + w] = s1;
+            counts2[mid + w] = s2;
+            counts3[mid + w] = s3;
+            bornNext[mid + w] = ~alive & next;
+            diesNext[mid + w] = alive & ~next;
+        }
+    }
+
+    /**
+     * Return the bits that differ between two generations in a word of three rows
+     */
+    private static long changes(long[] src, long[] before, int up, int mid, int down, int w) {
+        return (src[up + w] ^ before[up + w]) | (src[mid + w] ^ before[mid + w]) | (src[down + w] ^ before[down + w]);
+    }
+
+    /**
+     * Step the tiles in rows of tiles from up to but not including to,
+     * using dense to hold words stepped a whole row at a time, and
+     * return the change to the hash from the words that changed
+     */
+    private long stepTiles(int from, int to, long[] dense) {
+        long delta = 0;
+        for (int tr = from; tr < to; tr++) {
+            int tile = tr * words;
+            // Rows mostly stepping are worth stepping whole, between the edge words
+            RowStepper rows = words > 2 && stepping[tr] * 2 >= words ? stepper : null;
+            int vectored = 1;
+            for (int w = 0; w < words; w++) {
+                changedNext[tile + w] = mode[tile + w] == FLIP && changed[tile + w];
+                flippedNext[tile + w] = false;
+            }
+            for (int row = tr * TILEROWS; row < Math.min(height, (tr + 1) * TILEROWS); row++) {
+                int up = ((row - 1 + height) % height) * words;
+                int mid = row * words;
+                int down = ((row + 1) % height) * words;
+                if (rows != null)
+                    vectored = rows.step(cells, up, mid, down, 1, words - 1, dense, birth, survive);
+                for (int w = 0; w < words; w++) {
+                    byte m = mode[tile + w];
+                    if (m == FLIP) {
+                        // Next generation is the one before, already in the other buffer
+                        long old = cells[mid + w];
+                        if (old != next[mid + w]) {
+                            countDeaths(mid + w, old & ~next[mid + w]);
+                            delta ^= hashWord(mid + w, old) ^ hashWord(mid + w, next[mid + w]);
+                        }
+                    } else if (m == STEP) {
+                        long word = w >= 1 && w < vectored ? dense[w] : stepWord(up, mid, down, w);
+                        if (w == words - 1)
+                            word &= lastMask;
+                        long old = cells[mid + w];
+                        if (word != old) {
+                            changedNext[tile + w] = true;
+                            countDeaths(mid + w, old & ~word);
+                            delta ^= hashWord(mid + w, old) ^ hashWord(mid + w, word);
+                        }
+                        if (word != next[mid + w])
+                            flippedNext[tile + w] = true;
+                        next[mid + w] = word;
+                    }
+                }
+                // Counts of the row before, now the rows either side of it are done
+                if (counts0 != null && row > tr * TILEROWS + 1)
+                    countRow(next, cells, row - 1);
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * Compute one word of the next generation from the three rows around it
+     */
+    private long stepWord(int up, int mid, int down, int w) {
+        long a = cells[up + w];
+        long aW = west(cells, up, w);
+        long aE = east(cells, up, w);
+        long b = cells[down + w];
+        long bW = west(cells, down, w);
+        long bE = east(cells, down, w);
+        long cW = west(cells, mid, w);
+        long cE = east(cells, mid, w);
+
+        // Sum each row of neighbors into two bits
+        long a1 = aW ^ a ^ aE;
+        long a2 = (aW & a) | (aE & (aW ^ a));
+        long b1 = bW ^ b ^ bE;
+        long b2 = (bW & b) | (bE & (bW ^ b));
+        long c1 = cW ^ cE;
+        long c2 = cW & cE;
+
+        // Add the rows into a four bit count
+        long s0 = a1 ^ b1 ^ c1;
+        long k1 = (a1 & b1) | (c1 & (a1 ^ b1));
+        long t1 = a2 ^ b2 ^ c2;
+        long t2 = (a2 & b2) | (c2 & (a2 ^ b2));
+        long s1 = t1 ^ k1;
+        long k2 = t1 & k1;
+        long s2 = t2 ^ k2;
+        long s3 = t2 & k2;
+
+        return applyRule(cells[mid + w], s0, s1, s2, s3);
+    }
+
+    /**
+     * Pick the cells whose neighbor count is in the birth or survive mask
+     */
+    private long applyRule(long alive, long s0, long s1, long s2, long s3) {
+        // Life, born with 3 and staying with 2 or 3, needs no table
+        if (life)
+            return s1 & ~s2 & (s0 | alive);
+        // Counts 0 to 3 from the low bits, then 0, 4 or 8 from the high bits
+        long low0 = ~s0 & ~s1;
+        long low1 = s0 & ~s1;
+        long low2 = ~s0 & s1;
+        long low3 = s0 & s1;
+        long high0 = ~s2 & ~s3;
+        long born = 0;
+        long stay = 0;
+        for (int n = 0; n <= 8; n++) {
+            if (((birth | survive) >>> n & 1) == 0)
+                continue;
+            long low = (n & 3) == 0 ? low0 : (n & 3) == 1 ? low1 : (n & 3) == 2 ? low2 : low3;
+            long match = low & (n < 4 ? high0 : n < 8 ? s2 : s3);
+            if ((birth >>> n & 1) != 0)
+                born |= match;
+            if ((survive >>> n & 1) != 0)
+                stay |= match;
+        }
+        return (~alive & born) | (alive & stay);
+    }
+
+    /**
+     * Return a hash of the live cells, the same for any board with the same cells
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Return what a word at index i adds to the hash, nothing if it is empty
+     */
+    static long hashWord(int i, long word) {
+        if (word == 0)
+            return 0;
+        long z = word * 0x9E3779B97F4A7C15L ^ (i + 1L) * 0xC2B2AE3D27D4EB4FL;
+        z = (z ^ z >>> 32) * 0xFF51AFD7ED558CCDL;
+        return z ^ z >>> 29;
+    }
+
+    /**
+     * Add one to the death count of each cell that died, stopping at MAX_DEATHS
+     */
+    private void countDeaths(int i, long died) {
+        if (died == 0)
+            return;
+        long inc = died & ~(deaths2[i] & deaths1[i]);
+        long carry0 = deaths0[i] & inc;
+        long carry1 = deaths1[i] & carry0;
+        deaths0[i] ^= inc;
+        deaths1[i] ^= carry0;
+        deaths2[i] ^= carry1;
+    }
+
+    /**
+     * Return a word where each bit holds the cell to its west
+     */
+    private long west(long[] src, int row, int w) {
+        long carry = w == 0 ? src[row + words - 1] >>> lastBit : src[row + w - 1] >>> 63;
+        return src[row + w] << 1 | carry;
+    }
+
+    /**
+     * Return a word where each bit holds the cell to its east
+     */
+    private long east(long[] src, int row, int w) {
+        long carry = w == words - 1 ? (src[row] & 1L) << lastBit : src[row + w + 1] << 63;
+        return src[row + w] >>> 1 | carry;
+    }
+}
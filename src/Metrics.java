@@ -0,0 +1,227 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Performance counters for a running board
+ *
+ * Steps and renders are recorded as they happen, from any thread, and
+ * sample() turns everything since the last sample into rates. Step
+ * latencies are kept for the last WINDOW steps, for percentiles.
+ * Samples can be written as CSV rows or JSON objects for logs.
+ */
+
+public class Metrics {
+
+    // Step and render times kept for percentiles
+    private static final int WINDOW = 1024;
+
+    private static final String[] COLUMNS = {"seconds", "generation", "population", "active_tiles",
+            "gens_per_sec", "cells_per_sec", "step_p50_us", "step_p90_us", "step_p99_us", "step_max_us",
+            "render_ms", "alloc_mb_per_sec"};
+
+    private final long created = System.nanoTime();
+
+    // Step and render times, oldest overwritten first
+    private final long[] stepNanos = new long[WINDOW];
+    private final long[] renderNanos = new long[WINDOW];
+    private final long[] sorted = new long[WINDOW];
+    private long steps = 0;
+    private long renders = 0;
+    private long cells = 0;
+
+    // Last board seen
+    private long generation = 0;
+    private long population = 0;
+    private int activeTiles = 0;
+
+    // Totals at the last sample
+    private long sampleTime = created;
+    private long sampleSteps = 0;
+    private long sampleCells = 0;
+    private long sampleAllocated = allocatedBytes();
+
+    /**
+     * Record one generation of a board taking nanos
+     */
+    public synchronized void recordStep(long nanos, Board board) {
+        stepNanos[(int) (steps++ % WINDOW)] = nanos;
+        cells += (long) board.getWidth() * board.getHeight();
+        generation = board.getGeneration();
+        activeTiles = board.getActiveTiles();
+    }
+
+    /**
+     * Record the generation and population of a board that isn't changing
+     */
+    public synchronized void recordBoard(Board board) {
+        generation = board.getGeneration();
+        population = board.population();
+        activeTiles = board.getActiveTiles();
+    }
+
+    public synchronized void recordRender(long nanos) {
+        renderNanos[(int) (renders++ % WINDOW)] = nanos;
+    }
+
+    /**
+     * Return the rates since the last sample, and the latest board figures
+     */
+    public synchronized Sample sample() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-9, (now - sampleTime) / 1e9);
+        long allocated = allocatedBytes();
+
+        int count = (int) Math.min(steps, WINDOW);
+        System.arraycopy(stepNanos, 0, sorted, 0, count);
+        Arrays.sort(sorted, 0, count);
+        Sample sample = new Sample((now - created) / 1e9, generation, population, activeTiles,
+                (steps - sampleSteps) / seconds, (cells - sampleCells) / seconds,
+                percentile(count, 0.5), percentile(count, 0.9), percentile(count, 0.99), percentile(count, 1),
+                averageRender() / 1e6, Math.max(0, allocated - sampleAllocated) / seconds / (1 << 20));
+
+        sampleTime = now;
+        sampleSteps = steps;
+        sampleCells = cells;
+        sampleAllocated = allocated;
+        return sample;
+    }
+
+    /**
+     * Return a percentile of the sorted step times in microseconds
+     */
+    private double percentile(int count, double fraction) {
+        if (count == 0)
+            return 0;
+        return sorted[(int) Math.min(count - 1, Math.floor(fraction * count))] / 1e3;
+    }
+
+    private double averageRender() {
+        int count = (int) Math.min(renders, WINDOW);
+        long total = 0;
+        for (int i = 0; i < count; i++)
+            total += renderNanos[i];
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    /**
+     * Return bytes allocated by every live thread, or 0 where the JVM can't tell
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean))
+            return 0;
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threads;
+        if (!bean.isThreadAllocatedMemorySupported() || !bean.isThreadAllocatedMemoryEnabled())
+            return 0;
+        long total = 0;
+        for (long bytes : bean.getThreadAllocatedBytes(threads.getAllThreadIds()))
+            total += Math.max(0, bytes);
+        return total;
+    }
+
+    /**
+     * Write the CSV header row
+     */
+    public static void writeCsvHeader(PrintStream out) {
+        out.println(String.join(",", COLUMNS));
+    }
+
+    // Figures from one sample
+    public static class Sample {
+        private final double[] values;
+
+        Sample(double... values) {
+            this.values = values;
+        }
+
+        public double getSeconds() {
+            return values[0];
+        }
+
+        public long getGeneration() {
+            return (long) values[1];
+        }
+
+        public long getPopulation() {
+            return (long) values[2];
+        }
+
+        public int getActiveTiles() {
+            return (int) values[3];
+        }
+
+        public double getGensPerSec() {
+            return values[4];
+        }
+
+        public double getCellsPerSec() {
+            return values[5];
+        }
+
+        /**
+         * Return a step time percentile in microseconds, for 50, 90, 99 or 100
+         */
+        public double getStepMicros(int percentile) {
+            switch (percentile) {
+                case 50:
+                    return values[6];
+                case 90:
+                    return values[7];
+                case 99:
+                    return values[8];
+                case 100:
+                    return values[9];
+                default:
+                    throw new IllegalArgumentException("Percentile must be 50, 90, 99 or 100");
+            }
+        }
+
+        /**
+         * Return the average of recent render times in milliseconds
+         */
+        public double getRenderMillis() {
+            return values[10];
+        }
+
+        public double getAllocMegabytesPerSec() {
+            return values[11];
+        }
+
+        public String toCsv() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < values.length; i++)
+                sb.append(i == 0 ? "" : ",").append(format(values[i]));
+            return sb.toString();
+        }
+
+        public String toJson() {
+            StringBuilder sb = new StringBuilder("{");
+            for (int i = 0; i < values.length; i++)
+                sb.append(i == 0 ? "" : ", ").append('"').append(COLUMNS[i]).append("\": ").append(format(values[i]));
+            return sb.append('}').toString();
+        }
+
+        /**
+         * Return lines for an overlay
+         */
+        public String toDisplayString() {
+            return String.format(Locale.ROOT, "Generation %d  Population %d%n"
+                            + "%,.0f gens/s  %.3g cells/s%n"
+                            + "Step p50 %.1f  p99 %.1f  max %.1f us%n"
+                            + "Render %.2f ms  Alloc %.1f MB/s  Tiles %d",
+                    getGeneration(), getPopulation(), getGensPerSec(), getCellsPerSec(),
+                    values[6], values[8], values[9], getRenderMillis(), getAllocMegabytesPerSec(), getActiveTiles());
+        }
+
+        private static String format(double value) {
+            if (value == Math.rint(value) && Math.abs(value) < 1e15)
+                return Long.toString((long) value);
+            return String.format(Locale.ROOT, "%.6g", value);
+        }
+    }
+}
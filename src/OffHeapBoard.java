@@ -0,0 +1,346 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Board kept outside the Java heap, for boards bigger than it
+ *
+ * Both generations are held in direct buffers, or mapped from a file so
+ * the board can be bigger than memory and paged by the OS. Each buffer
+ * holds whole rows, up to a gigabyte, so a board can have any number.
+ *
+ * Rows are stepped through a small window of rows copied onto the heap,
+ * with the wrapping words either side of each row copied in as a halo,
+ * so every word is stepped the same way by a RowStepper. A row is only
+ * stepped if it or a row next to it changed last generation. The width
+ * must be a multiple of 64 so the halo words wrap exactly.
+ *
+ * Death counts aren't kept, as trails aren't drawn for boards this big.
+ */
+
+public class OffHeapBoard implements Board, Closeable {
+
+    // Most bytes in one buffer
+    private static final long CHUNK = 1L << 30;
+
+    // Fewest rows worth handing to another thread
+    private static final int MINBAND = 16;
+
+    private static final RowStepper VECTOR = RowStepper.vector();
+    private static final RowStepper SCALAR = new ScalarStepper();
+
+    // Dimensions of board
+    private final int width;
+    private final int height;
+    private final int words;
+    private final int chunkRows;
+
+    // Current and next generation, swapped after each step
+    private LongBuffer[] cells;
+    private LongBuffer[] next;
+    private final FileChannel channel;
+
+    // Rows changed since last generation, and which rows to step
+    private boolean[] changed;
+    private boolean[] changedNext;
+    private boolean[] stepping;
+    private int activeTiles = 0;
+
+    // Steps left to step every row, after the board was edited
+    private int forced = 2;
+
+    private Rule rule = Rule.LIFE;
+    private long generation = 0;
+    private ForkJoinPool pool;
+    private StepBands<Window> bands;
+    private final Window window;
+    private RowStepper stepper = VECTOR;
+
+    /**
+     * Make a board in direct buffers, which count towards -XX:MaxDirectMemorySize
+     */
+    public OffHeapBoard(int width, int height) {
+        this(width, height, (FileChannel) null);
+        cells = allocateDirect();
+        next = allocateDirect();
+    }
+
+    /**
+     * Make a board mapped from a file, replacing anything in it
+     */
+    public OffHeapBoard(int width, int height, File file) throws IOException {
+        this(width, height, FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        try {
+            cells = map(0);
+            next = map((long) height * words * 8);
+        } catch (IOException ex) {
+            channel.close();
+            throw new IOException("Could not map " + file, ex);
+        }
+    }
+
+    private OffHeapBoard(int width, int height, FileChannel channel) {
+        if (width < 64 || height < 1)
+            throw new IllegalArgumentException("Board must be at least 64x1");
+        if (width % 64 != 0)
+            throw new IllegalArgumentException("Off heap board width must be a multiple of 64");
+        this.width = width;
+        this.height = height;
+        this.channel = channel;
+        words = width >>> 6;
+        chunkRows = (int) Math.max(1, Math.min(height, CHUNK / (words * 8L)));
+        changed = new boolean[height];
+        changedNext = new boolean[height];
+        stepping = new boolean[height];
+        window = new Window();
+    }
+
+    /**
+     * Return the number of buffers for one generation
+     */
+    private int chunks() {
+        return (height + chunkRows - 1) / chunkRows;
+    }
+
+    /**
+     * Return the bytes in one buffer, the last having what rows are left
+     */
+    private int chunkSize(int chunk) {
+        return Math.min(chunkRows, height - chunk * chunkRows) * words * 8;
+    }
+
+    private LongBuffer[] allocateDirect() {
+        LongBuffer[] chunks = new LongBuffer[chunks()];
+        for (int c = 0; c < chunks.length; c++)
+            chunks[c] = ByteBuffer.allocateDirect(chunkSize(c)).order(ByteOrder.nativeOrder()).asLongBuffer();
+        return chunks;
+    }
+
+    /**
+     * Map one generation from the file, starting at offset
+     */
+    private LongBuffer[] map(long offset) throws IOException {
+        LongBuffer[] chunks = new LongBuffer[chunks()];
+        for (int c = 0; c < chunks.length; c++)
+            chunks[c] = channel.map(FileChannel.MapMode.READ_WRITE, offset + (long) c * chunkRows * words * 8,
+                    chunkSize(c)).order(ByteOrder.nativeOrder()).asLongBuffer();
+        return chunks;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getWords() {
+        return words;
+    }
+
+    @Override
+    public long getGeneration() {
+        return generation;
+    }
+
+    @Override
+    public void setGeneration(long generation) {
+        this.generation = generation;
+    }
+
+    @Override
+    public Rule getRule() {
+        return rule;
+    }
+
+    @Override
+    public void setRule(Rule rule) {
+        this.rule = rule;
+        forced = 2;
+    }
+
+    @Override
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Return whether the Vector API could be loaded, eg. with --add-modules jdk.incubator.vector
+     */
+    public static boolean isVectorAvailable() {
+        return VECTOR != null;
+    }
+
+    @Override
+    public void setVectorized(boolean vectorized) {
+        stepper = vectorized ? VECTOR : null;
+    }
+
+    @Override
+    public boolean isVectorized() {
+        return stepper != null;
+    }
+
+    /**
+     * Return how many rows were stepped last generation, each row being one tile
+     */
+    @Override
+    public int getActiveTiles() {
+        return activeTiles;
+    }
+
+    @Override
+    public void getRow(int row, long[] dest) {
+        cells[row / chunkRows].get((row % chunkRows) * words, dest, 0, words);
+    }
+
+    @Override
+    public void setRow(int row, long[] src) {
+        cells[row / chunkRows].put((row % chunkRows) * words, src, 0, words);
+        forced = 2;
+    }
+
+    /**
+     * Fill dest with zeros, as deaths aren't counted
+     */
+    @Override
+    public void getDeathRow(int row, int plane, long[] dest) {
+        java.util.Arrays.fill(dest, 0, words, 0L);
+    }
+
+    /**
+     * Ignore death counts, as they aren't kept
+     */
+    @Override
+    public void setDeathRow(int row, int plane, long[] src) {
+    }
+
+    @Override
+    public void randomize(long seed, double density) {
+        long[] row = new long[words];
+        for (int r = 0; r < height; r++) {
+            Board.randomRow(seed, density, r, width, row);
+            setRow(r, row);
+        }
+        generation = 0;
+    }
+
+    @Override
+    public long population() {
+        long count = 0;
+        for (LongBuffer chunk : cells)
+            for (int i = 0; i < chunk.limit(); i++)
+                count += Long.bitCount(chunk.get(i));
+        return count;
+    }
+
+    @Override
+    public void step() {
+        activeTiles = 0;
+        for (int r = 0; r < height; r++) {
+            stepping[r] = forced > 0 || changed[r] || changed[r == 0 ? height - 1 : r - 1]
+                    || changed[r == height - 1 ? 0 : r + 1];
+            if (stepping[r])
+                activeTiles++;
+        }
+        if (forced > 0)
+            forced--;
+        if (pool != null && pool.getParallelism() > 1 && height >= MINBAND * 2) {
+            int band = Math.max(MINBAND, height / (pool.getParallelism() * 4));
+            if (bands == null || bands.getBand() != band)
+                bands = new StepBands<>(0, height, band, Window::new, (from, to, window) -> {
+                    stepRows(from, to, window);
+                    return 0;
+                });
+            bands.run(pool);
+        } else {
+            stepRows(0, height, window);
+        }
+        LongBuffer[] swap = cells;
+        cells = next;
+        next = swap;
+        boolean[] swapChanged = changed;
+        changed = changedNext;
+        changedNext = swapChanged;
+        generation++;
+    }
+
+    /**
+     * Step rows from up to but not including to, through a window of rows
+     */
+    private void stepRows(int from, int to, Window window) {
+        window.clear();
+        int birth = rule.getBirth();
+        int survive = rule.getSurvive();
+        for (int r = from; r < to; r++) {
+            // A row that didn't step is the same as last generation, already in the other buffer
+            changedNext[r] = false;
+            if (!stepping[r])
+                continue;
+            int up = window.load(r - 1, from);
+            int mid = window.load(r, from);
+            int down = window.load(r + 1, from);
+            int done = stepper == null ? 0 : stepper.step(window.rows, up, mid, down, 0, words, window.dest, birth, survive);
+            SCALAR.step(window.rows, up, mid, down, done, words, window.dest, birth, survive);
+            for (int w = 0; w < words; w++)
+                if (window.dest[w] != window.rows[mid + w]) {
+                    changedNext[r] = true;
+                    break;
+                }
+            next[r / chunkRows].put((r % chunkRows) * words, window.dest, 0, words);
+        }
+    }
+
+    /**
+     * Let go of the buffers and close the mapped file, after which the board can't be used
+     */
+    @Override
+    public void close() throws IOException {
+        cells = null;
+        next = null;
+        if (channel != null)
+            channel.close();
+    }
+
+    // Three rows copied onto the heap with a halo word either side, and the row being stepped
+    private class Window {
+        private final long[] rows = new long[3 * (words + 2)];
+        private final long[] dest = new long[words];
+        private final int[] loaded = new int[3];
+
+        void clear() {
+            java.util.Arrays.fill(loaded, Integer.MIN_VALUE);
+        }
+
+        /**
+         * Return where a row starts in rows, copying it in if needed. Rows
+         * are given without wrapping, from one before the first row stepped,
+         * so the three rows around a row are always in different places.
+         */
+        int load(int row, int from) {
+            int slot = (row - from + 1) % 3;
+            int start = slot * (words + 2) + 1;
+            if (loaded[slot] != row) {
+                int wrapped = Math.floorMod(row, height);
+                cells[wrapped / chunkRows].get((wrapped % chunkRows) * words, rows, start, words);
+                rows[start - 1] = rows[start + words - 1];
+                rows[start + words] = rows[start];
+                loaded[slot] = row;
+            }
+            return start;
+        }
+    }
+}
@@ -0,0 +1,905 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Reads and writes the common pattern formats, .rle, .mc and .cells
+ *
+ * Files are streamed through one small buffer from a FileChannel and
+ * decoded character by character straight into the packed board, so
+ * heap use doesn't grow with the file. A pattern goes in the middle of
+ * a board at least as big as asked for, and big enough to hold it.
+ *
+ * Macrocell patterns are read into arrays of nodes, one long per 8x8
+ * leaf, and only the live part is written onto the board. They are
+ * written 8 rows at a time, joining each band of nodes with the one
+ * below it a level up, so only the distinct nodes are kept, never a copy
+ * of the board.
+ *
+ * An endless plane is written as RLE a word at a time from its chunks,
+ * never as a board over all it covers.
+ *
+ * Anything else is a game save, see SaveFile.
+ */
+
+public class PatternFile {
+
+    private static final int BUFFER = 1 << 16;
+
+    // Longest line of runs in a written RLE
+    private static final int RLELINE = 70;
+
+    // Macrocell leaves are 8x8, level 3
+    private static final int LEAFLEVEL = 3;
+
+    private PatternFile() {
+    }
+
+    /**
+     * Return true if a file is named as a pattern rather than a save
+     */
+    public static boolean isPattern(File file) {
+        String name = file.getName().toLowerCase();
+        return name.endsWith(".rle") || name.endsWith(".mc") || name.endsWith(".cells");
+    }
+
+    /**
+     * Read a pattern, or a save, onto a board at least minWidth by minHeight
+     */
+    public static LifeEngine read(File file, int minWidth, int minHeight) throws IOException {
+        if (!isPattern(file))
+            return SaveFile.read(file);
+        String name = file.getName().toLowerCase();
+        try (Input in = new Input(file)) {
+            if (name.endsWith(".rle"))
+                return readRle(in, minWidth, minHeight);
+            if (name.endsWith(".mc"))
+                return readMacrocell(in, minWidth, minHeight);
+            return readPlaintext(in, minWidth, minHeight);
+        } catch (IllegalArgumentException ex) {
+            throw new IOException(ex.getMessage() + ": " + file, ex);
+        }
+    }
+
+    /**
+     * Write a board as a pattern or a save, by the file's extension
+     */
+    public static void write(File file, Board board) throws IOException {
+        String name = file.getName().toLowerCase();
+        if (!isPattern(file)) {
+            SaveFile.write(file, board);
+            return;
+        }
+        try (Output out = new Output(file)) {
+            if (name.endsWith(".rle"))
+                writeRle(out, board);
+            else if (name.endsWith(".mc"))
+                writeMacrocell(out, board);
+            else
+                writePlaintext(out, board, file.getName().substring(0, file.getName().lastIndexOf('.')));
+        }
+    }
+
+    /**
+     * Write the live part of an endless plane as RLE, straight from its chunks
+     */
+    public static void write(File file, SparseBoard plane) throws IOException {
+        if (!file.getName().toLowerCase().endsWith(".rle"))
+            throw new IllegalArgumentException("An endless plane can only be written as .rle: " + file);
+        try (Output out = new Output(file)) {
+            writeRle(out, plane);
+        }
+    }
+
+    // RLE
+
+    private static LifeEngine readRle(Input in, int minWidth, int minHeight) throws IOException {
+        // Comments, then the header
+        long generation = 0;
+        String line;
+        while ((line = in.line()) != null) {
+            line = line.trim();
+            if (line.startsWith("#CXRLE") && line.contains("Gen="))
+                generation = Long.parseLong(line.substring(line.indexOf("Gen=") + 4).split("\\s")[0]);
+            else if (!line.startsWith("#") && !line.isEmpty())
+                break;
+        }
+        if (line == null || !line.startsWith("x"))
+            throw new IOException("Missing RLE header");
+        Rule rule = Rule.LIFE;
+        int ruleAt = line.indexOf("rule");
+        if (ruleAt >= 0) {
+            rule = parseRule(line.substring(line.indexOf('=', ruleAt) + 1));
+            line = line.substring(0, ruleAt);
+        }
+        int patternWidth = 0;
+        int patternHeight = 0;
+        for (String part : line.split(",")) {
+            String[] pair = part.split("=");
+            if (pair.length != 2)
+                continue;
+            if (pair[0].trim().equals("x"))
+                patternWidth = Integer.parseInt(pair[1].trim());
+            else if (pair[0].trim().equals("y"))
+                patternHeight = Integer.parseInt(pair[1].trim());
+        }
+
+        LifeEngine board = new LifeEngine(Math.max(minWidth, patternWidth), Math.max(minHeight, patternHeight));
+        board.setRule(rule);
+        board.setGeneration(generation);
+        int left = (board.getWidth() - patternWidth) / 2;
+        int top = (board.getHeight() - patternHeight) / 2;
+
+        // Runs of cells, each an optional count and b for dead, o for alive or $ for end of row
+        long[] row = new long[board.getWords()];
+        boolean rowLive = false;
+        int r = 0;
+        int c = 0;
+        int count = 0;
+        for (int ch = in.read(); ch >= 0 && ch != '!'; ch = in.read()) {
+            if (ch >= '0' && ch <= '9') {
+                if (count > Integer.MAX_VALUE / 10)
+                    throw new IOException("Run too long in RLE");
+                count = count * 10 + ch - '0';
+                continue;
+            }
+            if (Character.isWhitespace(ch))
+                continue;
+            int run = Math.max(1, count);
+            count = 0;
+            if (ch == 'b' || ch == '.') {
+                c += run;
+            } else if (ch == '$') {
+                if (rowLive)
+                    board.setRow(top + r, row);
+                Arrays.fill(row, 0L);
+                rowLive = false;
+                r += run;
+                c = 0;
+            } else if (Character.isLetter(ch)) {
+                if (r >= patternHeight || run > patternWidth - c)
+                    throw new IOException("Pattern is bigger than its RLE header");
+                fill(row, left + c, left + c + run);
+                rowLive = true;
+                c += run;
+            } else {
+                throw new IOException("Unexpected '" + (char) ch + "' in RLE");
+            }
+        }
+        if (rowLive)
+            board.setRow(top + r, row);
+        return board;
+    }
+
+    private static void writeRle(Output out, Board board) throws IOException {
+        out.print("#CXRLE Pos=0,0 Gen=" + board.getGeneration() + "\n");
+        out.print("x = " + board.getWidth() + ", y = " + board.getHeight() + ", rule = " + board.getRule() + "\n");
+        int width = board.getWidth();
+        long[] row = new long[board.getWords()];
+        int lineLength = 0;
+        int lastRow = 0;
+        for (int r = 0; r < board.getHeight(); r++) {
+            board.getRow(r, row);
+            int c = nextCell(row, 0, width, true);
+            if (c == width)
+                continue;
+            if (r > lastRow)
+                lineLength = writeRun(out, r - lastRow, '$', lineLength);
+            lastRow = r;
+            if (c > 0)
+                lineLength = writeRun(out, c, 'b', lineLength);
+            while (c < width) {
+                int end = nextCell(row, c, width, false);
+                lineLength = writeRun(out, end - c, 'o', lineLength);
+                int next = nextCell(row, end, width, true);
+                if (next < width)
+                    lineLength = writeRun(out, next - end, 'b', lineLength);
+                c = next;
+            }
+        }
+        out.print("!\n");
+    }
+
+    private static void writeRle(Output out, SparseBoard plane) throws IOException {
+        int top = plane.getTop();
+        int left = plane.getLeft();
+        out.print("#CXRLE Pos=" + left + "," + top + " Gen=" + plane.getGeneration() + "\n");
+        out.print("x = " + (plane.getRight() - left + 1) + ", y = " + (plane.getBottom() - top + 1)
+                + ", rule = " + plane.getRule() + "\n");
+        Runs runs = new Runs(out, top, left);
+        plane.forEachWord(runs);
+        runs.flush();
+        out.print("!\n");
+    }
+
+    // Live runs of a plane being written as RLE, joined across words as they come in reading order
+    private static class Runs implements SparseBoard.Cells {
+        private final Output out;
+        private final int left;
+        private int lineLength = 0;
+        private int lastRow;
+        private int row;
+        // Columns of the row written, and the live run not yet written, from left
+        private int done = 0;
+        private int start = -1;
+        private int end = -1;
+
+        Runs(Output out, int top, int left) {
+            this.out = out;
+            this.left = left;
+            lastRow = row = top;
+        }
+
+        @Override
+        public void word(int r, int col, long bits) throws IOException {
+            if (r != row) {
+                flush();
+                row = r;
+                done = 0;
+            }
+            while (bits != 0) {
+                int from = Long.numberOfTrailingZeros(bits);
+                int length = Long.numberOfTrailingZeros(~(bits >>> from));
+                int c = col - left + from;
+                if (c == end) {
+                    end += length;
+                } else {
+                    flush();
+                    start = c;
+                    end = c + length;
+                }
+                bits = from + length == 64 ? 0 : bits & -1L << (from + length);
+            }
+        }
+
+        /**
+         * Write the live run waiting, after the ends of rows and dead cells before it
+         */
+        void flush() throws IOException {
+            if (start < 0)
+                return;
+            if (row > lastRow)
+                lineLength = writeRun(out, row - lastRow, '$', lineLength);
+            lastRow = row;
+            if (start > done)
+                lineLength = writeRun(out, start - done, 'b', lineLength);
+            lineLength = writeRun(out, end - start, 'o', lineLength);
+            done = end;
+            start = end = -1;
+        }
+    }
+
+    /**
+     * Write a run, starting a new line if it would be too long, and return the line length
+     */
+    private static int writeRun(Output out, int run, char tag, int lineLength) throws IOException {
+        int length = run == 1 ? 1 : digits(run) + 1;
+        if (lineLength + length > RLELINE) {
+            out.write('\n');
+            lineLength = 0;
+        }
+        if (run > 1)
+            out.print(run);
+        out.write(tag);
+        return lineLength + length;
+    }
+
+    // Plaintext
+
+    private static LifeEngine readPlaintext(Input in, int minWidth, int minHeight) throws IOException {
+        // Measure first, lines starting with ! are comments
+        int patternWidth = 0;
+        int patternHeight = 0;
+        int length = 0;
+        boolean comment = false;
+        boolean inLine = false;
+        for (int ch = in.read(); ch >= 0; ch = in.read()) {
+            if (ch == '\n') {
+                if (!comment) {
+                    patternHeight++;
+                    patternWidth = Math.max(patternWidth, length);
+                }
+                length = 0;
+                comment = false;
+                inLine = false;
+                continue;
+            }
+            if (!inLine) {
+                inLine = true;
+                comment = ch == '!';
+            }
+            if (!comment && ch != '\r')
+                length++;
+        }
+        if (inLine && !comment) {
+            patternHeight++;
+            patternWidth = Math.max(patternWidth, length);
+        }
+
+        LifeEngine board = new LifeEngine(Math.max(minWidth, patternWidth), Math.max(minHeight, patternHeight));
+        int left = (board.getWidth() - patternWidth) / 2;
+        int top = (board.getHeight() - patternHeight) / 2;
+        in.rewind();
+
+        long[] row = new long[board.getWords()];
+        boolean rowLive = false;
+        int r = 0;
+        int c = 0;
+        comment = false;
+        inLine = false;
+        for (int ch = in.read(); ch >= 0; ch = in.read()) {
+            if (ch == '\n') {
+                if (!comment) {
+                    if (rowLive)
+                        board.setRow(top + r, row);
+                    Arrays.fill(row, 0L);
+                    rowLive = false;
+                    r++;
+                }
+                c = 0;
+                comment = false;
+                inLine = false;
+                continue;
+            }
+            if (!inLine) {
+                inLine = true;
+                comment = ch == '!';
+            }
+            if (comment || ch == '\r')
+                continue;
+            if (ch == 'O' || ch == '*') {
+                fill(row, left + c, left + c + 1);
+                rowLive = true;
+            }
+            c++;
+        }
+        if (rowLive)
+            board.setRow(top + r, row);
+        return board;
+    }
+
+    private static void writePlaintext(Output out, Board board, String name) throws IOException {
+        out.print("!Name: " + name + "\n");
+        int width = board.getWidth();
+        long[] row = new long[board.getWords()];
+        for (int r = 0; r < board.getHeight(); r++) {
+            board.getRow(r, row);
+            int c = 0;
+            while (c < width) {
+                int live = nextCell(row, c, width, true);
+                for (; c < live; c++)
+                    out.write('.');
+                int dead = nextCell(row, c, width, false);
+                for (; c < dead; c++)
+                    out.write('O');
+            }
+            out.write('\n');
+        }
+    }
+
+    // Macrocell
+
+    private static LifeEngine readMacrocell(Input in, int minWidth, int minHeight) throws IOException {
+        Rule rule = Rule.LIFE;
+        long generation = 0;
+        Nodes nodes = new Nodes();
+        for (int ch = in.read(); ch >= 0; ch = in.read()) {
+            if (ch == '#') {
+                String line = in.line();
+                if (line == null)
+                    break;
+                if (line.startsWith("R"))
+                    rule = parseRule(line.substring(1));
+                else if (line.startsWith("G"))
+                    generation = Long.parseLong(line.substring(1).trim());
+            } else if (ch == '[') {
+                in.line();
+            } else if (ch == '.' || ch == '*' || ch == '$') {
+                nodes.addLeaf(readLeaf(in, ch));
+            } else if (ch >= '0' && ch <= '9') {
+                long level = readNumber(in, ch);
+                long[] quads = new long[4];
+                for (int i = 0; i < 4; i++)
+                    quads[i] = readNumber(in, in.read());
+                nodes.addNode(level, quads);
+            } else if (!Character.isWhitespace(ch)) {
+                throw new IOException("Unexpected '" + (char) ch + "' in Macrocell");
+            }
+        }
+        int root = nodes.size - 1;
+        if (root < 1)
+            throw new IOException("No nodes in Macrocell");
+
+        // Board around the live cells of the root
+        boolean empty = nodes.minRow[root] > nodes.maxRow[root];
+        long patternWidth = empty ? 0 : nodes.maxCol[root] - nodes.minCol[root] + 1;
+        long patternHeight = empty ? 0 : nodes.maxRow[root] - nodes.minRow[root] + 1;
+        if (patternWidth > Integer.MAX_VALUE || patternHeight > Integer.MAX_VALUE)
+            throw new IOException("Pattern is too large");
+        LifeEngine board = new LifeEngine(Math.max(minWidth, (int) patternWidth),
+                Math.max(minHeight, (int) patternHeight));
+        board.setRule(rule);
+        board.setGeneration(generation);
+        if (!empty)
+            nodes.write(board, root, (board.getHeight() - patternHeight) / 2 - nodes.minRow[root],
+                    (board.getWidth() - patternWidth) / 2 - nodes.minCol[root]);
+        return board;
+    }
+
+    /**
+     * Read an 8x8 leaf, rows of . and * each ending with $, into bit row * 8 + col
+     */
+    private static long readLeaf(Input in, int ch) throws IOException {
+        long bits = 0;
+        int r = 0;
+        int c = 0;
+        for (; ch >= 0 && ch != '\n'; ch = in.read()) {
+            if (ch == '$') {
+                r++;
+                c = 0;
+            } else if (ch == '.' || ch == '*') {
+                if (r >= 8 || c >= 8)
+                    throw new IOException("Macrocell leaf is bigger than 8x8");
+                if (ch == '*')
+                    bits |= 1L << (r * 8 + c);
+                c++;
+            } else if (ch != '\r') {
+                throw new IOException("Unexpected '" + (char) ch + "' in Macrocell leaf");
+            }
+        }
+        return bits;
+    }
+
+    private static long readNumber(Input in, int ch) throws IOException {
+        while (ch == ' ')
+            ch = in.read();
+        if (ch < '0' || ch > '9')
+            throw new IOException("Expected a number in Macrocell");
+        long value = 0;
+        for (; ch >= '0' && ch <= '9'; ch = in.read())
+            value = value * 10 + ch - '0';
+        return value;
+    }
+
+    private static void writeMacrocell(Output out, Board board) throws IOException {
+        out.print("[M2] (Life)\n");
+        out.print("#R " + board.getRule() + "\n");
+        out.print("#G " + board.getGeneration() + "\n");
+        int level = LEAFLEVEL;
+        while (1 << level < Math.max(board.getWidth(), board.getHeight()))
+            level++;
+
+        // A band of rows as tall as a leaf at a time, past the bottom empty
+        Tree tree = new Tree(out, level, (board.getWidth() + 7) >>> 3);
+        long[][] rows = new long[8][board.getWords()];
+        for (int top = 0; top < board.getHeight(); top += 8) {
+            for (int r = 0; r < 8; r++)
+                if (top + r < board.getHeight())
+                    board.getRow(top + r, rows[r]);
+                else
+                    Arrays.fill(rows[r], 0L);
+            tree.addBand(rows);
+        }
+        if (tree.finish() == 0)
+            out.print("$$$$$$$$\n");
+    }
+
+    // Canonical nodes of a board being written as Macrocell, numbered from 1 as written
+    private static class Tree {
+        private final Output out;
+        private final NodeMap numbers = new NodeMap();
+        private int count = 0;
+
+        // Level of the whole board, and its node once known
+        private final int level;
+        private int root = 0;
+
+        // Nodes across the board at each level, those of the band waiting for the one below
+        // it to make the level up, and the band being made
+        private final int[] columns;
+        private final int[][] waiting;
+        private final boolean[] isWaiting;
+        private final int[][] band;
+
+        Tree(Output out, int level, int leafColumns) {
+            this.out = out;
+            this.level = level;
+            columns = new int[level + 1];
+            waiting = new int[level + 1][];
+            isWaiting = new boolean[level + 1];
+            band = new int[level + 1][];
+            for (int l = LEAFLEVEL; l <= level; l++) {
+                columns[l] = Math.max(1, (leafColumns - 1 >> (l - LEAFLEVEL)) + 1);
+                waiting[l] = new int[columns[l]];
+                band[l] = new int[columns[l]];
+            }
+        }
+
+        /**
+         * Add the leaves of the next 8 rows, and every node they complete
+         */
+        void addBand(long[][] rows) throws IOException {
+            int[] leaves = band[LEAFLEVEL];
+            for (int c = 0; c < columns[LEAFLEVEL]; c++) {
+                long bits = 0;
+                for (int r = 0; r < 8; r++)
+                    bits |= (rows[r][c >>> 3] >>> ((c & 7) << 3) & 0xff) << (r << 3);
+                leaves[c] = leaf(bits);
+            }
+            add(LEAFLEVEL, leaves);
+        }
+
+        /**
+         * Add the empty bands left below the board, returning the node number of the whole board,
+         * 0 if empty
+         */
+        int finish() throws IOException {
+            for (int l = LEAFLEVEL; l < level; l++)
+                if (isWaiting[l]) {
+                    isWaiting[l] = false;
+                    add(l + 1, join(l, waiting[l], null));
+                }
+            return root;
+        }
+
+        /**
+         * Add a band of nodes at a level, joining it with the band above it if that is waiting
+         */
+        private void add(int l, int[] nodes) throws IOException {
+            if (l == level) {
+                root = nodes[0];
+            } else if (!isWaiting[l]) {
+                System.arraycopy(nodes, 0, waiting[l], 0, columns[l]);
+                isWaiting[l] = true;
+            } else {
+                isWaiting[l] = false;
+                add(l + 1, join(l, waiting[l], nodes));
+            }
+        }
+
+        /**
+         * Return the band of nodes a level up from two bands, the lower empty if null
+         */
+        private int[] join(int l, int[] upper, int[] lower) throws IOException {
+            int[] joined = band[l + 1];
+            for (int c = 0; c < columns[l + 1]; c++) {
+                int west = 2 * c;
+                int east = west + 1 < columns[l] ? west + 1 : -1;
+                joined[c] = node(l + 1, upper[west], east < 0 ? 0 : upper[east],
+                        lower == null ? 0 : lower[west], lower == null || east < 0 ? 0 : lower[east]);
+            }
+            return joined;
+        }
+
+        /**
+         * Return the node number of four quadrants, writing the node if new, 0 if empty
+         */
+        private int node(int l, int nw, int ne, int sw, int se) throws IOException {
+            if ((nw | ne | sw | se) == 0)
+                return 0;
+            long upper = (long) nw << 32 | ne;
+            long lower = (long) sw << 32 | se;
+            int n = numbers.get(upper, lower);
+            if (n == 0) {
+                n = ++count;
+                numbers.put(upper, lower, n);
+                out.print(l);
+                for (int quadrant : new int[] {nw, ne, sw, se}) {
+                    out.write(' ');
+                    out.print(quadrant);
+                }
+                out.write('\n');
+            }
+            return n;
+        }
+
+        /**
+         * Return the node number of an 8x8 leaf, writing it if new, 0 if empty
+         */
+        private int leaf(long bits) throws IOException {
+            if (bits == 0)
+                return 0;
+            // No node has quadrants numbered -1, so leaves can't be mistaken for one
+            int n = numbers.get(bits, -1L);
+            if (n == 0) {
+                n = ++count;
+                numbers.put(bits, -1L, n);
+                for (int r = 0; r < 8; r++) {
+                    int rowBits = (int) (bits >>> (r * 8) & 0xff);
+                    for (int c = 0; c < 32 - Integer.numberOfLeadingZeros(rowBits); c++)
+                        out.write((rowBits >>> c & 1) != 0 ? '*' : '.');
+                    out.write('$');
+                }
+                out.write('\n');
+            }
+            return n;
+        }
+    }
+
+    // Open addressing map of node numbers by two longs, a leaf's cells or a node's quadrants,
+    // so lookups don't box keys
+    private static class NodeMap {
+        private long[] keys = new long[2 * 1024];
+        private int[] values = new int[1024];
+        private int size = 0;
+
+        private int slot(long upper, long lower) {
+            long h = (upper * 0x9E3779B97F4A7C15L ^ lower) * 0xC2B2AE3D27D4EB4FL;
+            return (int) (h >>> 32 ^ h) & (values.length - 1);
+        }
+
+        /**
+         * Return the number kept for a key, or 0 if there is none
+         */
+        int get(long upper, long lower) {
+            for (int i = slot(upper, lower); values[i] != 0; i = (i + 1) & (values.length - 1))
+                if (keys[2 * i] == upper && keys[2 * i + 1] == lower)
+                    return values[i];
+            return 0;
+        }
+
+        void put(long upper, long lower, int n) {
+            if (size * 2 >= values.length)
+                resize(values.length * 2);
+            int i = slot(upper, lower);
+            while (values[i] != 0)
+                i = (i + 1) & (values.length - 1);
+            keys[2 * i] = upper;
+            keys[2 * i + 1] = lower;
+            values[i] = n;
+            size++;
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[2 * capacity];
+            values = new int[capacity];
+            size = 0;
+            for (int i = 0; i < oldValues.length; i++)
+                if (oldValues[i] != 0)
+                    put(oldKeys[2 * i], oldKeys[2 * i + 1], oldValues[i]);
+        }
+    }
+
+    // Nodes of a Macrocell being read, with the bounds of their live cells
+    private static class Nodes {
+        private int size = 1;
+        private int[] level = new int[1024];
+        private int[] quads = new int[4 * 1024];
+        private long[] leaf = new long[1024];
+        private long[] minRow = new long[1024];
+        private long[] minCol = new long[1024];
+        private long[] maxRow = new long[1024];
+        private long[] maxCol = new long[1024];
+
+        Nodes() {
+            // Node 0 is empty at every level
+            minRow[0] = minCol[0] = Long.MAX_VALUE;
+            maxRow[0] = maxCol[0] = Long.MIN_VALUE;
+        }
+
+        void addLeaf(long bits) {
+            int n = add(LEAFLEVEL);
+            leaf[n] = bits;
+            minRow[n] = minCol[n] = Long.MAX_VALUE;
+            maxRow[n] = maxCol[n] = Long.MIN_VALUE;
+            for (int i = 0; i < 64; i++)
+                if ((bits >>> i & 1) != 0)
+                    bound(n, i >> 3, i & 7, i >> 3, i & 7);
+        }
+
+        void addNode(long nodeLevel, long[] children) throws IOException {
+            if (nodeLevel <= LEAFLEVEL || nodeLevel > 62)
+                throw new IOException("Bad Macrocell node level " + nodeLevel);
+            int n = add((int) nodeLevel);
+            minRow[n] = minCol[n] = Long.MAX_VALUE;
+            maxRow[n] = maxCol[n] = Long.MIN_VALUE;
+            long half = 1L << (nodeLevel - 1);
+            for (int i = 0; i < 4; i++) {
+                if (children[i] >= n || children[i] != 0 && level[(int) children[i]] != nodeLevel - 1)
+                    throw new IOException("Bad Macrocell node " + n);
+                int child = (int) children[i];
+                quads[4 * n + i] = child;
+                if (minRow[child] > maxRow[child])
+                    continue;
+                long rowOffset = (i >> 1) * half;
+                long colOffset = (i & 1) * half;
+                bound(n, minRow[child] + rowOffset, minCol[child] + colOffset,
+                        maxRow[child] + rowOffset, maxCol[child] + colOffset);
+            }
+        }
+
+        private int add(int nodeLevel) {
+            if (size == level.length) {
+                int capacity = size * 2;
+                level = Arrays.copyOf(level, capacity);
+                quads = Arrays.copyOf(quads, 4 * capacity);
+                leaf = Arrays.copyOf(leaf, capacity);
+                minRow = Arrays.copyOf(minRow, capacity);
+                minCol = Arrays.copyOf(minCol, capacity);
+                maxRow = Arrays.copyOf(maxRow, capacity);
+                maxCol = Arrays.copyOf(maxCol, capacity);
+            }
+            level[size] = nodeLevel;
+            return size++;
+        }
+
+        private void bound(int n, long top, long left, long bottom, long right) {
+            minRow[n] = Math.min(minRow[n], top);
+            minCol[n] = Math.min(minCol[n], left);
+            maxRow[n] = Math.max(maxRow[n], bottom);
+            maxCol[n] = Math.max(maxCol[n], right);
+        }
+
+        /**
+         * Set the live cells of a node on the board, its top left at row, col
+         */
+        void write(LifeEngine board, int n, long row, long col) {
+            if (minRow[n] > maxRow[n])
+                return;
+            if (level[n] == LEAFLEVEL) {
+                for (long bits = leaf[n]; bits != 0; bits &= bits - 1) {
+                    int i = Long.numberOfTrailingZeros(bits);
+                    board.set((int) (row + (i >> 3)), (int) (col + (i & 7)), true);
+                }
+                return;
+            }
+            long half = 1L << (level[n] - 1);
+            for (int i = 0; i < 4; i++)
+                write(board, quads[4 * n + i], row + (i >> 1) * half, col + (i & 1) * half);
+        }
+    }
+
+    // Helpers
+
+    private static int digits(int n) {
+        int digits = 1;
+        for (; n >= 10; n /= 10)
+            digits++;
+        return digits;
+    }
+
+    private static Rule parseRule(String text) {
+        String rule = text.trim();
+        if (rule.indexOf(':') >= 0)
+            rule = rule.substring(0, rule.indexOf(':'));
+        return Rule.forName(rule);
+    }
+
+    /**
+     * Set columns from up to to in a row of packed cells
+     */
+    private static void fill(long[] row, int from, int to) {
+        while (from < to) {
+            int w = from >>> 6;
+            int end = Math.min(to, (w + 1) << 6);
+            long mask = -1L << from;
+            if (end < (w + 1) << 6)
+                mask &= -1L >>> (64 - (end & 63));
+            row[w] |= mask;
+            from = end;
+        }
+    }
+
+    /**
+     * Return the first column from on that is alive, or dead, or width if there is none
+     */
+    private static int nextCell(long[] row, int from, int width, boolean alive) {
+        if (from >= width)
+            return width;
+        int w = from >>> 6;
+        long word = (alive ? row[w] : ~row[w]) & -1L << from;
+        while (word == 0) {
+            if (++w == row.length)
+                return width;
+            word = alive ? row[w] : ~row[w];
+        }
+        return Math.min(width, (w << 6) + Long.numberOfTrailingZeros(word));
+    }
+
+    // Bytes of a file through one buffer
+    private static class Input implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER);
+
+        Input(File file) throws IOException {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            buffer.flip();
+        }
+
+        /**
+         * Return the next byte, or -1 at the end
+         */
+        int read() throws IOException {
+            while (!buffer.hasRemaining()) {
+                buffer.clear();
+                int read = channel.read(buffer);
+                buffer.flip();
+                if (read < 0)
+                    return -1;
+            }
+            return buffer.get() & 0xff;
+        }
+
+        /**
+         * Return the rest of the line, or null at the end
+         */
+        String line() throws IOException {
+            StringBuilder sb = new StringBuilder();
+            int ch = read();
+            if (ch < 0)
+                return null;
+            for (; ch >= 0 && ch != '\n'; ch = read())
+                if (ch != '\r')
+                    sb.append((char) ch);
+            return sb.toString();
+        }
+
+        void rewind() throws IOException {
+            channel.position(0);
+            buffer.clear();
+            buffer.flip();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    // Bytes to a file through one buffer
+    private static class Output implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER);
+
+        Output(File file) throws IOException {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        void write(int b) throws IOException {
+            if (!buffer.hasRemaining())
+                flush();
+            buffer.put((byte) b);
+        }
+
+        void print(String s) throws IOException {
+            for (int i = 0; i < s.length(); i++)
+                write(s.charAt(i));
+        }
+
+        void print(int n) throws IOException {
+            for (int unit = pow10(digits(n) - 1); unit > 0; unit /= 10)
+                write('0' + n / unit % 10);
+        }
+
+        private static int pow10(int exponent) {
+            int unit = 1;
+            for (int i = 0; i < exponent; i++)
+                unit *= 10;
+            return unit;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
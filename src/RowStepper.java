@@ -0,0 +1,30 @@
+/**
+ * @author Quinn Brittain
+ *
+ * Steps many words of a packed row at once
+ *
+ * LifeEngine hands dense rows to one of these, and steps whatever
+ * words it leaves, and the words on the edges, itself. OffHeapBoard
+ * steps every row with them. Only words with a word on either side
+ * are given, so no wrapping is needed.
+ */
+
+public interface RowStepper {
+
+    /**
+     * Compute words from up to to of the next generation of the row at mid into dest,
+     * returning the first word not computed
+     */
+    int step(long[] cells, int up, int mid, int down, int from, int to, long[] dest, int birth, int survive);
+
+    /**
+     * Return the Vector API row stepper, or null if its module isn't there
+     */
+    static RowStepper vector() {
+        try {
+            return (RowStepper) Class.forName("VectorStepper").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            return null;
+        }
+    }
+}
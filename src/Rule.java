@@ -0,0 +1,148 @@
+/**
+ * @author Quinn Brittain
+ *
+ * Outer totalistic rule, eg. B3/S23 for Life
+ *
+ * Birth and survival are kept as masks of neighbor counts for the
+ * bitwise engines, and as a lookup table by state and count for
+ * anything working one cell at a time.
+ */
+
+public class Rule {
+
+    public static final Rule LIFE = new Rule("Life", 1 << 3, 1 << 2 | 1 << 3);
+    public static final Rule HIGHLIFE = new Rule("High Life", 1 << 3 | 1 << 6, 1 << 2 | 1 << 3);
+    public static final Rule DAYNIGHT = parse("Day & Night", "B3678/S34678");
+    public static final Rule SEEDS = parse("Seeds", "B2/S");
+    public static final Rule REPLICATOR = parse("Replicator", "B1357/S1357");
+    public static final Rule LIFEWITHOUTDEATH = parse("Life without Death", "B3/S012345678");
+    public static final Rule DIAMOEBA = parse("Diamoeba", "B35678/S5678");
+    public static final Rule MORLEY = parse("Morley", "B368/S245");
+    public static final Rule[] PRESETS = {LIFE, HIGHLIFE, DAYNIGHT, SEEDS, REPLICATOR, LIFEWITHOUTDEATH, DIAMOEBA, MORLEY};
+
+    private final String name;
+    private final int birth;
+    private final int survive;
+
+    // Next state by state * 9 + neighbor count
+    private final boolean[] table = new boolean[18];
+
+    public Rule(String name, int birth, int survive) {
+        if ((birth | survive) >>> 9 != 0)
+            throw new IllegalArgumentException("Neighbor counts must be 0 to 8");
+        this.name = name;
+        this.birth = birth;
+        this.survive = survive;
+        for (int count = 0; count <= 8; count++) {
+            table[count] = (birth >>> count & 1) != 0;
+            table[9 + count] = (survive >>> count & 1) != 0;
+        }
+    }
+
+    /**
+     * Parse a rule in B/S notation, eg. B36/S23, or the older S/B notation, eg. 23/36
+     */
+    public static Rule parse(String text) {
+        return parse(null, text);
+    }
+
+    private static Rule parse(String name, String text) {
+        String rule = text.trim().toUpperCase().replace(" ", "");
+        String[] parts = rule.split("/", -1);
+        if (parts.length != 2)
+            throw new IllegalArgumentException("Invalid rule: " + text);
+        String birth;
+        String survive;
+        if (parts[0].startsWith("B") && parts[1].startsWith("S")) {
+            birth = parts[0].substring(1);
+            survive = parts[1].substring(1);
+        } else if (parts[0].startsWith("S") && parts[1].startsWith("B")) {
+            survive = parts[0].substring(1);
+            birth = parts[1].substring(1);
+        } else {
+            survive = parts[0];
+            birth = parts[1];
+        }
+        Rule parsed = new Rule(name, counts(birth, text), counts(survive, text));
+        return name == null ? parsed.named() : parsed;
+    }
+
+    /**
+     * Return the rule in B/S notation, or a preset name and notation
+     */
+    public static Rule forName(String text) {
+        for (Rule preset : PRESETS)
+            if (preset.name.equalsIgnoreCase(text.trim()) || preset.toDisplayString().equalsIgnoreCase(text.trim()))
+                return preset;
+        return parse(text);
+    }
+
+    private static int counts(String digits, String text) {
+        int mask = 0;
+        for (char c : digits.toCharArray()) {
+            if (c < '0' || c > '8')
+                throw new IllegalArgumentException("Invalid rule: " + text);
+            mask |= 1 << (c - '0');
+        }
+        return mask;
+    }
+
+    /**
+     * Return the preset with the same counts, if there is one
+     */
+    private Rule named() {
+        for (Rule preset : PRESETS)
+            if (preset != null && preset.equals(this))
+                return preset;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getBirth() {
+        return birth;
+    }
+
+    public int getSurvive() {
+        return survive;
+    }
+
+    /**
+     * Return the next state of a cell
+     */
+    public boolean next(boolean alive, int count) {
+        return table[(alive ? 9 : 0) + count];
+    }
+
+    /**
+     * Return the name and notation, eg. Life B3/S23
+     */
+    public String toDisplayString() {
+        return name == null ? toString() : name + " " + this;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("B");
+        for (int count = 0; count <= 8; count++)
+            if ((birth >>> count & 1) != 0)
+                sb.append(count);
+        sb.append("/S");
+        for (int count = 0; count <= 8; count++)
+            if ((survive >>> count & 1) != 0)
+                sb.append(count);
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Rule && ((Rule) o).birth == birth && ((Rule) o).survive == survive;
+    }
+
+    @Override
+    public int hashCode() {
+        return birth << 9 | survive;
+    }
+}
@@ -0,0 +1,178 @@
+import java.io.*;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Reads and writes game saves, without needing JavaFX
+ *
+ * A save starts with a header of the dimensions, generation and rule,
+ * followed by the cells and the three bit planes of death counts, each
+ * as rows of packed longs, all deflated. Runs of empty or repeated
+ * words shrink to almost nothing, so mostly empty boards save small.
+ * Saves are read and written a row at a time, so they can also be read
+ * straight into an OffHeapBoard too big for the heap.
+ *
+ * Saves from before the header are a serialized boolean[][] of rows
+ * then the rule as a string, or true for Life and false for High Life.
+ * These are still read, accepting only those classes.
+ */
+
+public class SaveFile {
+
+    // "LIFE" at the start of every save with a header
+    private static final int MAGIC = 0x4C494645;
+    private static final int VERSION = 1;
+
+    // Classes allowed in a serialized save
+    private static final String LEGACY_CLASSES = "maxdepth=2;[[Z;[Z;java.lang.String;java.lang.Boolean;!*";
+
+    private SaveFile() {
+    }
+
+    /**
+     * Write a board to a save file
+     */
+    public static void write(File file, Board board) throws IOException {
+        try (OutputStream output = new FileOutputStream(file)) {
+            write(output, board);
+        }
+    }
+
+    /**
+     * Write a board as a save to a stream, flushed but left open so it can be synced
+     */
+    public static void write(OutputStream out, Board board) throws IOException {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(out));
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(board.getWidth());
+            output.writeInt(board.getHeight());
+            output.writeLong(board.getGeneration());
+            output.writeUTF(board.getRule().toString());
+            output.flush();
+
+            DeflaterOutputStream deflated = new DeflaterOutputStream(output, deflater, 1 << 16);
+            DataOutputStream cells = new DataOutputStream(new BufferedOutputStream(deflated));
+            long[] row = new long[board.getWords()];
+            for (int i = 0; i < board.getHeight(); i++) {
+                board.getRow(i, row);
+                writeRow(cells, row);
+            }
+            for (int plane = 0; plane < 3; plane++)
+                for (int i = 0; i < board.getHeight(); i++) {
+                    board.getDeathRow(i, plane, row);
+                    writeRow(cells, row);
+                }
+            cells.flush();
+            deflated.finish();
+            output.flush();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Read a board from a save file
+     */
+    public static LifeEngine read(File file) throws IOException {
+        return (LifeEngine) read(file, false, null);
+    }
+
+    /**
+     * Read a board from a save file into direct buffers, or mapped from map if not null
+     */
+    public static OffHeapBoard readOffHeap(File file, File map) throws IOException {
+        return (OffHeapBoard) read(file, true, map);
+    }
+
+    private static Board read(File file, boolean offHeap, File map) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            input.mark(4);
+            if (input.readInt() != MAGIC) {
+                if (offHeap)
+                    throw new IOException("Save is too old to read off the heap: " + file);
+                input.reset();
+                return readLegacy(input, file);
+            }
+            int version = input.readInt();
+            if (version > VERSION)
+                throw new IOException("Save is from a newer version: " + file);
+            int width = input.readInt();
+            int height = input.readInt();
+            long generation = input.readLong();
+            String rule = input.readUTF();
+
+            if (offHeap && width % 64 != 0)
+                throw new IOException("Off heap board width must be a multiple of 64: " + file);
+            Board board;
+            if (!offHeap)
+                board = new LifeEngine(width, height);
+            else if (map == null)
+                board = new OffHeapBoard(width, height);
+            else
+                board = new OffHeapBoard(width, height, map);
+            board.setRule(Rule.forName(rule));
+            board.setGeneration(generation);
+            Inflater inflater = new Inflater();
+            try {
+                DataInputStream cells = new DataInputStream(new BufferedInputStream(
+                        new InflaterInputStream(input, inflater, 1 << 16)));
+                long[] row = new long[board.getWords()];
+                for (int i = 0; i < height; i++) {
+                    readRow(cells, row);
+                    board.setRow(i, row);
+                }
+                for (int plane = 0; plane < 3; plane++)
+                    for (int i = 0; i < height; i++) {
+                        readRow(cells, row);
+                        board.setDeathRow(i, plane, row);
+                    }
+            } finally {
+                inflater.end();
+            }
+            return board;
+        } catch (IllegalArgumentException | EOFException ex) {
+            throw new IOException("Not a game save: " + file, ex);
+        }
+    }
+
+    /**
+     * Read a board saved as a serialized boolean[][]
+     */
+    private static LifeEngine readLegacy(InputStream in, File file) throws IOException {
+        try ( // Create an input stream for file object.sav
+              ObjectInputStream input = new ObjectInputStream(in)) {
+            input.setObjectInputFilter(ObjectInputFilter.Config.createFilter(LEGACY_CLASSES));
+            boolean[][] cellStates = (boolean[][]) (input.readObject());
+            LifeEngine board = new LifeEngine(cellStates[0].length, cellStates.length);
+            for (int i = 0; i < board.getHeight(); i++)
+                for (int j = 0; j < board.getWidth(); j++)
+                    board.set(i, j, cellStates[i][j]);
+            Object savedRule = input.readObject();
+            if (savedRule instanceof Boolean)
+                board.setRule((Boolean) savedRule ? Rule.LIFE : Rule.HIGHLIFE);
+            else
+                board.setRule(Rule.forName((String) savedRule));
+            return board;
+        } catch (ClassNotFoundException | ClassCastException | ArrayIndexOutOfBoundsException
+                 | InvalidClassException ex) {
+            throw new IOException("Not a game save: " + file, ex);
+        }
+    }
+
+    private static void writeRow(DataOutputStream out, long[] row) throws IOException {
+        for (long word : row)
+            out.writeLong(word);
+    }
+
+    private static void readRow(DataInputStream in, long[] row) throws IOException {
+        for (int w = 0; w < row.length; w++)
+            row[w] = in.readLong();
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * @author Quinn Brittain
+ *
+ * Steps packed rows one word at a time
+ *
+ * OffHeapBoard steps whole rows with it when the Vector API isn't there,
+ * and the words left over after the last whole vector when it is, and
+ * SparseBoard steps its chunks with it. LifeEngine doesn't use it: words
+ * not in a dense row are stepped tile by tile in LifeEngine itself, along
+ * with the hash, deaths and counts of each word.
+ */
+
+public class ScalarStepper implements RowStepper {
+
+    @Override
+    public int step(long[] cells, int up, int mid, int down, int from, int to, long[] dest, int birth, int survive) {
+        for (int w = from; w < to; w++) {
+            long a = cells[up + w];
+            long aW = a << 1 | cells[up + w - 1] >>> 63;
+            long aE = a >>> 1 | cells[up + w + 1] << 63;
+            long b = cells[down + w];
+            long bW = b << 1 | cells[down + w - 1] >>> 63;
+            long bE = b >>> 1 | cells[down + w + 1] << 63;
+            long c = cells[mid + w];
+            long cW = c << 1 | cells[mid + w - 1] >>> 63;
+            long cE = c >>> 1 | cells[mid + w + 1] << 63;
+
+            // Sum each row of neighbors into two bits
+            long a1 = aW ^ a ^ aE;
+            long a2 = (aW & a) | (aE & (aW ^ a));
+            long b1 = bW ^ b ^ bE;
+            long b2 = (bW & b) | (bE & (bW ^ b));
+            long c1 = cW ^ cE;
+            long c2 = cW & cE;
+
+            // Add the rows into a four bit count
+            long s0 = a1 ^ b1 ^ c1;
+            long k1 = (a1 & b1) | (c1 & (a1 ^ b1));
+            long t1 = a2 ^ b2 ^ c2;
+            long t2 = (a2 & b2) | (c2 & (a2 ^ b2));
+            long s1 = t1 ^ k1;
+            long k2 = t1 & k1;
+            long s2 = t2 ^ k2;
+            long s3 = t2 & k2;
+
+            // Counts 0 to 3 from the low bits, then 0, 4 or 8 from the high bits
+            long low0 = ~s0 & ~s1;
+            long low1 = s0 & ~s1;
+            long low2 = ~s0 & s1;
+            long low3 = s0 & s1;
+            long high0 = ~s2 & ~s3;
+            long born = 0;
+            long stay = 0;
+            for (int n = 0; n <= 8; n++) {
+                if (((birth | survive) >>> n & 1) == 0)
+                    continue;
+                long low = (n & 3) == 0 ? low0 : (n & 3) == 1 ? low1 : (n & 3) == 2 ? low2 : low3;
+                long match = low & (n < 4 ? high0 : n < 8 ? s2 : s3);
+                if ((birth >>> n & 1) != 0)
+                    born |= match;
+                if ((survive >>> n & 1) != 0)
+                    stay |= match;
+            }
+            dest[w] = (~c & born) | (c & stay);
+        }
+        return to;
+    }
+}
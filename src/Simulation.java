@@ -0,0 +1,309 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Steps a board on its own thread, as fast as possible or at a target rate
+ *
+ * While running, the board belongs to the simulation thread. Changes
+ * from elsewhere go through edit() and are made between generations.
+ * Copies of the board are published for display, which are never
+ * changed once published. A new copy is only made after the last one
+ * was taken, so a slow display skips generations instead of slowing
+ * the simulation. Copies are recycled, so few boards are ever made.
+ *
+ * It can also stop by itself once the board settles into a cycle, eg.
+ * dies out or leaves only still lifes and oscillators, or once it reaches
+ * a given generation, and hand copies
+ * to a Checkpointer to be saved without stopping.
+ *
+ * Instead of stepping, it can jump the board ahead with HashLife, see
+ * jump(), which stop() cancels part way.
+ *
+ * start(), stop() and edit() are meant to be called from one thread,
+ * eg. the JavaFX application thread.
+ */
+
+public class Simulation {
+
+    // Furthest behind the target rate before giving up on catching up
+    private static final long MAXLAG = 250_000_000L;
+
+    private final LifeEngine board;
+    private volatile Metrics metrics;
+    private volatile History history;
+    private volatile Checkpointer checkpointer;
+    private volatile double target = 0;
+    private volatile boolean running = false;
+    private volatile boolean stopOnCycle = false;
+    private volatile boolean settled = false;
+    private volatile long until = Long.MAX_VALUE;
+    private volatile boolean reached = false;
+    private HashLife jumper;
+    private long jumpBy;
+    private final CycleDetector cycles = new CycleDetector();
+    private Thread thread;
+
+    // Changes waiting for the next generation
+    private final ConcurrentLinkedQueue<Runnable> edits = new ConcurrentLinkedQueue<>();
+
+    // Latest copy not yet taken, and copies free to reuse
+    private final AtomicReference<LifeEngine> ready = new AtomicReference<>();
+    private final ArrayBlockingQueue<LifeEngine> free = new ArrayBlockingQueue<>(2);
+
+    public Simulation(LifeEngine board) {
+        this.board = board;
+    }
+
+    public LifeEngine getBoard() {
+        return board;
+    }
+
+    /**
+     * Set where step times are recorded, or null to not record them
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Set where each generation is kept to step back to, or null to not keep them
+     */
+    public void setHistory(History history) {
+        this.history = history;
+    }
+
+    /**
+     * Set what takes checkpoints between generations, or null to not take them
+     */
+    public void setCheckpointer(Checkpointer checkpointer) {
+        this.checkpointer = checkpointer;
+    }
+
+    /**
+     * Set whether to stop once the board settles into a cycle
+     */
+    public void setStopOnCycle(boolean stopOnCycle) {
+        this.stopOnCycle = stopOnCycle;
+    }
+
+    /**
+     * Return whether the simulation stopped itself as the board settled
+     */
+    public boolean isSettled() {
+        return settled;
+    }
+
+    /**
+     * Set the generation to stop at, or Long.MAX_VALUE to keep going
+     */
+    public void setUntil(long until) {
+        this.until = until;
+    }
+
+    /**
+     * Return whether the simulation stopped itself at the generation set by setUntil
+     */
+    public boolean isReached() {
+        return reached;
+    }
+
+    /**
+     * Return the period and start of the cycle the board settled into, once stopped
+     */
+    public CycleDetector getCycles() {
+        return cycles;
+    }
+
+    /**
+     * Set generations per second, or 0 for as fast as possible
+     */
+    public void setTarget(double target) {
+        this.target = Math.max(0, target);
+        LockSupport.unpark(thread);
+    }
+
+    public double getTarget() {
+        return target;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Jump the board ahead with HashLife on the simulation thread instead of stepping, stopping
+     * once there as if it reached the generation set by setUntil, the board left at the last
+     * power of two reached if stopped before
+     */
+    public void jump(HashLife hashLife, long generations) {
+        if (running)
+            return;
+        jumper = hashLife;
+        jumpBy = generations;
+        start();
+    }
+
+    public void start() {
+        if (running)
+            return;
+        running = true;
+        settled = false;
+        reached = false;
+        cycles.reset();
+        thread = new Thread(this::run, "Simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop stepping and wait for the thread, after which the board can be used directly
+     */
+    public void stop() {
+        if (!running)
+            return;
+        running = false;
+        LockSupport.unpark(thread);
+        boolean interrupted = false;
+        while (thread.isAlive())
+            try {
+                thread.join();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        thread = null;
+        applyEdits();
+        recycle(ready.getAndSet(null));
+    }
+
+    /**
+     * Change the board now, or between generations if running
+     */
+    public void edit(Runnable change) {
+        if (!running) {
+            change.run();
+            return;
+        }
+        edits.add(change);
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Return the latest copy of the board, or null if there is nothing new
+     */
+    public LifeEngine take() {
+        return ready.getAndSet(null);
+    }
+
+    /**
+     * Give back a copy from take() once it isn't shown anymore
+     */
+    public void recycle(LifeEngine copy) {
+        if (copy != null)
+            free.offer(copy);
+    }
+
+    private void run() {
+        if (jumper != null) {
+            jump();
+            return;
+        }
+        double pace = target;
+        long start = System.nanoTime();
+        long steps = 0;
+        while (running) {
+            if (applyEdits()) {
+                cycles.reset();
+                publish();
+            }
+
+            // Wait for the next generation at the target rate
+            if (target != pace) {
+                pace = target;
+                start = System.nanoTime();
+                steps = 0;
+            }
+            if (pace > 0) {
+                long wait = start + (long) (steps * 1e9 / pace) - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(this, wait);
+                    continue;
+                }
+                if (wait < -MAXLAG) {
+                    start = System.nanoTime();
+                    steps = 0;
+                }
+            }
+
+            if (board.getGeneration() >= until) {
+                reached = true;
+                break;
+            }
+            if (stopOnCycle && cycles.record(board)) {
+                settled = true;
+                break;
+            }
+
+            long stepStart = System.nanoTime();
+            board.step();
+            Metrics recorder = metrics;
+            if (recorder != null)
+                recorder.recordStep(System.nanoTime() - stepStart, board);
+            History past = history;
+            if (past != null)
+                past.record(board);
+            Checkpointer saver = checkpointer;
+            if (saver != null)
+                saver.capture(board);
+            steps++;
+            if (ready.get() == null)
+                publish();
+        }
+        publish();
+    }
+
+    /**
+     * Jump the board ahead with HashLife and show where it got to
+     */
+    private void jump() {
+        HashLife hashLife = jumper;
+        jumper = null;
+        hashLife.load(board);
+        hashLife.jump(jumpBy, () -> !running);
+        if (hashLife.getGeneration() != board.getGeneration())
+            hashLife.store(board);
+        History past = history;
+        if (past != null)
+            past.record(board);
+        reached = true;
+        publish();
+    }
+
+    private boolean applyEdits() {
+        boolean applied = false;
+        for (Runnable change = edits.poll(); change != null; change = edits.poll()) {
+            change.run();
+            applied = true;
+        }
+        return applied;
+    }
+
+    /**
+     * Copy the board for display, replacing any copy not yet taken
+     */
+    private void publish() {
+        LifeEngine copy = free.poll();
+        if (copy == null)
+            copy = new LifeEngine(board.getWidth(), board.getHeight());
+        board.copyTo(copy);
+        Metrics recorder = metrics;
+        if (recorder != null)
+            recorder.recordBoard(copy);
+        recycle(ready.getAndSet(copy));
+    }
+}
@@ -0,0 +1,148 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Searches random soups for the objects they leave
+ *
+ * Soup n of a seed is a random square of cells in the middle of an empty
+ * wrapping board, always the same for the same seed and n, so any soup
+ * can be run again by itself. Each soup is stepped until it settles into
+ * a cycle, or gives up after the most generations, then its ash is named
+ * and counted in the census.
+ *
+ * Soups are split into ranges on a work stealing pool, each thread
+ * stepping one soup at a time on a board of its own, as small boards
+ * step faster on one thread than split between many.
+ */
+
+public class SoupSearch {
+
+    // Fewest soups worth handing to another thread
+    private static final int BATCH = 4;
+
+    // Most generations looked back over for a cycle
+    private static final int MAXWINDOW = 1 << 16;
+
+    private final int width;
+    private final int height;
+    private final int size;
+    private final double density;
+    private final Rule rule;
+    private final long maxGenerations;
+    private final int window;
+    private final Census census = new Census();
+
+    // Board and tools for each thread searching
+    private final ThreadLocal<Searcher> searchers = ThreadLocal.withInitial(Searcher::new);
+
+    /**
+     * Search soups of size by size cells on width by height boards
+     */
+    public SoupSearch(int width, int height, int size, double density, Rule rule, long maxGenerations) {
+        if (size < 1 || size > width || size > height)
+            throw new IllegalArgumentException("Soup must fit on the board");
+        if (density < 0 || density > 1)
+            throw new IllegalArgumentException("Density must be 0 to 1");
+        if (!SparseBoard.fits(rule))
+            throw new IllegalArgumentException("B0 rules can't be searched, their ash is run on an endless plane");
+        this.width = width;
+        this.height = height;
+        this.size = size;
+        this.density = density;
+        this.rule = rule;
+        this.maxGenerations = maxGenerations;
+
+        // A glider takes 4 generations a cell to come back round the board, and has to be seen to
+        long lap = 4L * width / gcd(width, height) * height;
+        window = (int) Math.min(MAXWINDOW, Math.max(CycleDetector.WINDOW, lap + 1));
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    public Census getCensus() {
+        return census;
+    }
+
+    /**
+     * Start searching soups first up to but not including last of a seed on the pool,
+     * the census filling in as it goes
+     */
+    public ForkJoinTask<Void> start(long seed, long first, long last, ForkJoinPool pool) {
+        return pool.submit(new Soups(seed, first, last));
+    }
+
+    /**
+     * Put soup n of a seed on an empty board
+     */
+    public void seed(LifeEngine board, long seed, long n) {
+        board.clear();
+        SplittableRandom random = new SplittableRandom(seed * 0x9E3779B97F4A7C15L + n);
+        int top = (height - size) / 2;
+        int left = (width - size) / 2;
+        long[] row = new long[board.getWords()];
+        for (int r = 0; r < size; r++) {
+            java.util.Arrays.fill(row, 0L);
+            for (int c = 0; c < size; c++)
+                if (density == 0.5 ? random.nextBoolean() : random.nextDouble() < density)
+                    row[(left + c) >>> 6] |= 1L << (left + c);
+            board.setRow(top + r, row);
+        }
+    }
+
+    // A board, cycle detector and classifier kept by each thread
+    private class Searcher {
+        private final LifeEngine board = new LifeEngine(width, height);
+        private final CycleDetector cycles = new CycleDetector(window);
+        private final AshClassifier classifier = new AshClassifier(rule);
+
+        Searcher() {
+            board.setRule(rule);
+        }
+
+        void search(long seed, long n) {
+            seed(board, seed, n);
+            cycles.reset();
+            boolean settled = cycles.record(board);
+            for (long g = 0; g < maxGenerations && !settled; g++) {
+                board.step();
+                settled = cycles.record(board);
+            }
+            census.addSoup(settled);
+            if (settled)
+                classifier.classify(board, census);
+        }
+    }
+
+    // A range of soups to search, halved until BATCH or fewer are left
+    private class Soups extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long seed;
+        private final long first;
+        private final long last;
+
+        Soups(long seed, long first, long last) {
+            this.seed = seed;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected void compute() {
+            if (last - first <= BATCH) {
+                Searcher searcher = searchers.get();
+                for (long n = first; n < last; n++)
+                    searcher.search(seed, n);
+            } else {
+                long half = (first + last) >>> 1;
+                invokeAll(new Soups(seed, first, half), new Soups(seed, half, last));
+            }
+        }
+    }
+}
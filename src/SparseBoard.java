@@ -0,0 +1,441 @@
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Unbounded Game of Life plane, kept as a map of chunks
+ *
+ * The plane is split into 64x64 chunks, one long per row, and only
+ * chunks near live cells exist. Before each step a chunk is made on
+ * any side where live cells touch the edge, so births spilling over
+ * have somewhere to go, and after it empty chunks nothing needs are
+ * freed. Memory and time follow the live area, not its bounds, so
+ * spaceships can fly off forever without the board growing with them.
+ *
+ * Like the tiles in LifeEngine, a chunk is only stepped if it or a
+ * neighbor changed last generation.
+ *
+ * Rules with B0 can't be run, as they would fill the endless plane.
+ */
+
+public class SparseBoard {
+
+    // Chunk sides in cells
+    private static final int SIZE = 64;
+    private static final int SHIFT = 6;
+
+    private static final RowStepper STEPPER = new ScalarStepper();
+
+    /**
+     * Takes the live cells of a plane a word at a time, from col in a row, the lowest bit leftmost
+     */
+    public interface Cells {
+        void word(int row, int col, long bits) throws IOException;
+    }
+
+    // Chunks by position, and in a list for stepping in order
+    private final ChunkMap map = new ChunkMap();
+    private final ArrayList<Chunk> chunks = new ArrayList<>();
+
+    // Rows of a chunk with the rows and columns around it, for the stepper
+    private final long[] halo = new long[(SIZE + 2) * 3];
+    private final long[] word = new long[1];
+
+    private Rule rule = Rule.LIFE;
+    private long generation = 0;
+    private int activeChunks = 0;
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public void setGeneration(long generation) {
+        this.generation = generation;
+    }
+
+    public Rule getRule() {
+        return rule;
+    }
+
+    public void setRule(Rule rule) {
+        if (!fits(rule))
+            throw new IllegalArgumentException("B0 rules can't be run on an endless plane: " + rule);
+        this.rule = rule;
+        for (Chunk chunk : chunks)
+            chunk.changed = true;
+    }
+
+    /**
+     * Return true if a rule can be run on the plane, ie. it has no births from nothing
+     */
+    public static boolean fits(Rule rule) {
+        return !rule.next(false, 0);
+    }
+
+    /**
+     * Return how many chunks exist
+     */
+    public int getChunks() {
+        return chunks.size();
+    }
+
+    /**
+     * Return how many chunks were stepped last generation
+     */
+    public int getActiveChunks() {
+        return activeChunks;
+    }
+
+    /**
+     * Return status of a cell
+     */
+    public boolean get(int row, int col) {
+        Chunk chunk = map.get(row >> SHIFT, col >> SHIFT);
+        return chunk != null && (chunk.rows[row & (SIZE - 1)] >>> col & 1L) != 0;
+    }
+
+    /**
+     * Set status of a cell
+     */
+    public void set(int row, int col, boolean status) {
+        Chunk chunk = map.get(row >> SHIFT, col >> SHIFT);
+        if (chunk == null) {
+            if (!status)
+                return;
+            chunk = add(row >> SHIFT, col >> SHIFT);
+        }
+        if (status)
+            chunk.rows[row & (SIZE - 1)] |= 1L << col;
+        else
+            chunk.rows[row & (SIZE - 1)] &= ~(1L << col);
+        chunk.changed = true;
+    }
+
+    /**
+     * Add the live cells of a board, with its top left corner at top and left
+     */
+    public void load(Board board, int top, int left) {
+        long[] row = new long[board.getWords()];
+        for (int r = 0; r < board.getHeight(); r++) {
+            board.getRow(r, row);
+            for (int w = 0; w < row.length; w++)
+                for (long bits = row[w]; bits != 0; bits &= bits - 1)
+                    set(top + r, left + (w << 6) + Long.numberOfTrailingZeros(bits), true);
+        }
+    }
+
+    /**
+     * Pass every word of live cells to cells in reading order, top to bottom then left to right
+     */
+    public void forEachWord(Cells cells) throws IOException {
+        chunks.sort((a, b) -> a.cy != b.cy ? Integer.compare(a.cy, b.cy) : Integer.compare(a.cx, b.cx));
+        for (int band = 0; band < chunks.size(); ) {
+            int end = band;
+            while (end < chunks.size() && chunks.get(end).cy == chunks.get(band).cy)
+                end++;
+            for (int r = 0; r < SIZE; r++)
+                for (int i = band; i < end; i++) {
+                    Chunk chunk = chunks.get(i);
+                    if (chunk.rows[r] != 0)
+                        cells.word((chunk.cy << SHIFT) + r, chunk.cx << SHIFT, chunk.rows[r]);
+                }
+            band = end;
+        }
+    }
+
+    /**
+     * Return the top row with a live cell, or 0 if there are none
+     */
+    public int getTop() {
+        int top = Integer.MAX_VALUE;
+        for (Chunk chunk : chunks)
+            for (int r = 0; r < SIZE; r++)
+                if (chunk.rows[r] != 0) {
+                    top = Math.min(top, (chunk.cy << SHIFT) + r);
+                    break;
+                }
+        return top == Integer.MAX_VALUE ? 0 : top;
+    }
+
+    /**
+     * Return the bottom row with a live cell, or 0 if there are none
+     */
+    public int getBottom() {
+        int bottom = Integer.MIN_VALUE;
+        for (Chunk chunk : chunks)
+            for (int r = SIZE - 1; r >= 0; r--)
+                if (chunk.rows[r] != 0) {
+                    bottom = Math.max(bottom, (chunk.cy << SHIFT) + r);
+                    break;
+                }
+        return bottom == Integer.MIN_VALUE ? 0 : bottom;
+    }
+
+    /**
+     * Return the leftmost column with a live cell, or 0 if there are none
+     */
+    public int getLeft() {
+        int left = Integer.MAX_VALUE;
+        for (Chunk chunk : chunks) {
+            long any = chunk.any();
+            if (any != 0)
+                left = Math.min(left, (chunk.cx << SHIFT) + Long.numberOfTrailingZeros(any));
+        }
+        return left == Integer.MAX_VALUE ? 0 : left;
+    }
+
+    /**
+     * Return the rightmost column with a live cell, or 0 if there are none
+     */
+    public int getRight() {
+        int right = Integer.MIN_VALUE;
+        for (Chunk chunk : chunks) {
+            long any = chunk.any();
+            if (any != 0)
+                right = Math.max(right, (chunk.cx << SHIFT) + 63 - Long.numberOfLeadingZeros(any));
+        }
+        return right == Integer.MIN_VALUE ? 0 : right;
+    }
+
+    /**
+     * Count the live cells on the plane
+     */
+    public long population() {
+        long count = 0;
+        for (Chunk chunk : chunks)
+            for (long row : chunk.rows)
+                count += Long.bitCount(row);
+        return count;
+    }
+
+    /**
+     * Advance the plane one generation
+     */
+    public void step() {
+        // Make room wherever live cells touch an edge
+        for (Chunk chunk : chunks)
+            chunk.needed = false;
+        int count = chunks.size();
+        for (int i = 0; i < count; i++)
+            grow(chunks.get(i));
+
+        int birth = rule.getBirth();
+        int survive = rule.getSurvive();
+        activeChunks = 0;
+        for (Chunk chunk : chunks)
+            chunk.stepping = chunk.changed || neighborChanged(chunk);
+        for (Chunk chunk : chunks)
+            if (chunk.stepping) {
+                stepChunk(chunk, birth, survive);
+                activeChunks++;
+            }
+
+        // Swap generations and free empty chunks nothing needs
+        int kept = 0;
+        for (Chunk chunk : chunks) {
+            if (chunk.stepping) {
+                long[] swap = chunk.rows;
+                chunk.rows = chunk.next;
+                chunk.next = swap;
+                chunk.changed = chunk.changedNext;
+            } else {
+                chunk.changed = false;
+            }
+            if (chunk.needed || chunk.any() != 0) {
+                chunks.set(kept++, chunk);
+            } else {
+                map.remove(chunk.cy, chunk.cx);
+                if (chunk.changed)
+                    wakeNeighbors(chunk);
+            }
+        }
+        chunks.subList(kept, chunks.size()).clear();
+        generation++;
+    }
+
+    /**
+     * Make the chunks next to live cells on the edges of a chunk, and mark them needed
+     */
+    private void grow(Chunk chunk) {
+        long top = chunk.rows[0];
+        long bottom = chunk.rows[SIZE - 1];
+        long any = chunk.any();
+        if (any == 0)
+            return;
+        chunk.needed = true;
+        if (top != 0)
+            need(chunk.cy - 1, chunk.cx);
+        if (bottom != 0)
+            need(chunk.cy + 1, chunk.cx);
+        if ((any & 1L) != 0)
+            need(chunk.cy, chunk.cx - 1);
+        if (any < 0)
+            need(chunk.cy, chunk.cx + 1);
+        if ((top & 1L) != 0)
+            need(chunk.cy - 1, chunk.cx - 1);
+        if (top < 0)
+            need(chunk.cy - 1, chunk.cx + 1);
+        if ((bottom & 1L) != 0)
+            need(chunk.cy + 1, chunk.cx - 1);
+        if (bottom < 0)
+            need(chunk.cy + 1, chunk.cx + 1);
+    }
+
+    private void need(int cy, int cx) {
+        Chunk chunk = map.get(cy, cx);
+        if (chunk == null)
+            chunk = add(cy, cx);
+        chunk.needed = true;
+    }
+
+    private Chunk add(int cy, int cx) {
+        Chunk chunk = new Chunk(cy, cx);
+        map.put(chunk);
+        chunks.add(chunk);
+        return chunk;
+    }
+
+    private boolean neighborChanged(Chunk chunk) {
+        for (int i = -1; i <= 1; i++)
+            for (int j = -1; j <= 1; j++) {
+                Chunk near = map.get(chunk.cy + i, chunk.cx + j);
+                if (near != null && near.changed)
+                    return true;
+            }
+        return false;
+    }
+
+    /**
+     * Step the chunks around one that was freed after changing, as they saw it change
+     */
+    private void wakeNeighbors(Chunk chunk) {
+        for (int i = -1; i <= 1; i++)
+            for (int j = -1; j <= 1; j++) {
+                Chunk near = map.get(chunk.cy + i, chunk.cx + j);
+                if (near != null)
+                    near.changed = true;
+            }
+    }
+
+    /**
+     * Compute the next generation of a chunk into its other buffer
+     */
+    private void stepChunk(Chunk chunk, int birth, int survive) {
+        // Rows from above to below the chunk, each as the words west, in and east of it
+        for (int i = -1; i <= 1; i++) {
+            Chunk north = map.get(chunk.cy - 1, chunk.cx + i);
+            Chunk south = map.get(chunk.cy + 1, chunk.cx + i);
+            Chunk side = i == 0 ? chunk : map.get(chunk.cy, chunk.cx + i);
+            halo[1 + i] = north == null ? 0 : north.rows[SIZE - 1];
+            halo[(SIZE + 1) * 3 + 1 + i] = south == null ? 0 : south.rows[0];
+            for (int r = 0; r < SIZE; r++)
+                halo[(r + 1) * 3 + 1 + i] = side == null ? 0 : side.rows[r];
+        }
+
+        boolean changed = false;
+        for (int r = 0; r < SIZE; r++) {
+            STEPPER.step(halo, r * 3 + 1, (r + 1) * 3 + 1, (r + 2) * 3 + 1, 0, 1, word, birth, survive);
+            changed |= word[0] != chunk.rows[r];
+            chunk.next[r] = word[0];
+        }
+        chunk.changedNext = changed;
+    }
+
+    // 64x64 cells at a chunk position, as two generations of rows
+    private static class Chunk {
+        private final int cy;
+        private final int cx;
+        private long[] rows = new long[SIZE];
+        private long[] next = new long[SIZE];
+        private boolean changed = true;
+        private boolean changedNext;
+        private boolean stepping;
+        private boolean needed;
+
+        Chunk(int cy, int cx) {
+            this.cy = cy;
+            this.cx = cx;
+        }
+
+        /**
+         * Return the columns with a live cell in any row
+         */
+        long any() {
+            long any = 0;
+            for (long row : rows)
+                any |= row;
+            return any;
+        }
+    }
+
+    // Open addressing map of chunks by position, so lookups don't box keys
+    private static class ChunkMap {
+        private long[] keys = new long[16];
+        private Chunk[] values = new Chunk[16];
+        private int size = 0;
+
+        private static long key(int cy, int cx) {
+            return (long) cy << 32 | (cx & 0xFFFFFFFFL);
+        }
+
+        private int slot(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h >>> 32 ^ h) & (keys.length - 1);
+        }
+
+        Chunk get(int cy, int cx) {
+            long key = key(cy, cx);
+            for (int i = slot(key); values[i] != null; i = (i + 1) & (keys.length - 1))
+                if (keys[i] == key)
+                    return values[i];
+            return null;
+        }
+
+        void put(Chunk chunk) {
+            if (size * 2 >= keys.length)
+                resize(keys.length * 2);
+            long key = key(chunk.cy, chunk.cx);
+            int i = slot(key);
+            while (values[i] != null)
+                i = (i + 1) & (keys.length - 1);
+            keys[i] = key;
+            values[i] = chunk;
+            size++;
+        }
+
+        void remove(int cy, int cx) {
+            long key = key(cy, cx);
+            int mask = keys.length - 1;
+            int i = slot(key);
+            while (values[i] != null && keys[i] != key)
+                i = (i + 1) & mask;
+            if (values[i] == null)
+                return;
+            values[i] = null;
+            size--;
+
+            // Shift back later entries that would no longer be found past the gap
+            for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+                int home = slot(keys[j]);
+                if (((j - home) & mask) >= ((j - i) & mask)) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    values[j] = null;
+                    i = j;
+                }
+            }
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            Chunk[] oldValues = values;
+            keys = new long[capacity];
+            values = new Chunk[capacity];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++)
+                if (oldValues[i] != null)
+                    put(oldValues[i]);
+        }
+    }
+}
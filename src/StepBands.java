@@ -0,0 +1,150 @@
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Splits a step of a board into bands of rows run in parallel on a pool
+ *
+ * Rows are split in half, and the halves in half again, until bands are
+ * no more than a given number of rows. The tree is made once and run
+ * again every generation, and each band at the bottom keeps the scratch
+ * space it steps with, so stepping in parallel allocates nothing.
+ *
+ * Halves complete into their parent rather than being joined, and a
+ * thread outside the pool parks until the whole tree is done, as a join
+ * that has to wait allocates every time in Java 17.
+ *
+ * Each band returns a long, xored together over every band, eg. how the
+ * hash of the board changed.
+ */
+
+public class StepBands<S> extends CountedCompleter<Void> {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Steps rows from up to but not including to with a band's scratch space
+     */
+    public interface Stepper<S> {
+        long step(int from, int to, S scratch);
+    }
+
+    private final int from;
+    private final int to;
+    private final int band;
+    private final StepBands<S> upper;
+    private final StepBands<S> lower;
+    private final Stepper<S> stepper;
+    private final S scratch;
+    private long result;
+
+    // Thread outside the pool waiting for the whole tree, and what went wrong if anything
+    private volatile Thread waiter;
+    private volatile boolean finished;
+    private Throwable failure;
+
+    /**
+     * Split rows from up to but not including to into bands of at most band rows,
+     * each with scratch space of its own
+     */
+    public StepBands(int from, int to, int band, Supplier<S> scratch, Stepper<S> stepper) {
+        this(null, from, to, band, scratch, stepper);
+    }
+
+    private StepBands(StepBands<S> parent, int from, int to, int band, Supplier<S> scratch, Stepper<S> stepper) {
+        super(parent);
+        this.from = from;
+        this.to = to;
+        this.band = band;
+        this.stepper = stepper;
+        if (to - from <= band) {
+            upper = null;
+            lower = null;
+            this.scratch = scratch.get();
+        } else {
+            int half = (from + to) >>> 1;
+            upper = new StepBands<>(this, from, half, band, scratch, stepper);
+            lower = new StepBands<>(this, half, to, band, scratch, stepper);
+            this.scratch = null;
+        }
+    }
+
+    public int getBand() {
+        return band;
+    }
+
+    /**
+     * Step every band on a pool and wait for them, returning their results xored together
+     */
+    public long run(ForkJoinPool pool) {
+        reset();
+        if (ForkJoinTask.inForkJoinPool()) {
+            pool.invoke(this);
+            return result;
+        }
+        finished = false;
+        failure = null;
+        waiter = Thread.currentThread();
+        pool.execute(this);
+        while (!finished)
+            LockSupport.park(this);
+        // Marked done by the pool just after, and it can't be reset until then
+        while (!isDone())
+            Thread.onSpinWait();
+        waiter = null;
+        if (failure instanceof RuntimeException)
+            throw (RuntimeException) failure;
+        if (failure instanceof Error)
+            throw (Error) failure;
+        return result;
+    }
+
+    /**
+     * Make this band and its halves ready to run again
+     */
+    private void reset() {
+        reinitialize();
+        if (upper != null) {
+            upper.reset();
+            lower.reset();
+        }
+    }
+
+    @Override
+    public void compute() {
+        if (upper == null) {
+            result = stepper.step(from, to, scratch);
+            tryComplete();
+        } else {
+            setPendingCount(1);
+            upper.fork();
+            lower.compute();
+        }
+    }
+
+    @Override
+    public void onCompletion(CountedCompleter<?> caller) {
+        if (upper != null)
+            result = upper.result ^ lower.result;
+        wake();
+    }
+
+    @Override
+    public boolean onExceptionalCompletion(Throwable ex, CountedCompleter<?> caller) {
+        failure = ex;
+        wake();
+        return true;
+    }
+
+    private void wake() {
+        Thread waiting = waiter;
+        if (waiting != null) {
+            finished = true;
+            LockSupport.unpark(waiting);
+        }
+    }
+}
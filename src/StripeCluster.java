@@ -0,0 +1,162 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Steps one wrapping board split into stripes of rows between processes
+ *
+ * Each stripe is stepped by a StripeWorker in a JVM of its own, started
+ * with the same Java, options and class path as this one. Workers tell
+ * this process the port they listen on for their neighbors, get their
+ * stripe and the port of the stripe below, then step and swap halos with
+ * each other directly, sending only what they found back here at the end.
+ *
+ * Stripes start from a random soup, row by row as Board.randomRow gives,
+ * so the board is the same however many workers there are, and the same
+ * as randomize gives one board. All workers run on this host over loopback.
+ */
+
+public class StripeCluster {
+
+    // Longest to wait for every worker to start and check in
+    private static final int STARTMILLIS = 60_000;
+
+    private final int width;
+    private final int height;
+    private final int workers;
+    private final int depth;
+    private final int threads;
+    private final Rule rule;
+
+    // What the workers found, once run
+    private long population = 0;
+    private long hash = 0;
+    private long stepNanos = 0;
+    private long exchangeNanos = 0;
+
+    /**
+     * Split a board between workers, swapping depth rows of halo each depth generations, each
+     * worker stepping on threads threads
+     */
+    public StripeCluster(int width, int height, int workers, int depth, int threads, Rule rule) {
+        if (width < 1 || height < 1)
+            throw new IllegalArgumentException("Board must be at least 1x1");
+        if (workers < 1 || height / workers < 1)
+            throw new IllegalArgumentException("Workers must be 1 to " + height + ", a row each at least");
+        if (depth < 1 || depth > height / workers)
+            throw new IllegalArgumentException("Halo must be 1 to " + height / workers + " rows");
+        this.width = width;
+        this.height = height;
+        this.workers = workers;
+        this.depth = depth;
+        this.threads = threads;
+        this.rule = rule;
+    }
+
+    /**
+     * Start the workers on a soup, step it some generations and collect what they found
+     */
+    public void run(long seed, double density, long generations) throws IOException {
+        List<Process> processes = new ArrayList<>();
+        List<Socket> sockets = new ArrayList<>();
+        try (ServerSocket control = new ServerSocket(0, workers, InetAddress.getLoopbackAddress())) {
+            control.setSoTimeout(STARTMILLIS);
+            for (int i = 0; i < workers; i++)
+                processes.add(new ProcessBuilder(command(control.getLocalPort()))
+                        .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                        .redirectError(ProcessBuilder.Redirect.INHERIT).start());
+
+            // Stripes are given out in the order workers check in
+            int[] ports = new int[workers];
+            for (int i = 0; i < workers; i++) {
+                sockets.add(control.accept());
+                ports[i] = new DataInputStream(sockets.get(i).getInputStream()).readInt();
+            }
+            for (int i = 0; i < workers; i++) {
+                int first = (int) ((long) height * i / workers);
+                int last = (int) ((long) height * (i + 1) / workers);
+                DataOutputStream out = new DataOutputStream(sockets.get(i).getOutputStream());
+                out.writeInt(width);
+                out.writeInt(first);
+                out.writeInt(last - first);
+                out.writeInt(depth);
+                out.writeInt(threads);
+                out.writeLong(generations);
+                out.writeLong(seed);
+                out.writeDouble(density);
+                out.writeUTF(rule.toString());
+                out.writeInt(ports[(i + 1) % workers]);
+                out.flush();
+            }
+
+            population = 0;
+            hash = 0;
+            stepNanos = 0;
+            exchangeNanos = 0;
+            for (Socket socket : sockets) {
+                socket.setSoTimeout(0);
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                population += in.readLong();
+                hash ^= in.readLong();
+                stepNanos += in.readLong();
+                exchangeNanos += in.readLong();
+            }
+        } finally {
+            for (Socket socket : sockets)
+                socket.close();
+            for (Process process : processes)
+                process.destroy();
+        }
+    }
+
+    /**
+     * Return the command starting a worker, leaving out agents like debuggers
+     */
+    private static List<String> command(int port) {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments())
+            if (!arg.startsWith("-agentlib") && !arg.startsWith("-javaagent") && !arg.startsWith("-Xrunjdwp"))
+                command.add(arg);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("StripeWorker");
+        command.add(String.valueOf(port));
+        return command;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Return the live cells on the board after the last run
+     */
+    public long getPopulation() {
+        return population;
+    }
+
+    /**
+     * Return the hash of the board after the last run, the same as LifeEngine's for the same cells
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Return the share of the workers' time spent swapping halos rather than stepping
+     */
+    public double getExchangeShare() {
+        long total = stepNanos + exchangeNanos;
+        return total == 0 ? 0 : (double) exchangeNanos / total;
+    }
+}
@@ -0,0 +1,297 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * @author Quinn Brittain
+ *
+ * One process stepping a stripe of rows of a board split between several
+ *
+ * Each stripe is kept on a LifeEngine with halo rows above and below,
+ * copies of the edge rows of the stripes either side, so the rows it owns
+ * step just as they would on the whole board. The engine wraps through the
+ * halos, bringing in wrong cells from the far side, but they only creep in
+ * a row a generation, so halos depth rows deep last depth generations
+ * before they are swapped again. Rows still wrap left to right within the
+ * stripe and the first and last stripes are neighbors, so the board wraps
+ * like one LifeEngine.
+ *
+ * Halos are sent to each neighbor over a loopback socket, all the rows at
+ * once straight from a direct buffer. Channels don't block, so sending
+ * both ways never waits on a full socket, and waiting for both neighbors'
+ * halos is the barrier between one batch of generations and the next.
+ *
+ * Started by StripeCluster, which it tells its port and gets its stripe from.
+ */
+
+public class StripeWorker {
+
+    // Dimensions of the stripe, and which rows of the board it owns
+    private final int width;
+    private final int words;
+    private final int firstRow;
+    private final int rows;
+    private final int depth;
+
+    // Stripe with depth halo rows above and below
+    private final LifeEngine engine;
+
+    // Channels to the stripes above and below, and halos going each way
+    private final SocketChannel up;
+    private final SocketChannel down;
+    private final Selector selector;
+    private final ByteBuffer upOut;
+    private final ByteBuffer downOut;
+    private final ByteBuffer upIn;
+    private final ByteBuffer downIn;
+    private final LongBuffer upOutLongs;
+    private final LongBuffer downOutLongs;
+    private final LongBuffer upInLongs;
+    private final LongBuffer downInLongs;
+    private final long[] row;
+
+    // Time spent stepping and swapping halos
+    private long stepNanos = 0;
+    private long exchangeNanos = 0;
+
+    /**
+     * Step rows of a board from firstRow, swapping depth rows at a time with the stripes up and down
+     */
+    public StripeWorker(int width, int firstRow, int rows, int depth, SocketChannel up, SocketChannel down)
+            throws IOException {
+        if (depth < 1 || depth > rows)
+            throw new IllegalArgumentException("Halo must be 1 to " + rows + " rows");
+        this.width = width;
+        this.firstRow = firstRow;
+        this.rows = rows;
+        this.depth = depth;
+        this.up = up;
+        this.down = down;
+        engine = new LifeEngine(width, rows + 2 * depth);
+        words = engine.getWords();
+        row = new long[words];
+
+        int bytes = depth * words * Long.BYTES;
+        upOut = ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        downOut = ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        upIn = ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        downIn = ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        upOutLongs = upOut.asLongBuffer();
+        downOutLongs = downOut.asLongBuffer();
+        upInLongs = upIn.asLongBuffer();
+        downInLongs = downIn.asLongBuffer();
+
+        selector = Selector.open();
+        for (SocketChannel channel : new SocketChannel[] {up, down}) {
+            channel.socket().setTcpNoDelay(true);
+            channel.configureBlocking(false);
+        }
+        up.register(selector, 0);
+        down.register(selector, 0);
+    }
+
+    public LifeEngine getEngine() {
+        return engine;
+    }
+
+    public long getStepNanos() {
+        return stepNanos;
+    }
+
+    public long getExchangeNanos() {
+        return exchangeNanos;
+    }
+
+    /**
+     * Fill the rows owned with random cells, the same rows as randomize gives a whole board
+     */
+    public void seed(long seed, double density) {
+        for (int r = 0; r < rows; r++) {
+            Board.randomRow(seed, density, firstRow + r, width, row);
+            engine.setRow(depth + r, row);
+        }
+    }
+
+    /**
+     * Copy the rows owned from a whole board of the same width
+     */
+    public void load(Board board) {
+        if (board.getWidth() != width)
+            throw new IllegalArgumentException("Boards must be the same width");
+        for (int r = 0; r < rows; r++) {
+            board.getRow(firstRow + r, row);
+            engine.setRow(depth + r, row);
+        }
+    }
+
+    /**
+     * Step the stripe some generations, swapping halos before every depth of them
+     */
+    public void run(long generations) throws IOException {
+        for (long g = 0; g < generations; ) {
+            exchange();
+            long n = Math.min(depth, generations - g);
+            long start = System.nanoTime();
+            for (long i = 0; i < n; i++)
+                engine.step();
+            stepNanos += System.nanoTime() - start;
+            g += n;
+        }
+    }
+
+    /**
+     * Count the live cells owned
+     */
+    public long population() {
+        long count = 0;
+        for (int r = 0; r < rows; r++) {
+            engine.getRow(depth + r, row);
+            for (long word : row)
+                count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Return what the rows owned add to the hash of the whole board, so the hashes
+     * of every stripe xor to LifeEngine's hash of the same cells
+     */
+    public long hash() {
+        long hash = 0;
+        for (int r = 0; r < rows; r++) {
+            engine.getRow(depth + r, row);
+            for (int w = 0; w < words; w++)
+                hash ^= LifeEngine.hashWord((firstRow + r) * words + w, row[w]);
+        }
+        return hash;
+    }
+
+    /**
+     * Send the top rows owned up and the bottom rows down, and put the neighbors' rows in the halos
+     */
+    private void exchange() throws IOException {
+        long start = System.nanoTime();
+        upOutLongs.clear();
+        downOutLongs.clear();
+        for (int d = 0; d < depth; d++) {
+            engine.getRow(depth + d, row);
+            upOutLongs.put(row);
+            engine.getRow(rows + d, row);
+            downOutLongs.put(row);
+        }
+        upOut.clear();
+        downOut.clear();
+        upIn.clear();
+        downIn.clear();
+        transfer();
+        upInLongs.clear();
+        downInLongs.clear();
+        for (int d = 0; d < depth; d++) {
+            upInLongs.get(row);
+            engine.setRow(d, row);
+            downInLongs.get(row);
+            engine.setRow(depth + rows + d, row);
+        }
+        exchangeNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Write and read both ways until every buffer is done, waiting only when neither channel is ready
+     */
+    private void transfer() throws IOException {
+        while (upOut.hasRemaining() || downOut.hasRemaining() || upIn.hasRemaining() || downIn.hasRemaining()) {
+            boolean moved = false;
+            if (upOut.hasRemaining())
+                moved |= up.write(upOut) > 0;
+            if (downOut.hasRemaining())
+                moved |= down.write(downOut) > 0;
+            if (upIn.hasRemaining())
+                moved |= read(up, upIn) > 0;
+            if (downIn.hasRemaining())
+                moved |= read(down, downIn) > 0;
+            if (moved)
+                continue;
+            up.keyFor(selector).interestOps((upOut.hasRemaining() ? SelectionKey.OP_WRITE : 0)
+                    | (upIn.hasRemaining() ? SelectionKey.OP_READ : 0));
+            down.keyFor(selector).interestOps((downOut.hasRemaining() ? SelectionKey.OP_WRITE : 0)
+                    | (downIn.hasRemaining() ? SelectionKey.OP_READ : 0));
+            selector.select();
+            selector.selectedKeys().clear();
+        }
+    }
+
+    private static int read(SocketChannel channel, ByteBuffer dest) throws IOException {
+        int n = channel.read(dest);
+        if (n < 0)
+            throw new EOFException("Neighboring stripe closed");
+        return n;
+    }
+
+    /**
+     * Close the channels to the neighbors
+     */
+    public void close() throws IOException {
+        selector.close();
+        up.close();
+        down.close();
+    }
+
+    /**
+     * Run one stripe for the cluster listening on the port given
+     */
+    public static void main(String[] args) throws IOException {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        try (Socket control = new Socket(loopback, Integer.parseInt(args[0]));
+                ServerSocketChannel server = ServerSocketChannel.open()) {
+            DataInputStream in = new DataInputStream(control.getInputStream());
+            DataOutputStream out = new DataOutputStream(control.getOutputStream());
+            server.bind(new InetSocketAddress(loopback, 0));
+            out.writeInt(((InetSocketAddress) server.getLocalAddress()).getPort());
+            out.flush();
+
+            // Stripe to step, and the port of the stripe below
+            int width = in.readInt();
+            int firstRow = in.readInt();
+            int rows = in.readInt();
+            int depth = in.readInt();
+            int threads = in.readInt();
+            long generations = in.readLong();
+            long seed = in.readLong();
+            double density = in.readDouble();
+            Rule rule = Rule.forName(in.readUTF());
+            int downPort = in.readInt();
+
+            // Connecting finishes without waiting for the stripe below to accept
+            SocketChannel down = SocketChannel.open(new InetSocketAddress(loopback, downPort));
+            SocketChannel up = server.accept();
+            StripeWorker worker = new StripeWorker(width, firstRow, rows, depth, up, down);
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                worker.getEngine().setRule(rule);
+                worker.getEngine().setPool(pool);
+                worker.seed(seed, density);
+                worker.run(generations);
+                out.writeLong(worker.population());
+                out.writeLong(worker.hash());
+                out.writeLong(worker.getStepNanos());
+                out.writeLong(worker.getExchangeNanos());
+                out.flush();
+            } finally {
+                pool.shutdown();
+                worker.close();
+            }
+        }
+    }
+}
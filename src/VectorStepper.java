@@ -0,0 +1,111 @@
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Steps packed rows with the Vector API, several words per instruction
+ *
+ * The same adders as LifeEngine.stepWord, run across every lane of the
+ * widest vector the CPU has, eg. 8 words or 512 cells with AVX-512.
+ * The words either side come from loads one word left and right, so
+ * the neighbors across word edges are shifted in without branches.
+ *
+ * Needs --add-modules jdk.incubator.vector, otherwise LifeEngine fails
+ * to load this and steps every word itself.
+ */
+
+public class VectorStepper implements RowStepper {
+
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+    public VectorStepper() {
+        if (SPECIES.length() < 2)
+            throw new UnsupportedOperationException("No vectors wider than a long");
+    }
+
+    @Override
+    public int step(long[] cells, int up, int mid, int down, int from, int to, long[] dest, int birth, int survive) {
+        // Which counts are born or stay, as all ones or zero for each count
+        long born0 = bit(birth, 0), born1 = bit(birth, 1), born2 = bit(birth, 2);
+        long born3 = bit(birth, 3), born4 = bit(birth, 4), born5 = bit(birth, 5);
+        long born6 = bit(birth, 6), born7 = bit(birth, 7), born8 = bit(birth, 8);
+        long stay0 = bit(survive, 0), stay1 = bit(survive, 1), stay2 = bit(survive, 2);
+        long stay3 = bit(survive, 3), stay4 = bit(survive, 4), stay5 = bit(survive, 5);
+        long stay6 = bit(survive, 6), stay7 = bit(survive, 7), stay8 = bit(survive, 8);
+
+        // Everything is written out in the loop, as vectors passed to methods
+        // that don't get inlined are made into objects
+        int w = from;
+        for (; w + SPECIES.length() <= to; w += SPECIES.length()) {
+            LongVector a = LongVector.fromArray(SPECIES, cells, up + w);
+            LongVector aW = a.lanewise(VectorOperators.LSHL, 1)
+                    .or(LongVector.fromArray(SPECIES, cells, up + w - 1).lanewise(VectorOperators.LSHR, 63));
+            LongVector aE = a.lanewise(VectorOperators.LSHR, 1)
+                    .or(LongVector.fromArray(SPECIES, cells, up + w + 1).lanewise(VectorOperators.LSHL, 63));
+            LongVector b = LongVector.fromArray(SPECIES, cells, down + w);
+            LongVector bW = b.lanewise(VectorOperators.LSHL, 1)
+                    .or(LongVector.fromArray(SPECIES, cells, down + w - 1).lanewise(VectorOperators.LSHR, 63));
+            LongVector bE = b.lanewise(VectorOperators.LSHR, 1)
+                    .or(LongVector.fromArray(SPECIES, cells, down + w + 1).lanewise(VectorOperators.LSHL, 63));
+            LongVector c = LongVector.fromArray(SPECIES, cells, mid + w);
+            LongVector cW = c.lanewise(VectorOperators.LSHL, 1)
+                    .or(LongVector.fromArray(SPECIES, cells, mid + w - 1).lanewise(VectorOperators.LSHR, 63));
+            LongVector cE = c.lanewise(VectorOperators.LSHR, 1)
+                    .or(LongVector.fromArray(SPECIES, cells, mid + w + 1).lanewise(VectorOperators.LSHL, 63));
+
+            // Sum each row of neighbors into two bits
+            LongVector aX = aW.lanewise(VectorOperators.XOR, a);
+            LongVector a1 = aX.lanewise(VectorOperators.XOR, aE);
+            LongVector a2 = aW.and(a).or(aE.and(aX));
+            LongVector bX = bW.lanewise(VectorOperators.XOR, b);
+            LongVector b1 = bX.lanewise(VectorOperators.XOR, bE);
+            LongVector b2 = bW.and(b).or(bE.and(bX));
+            LongVector c1 = cW.lanewise(VectorOperators.XOR, cE);
+            LongVector c2 = cW.and(cE);
+
+            // Add the rows into a four bit count
+            LongVector ab1 = a1.lanewise(VectorOperators.XOR, b1);
+            LongVector s0 = ab1.lanewise(VectorOperators.XOR, c1);
+            LongVector k1 = a1.and(b1).or(c1.and(ab1));
+            LongVector ab2 = a2.lanewise(VectorOperators.XOR, b2);
+            LongVector t1 = ab2.lanewise(VectorOperators.XOR, c2);
+            LongVector t2 = a2.and(b2).or(c2.and(ab2));
+            LongVector s1 = t1.lanewise(VectorOperators.XOR, k1);
+            LongVector k2 = t1.and(k1);
+            LongVector s2 = t2.lanewise(VectorOperators.XOR, k2);
+            LongVector s3 = t2.and(k2);
+
+            // Counts 0 to 3 from the low bits, then 0, 4 or 8 from the high bits
+            LongVector low0 = s0.or(s1).not();
+            LongVector low1 = s0.lanewise(VectorOperators.AND_NOT, s1);
+            LongVector low2 = s1.lanewise(VectorOperators.AND_NOT, s0);
+            LongVector low3 = s0.and(s1);
+            LongVector high0 = s2.or(s3).not();
+            LongVector n0 = low0.and(high0);
+            LongVector n1 = low1.and(high0);
+            LongVector n2 = low2.and(high0);
+            LongVector n3 = low3.and(high0);
+            LongVector n4 = low0.and(s2);
+            LongVector n5 = low1.and(s2);
+            LongVector n6 = low2.and(s2);
+            LongVector n7 = low3.and(s2);
+
+            // Pick the cells whose count is in the birth or survive mask
+            LongVector born = n0.and(born0).or(n1.and(born1)).or(n2.and(born2)).or(n3.and(born3))
+                    .or(n4.and(born4)).or(n5.and(born5)).or(n6.and(born6)).or(n7.and(born7)).or(s3.and(born8));
+            LongVector stay = n0.and(stay0).or(n1.and(stay1)).or(n2.and(stay2)).or(n3.and(stay3))
+                    .or(n4.and(stay4)).or(n5.and(stay5)).or(n6.and(stay6)).or(n7.and(stay7)).or(s3.and(stay8));
+            born.lanewise(VectorOperators.AND_NOT, c).or(c.and(stay)).intoArray(dest, w);
+        }
+        return w;
+    }
+
+    /**
+     * Return all ones if bit n of a rule mask is set, otherwise zero
+     */
+    private static long bit(int mask, int n) {
+        return -(long) (mask >>> n & 1);
+    }
+}
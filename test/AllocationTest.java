@@ -0,0 +1,117 @@
+import com.sun.management.ThreadMXBean;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Checks stepping and filling frames allocate nothing once warmed up
+ *
+ * Each run is repeated until the JIT has compiled it, then the bytes the
+ * threads doing the work allocated are read before and after some more,
+ * which should be the same. For a parallel step that is the calling
+ * thread and every worker of the pool. Recording history is included
+ * once it has used its budget, as it only grows until then.
+ */
+
+public class AllocationTest {
+
+    private static final int WARMUP = 3000;
+    private static final int RUNS = 500;
+
+    private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    public void serialStepAllocatesNothing() {
+        LifeEngine board = soup(512, 512);
+        assertAllocatesNothing(board::step, List.of(Thread.currentThread()));
+    }
+
+    @Test
+    public void scalarStepAllocatesNothing() {
+        LifeEngine board = soup(512, 512);
+        board.setVectorized(false);
+        assertAllocatesNothing(board::step, List.of(Thread.currentThread()));
+    }
+
+    @Test
+    public void stepKeepingCountsAllocatesNothing() {
+        LifeEngine board = soup(512, 512);
+        board.setTrackCounts(true);
+        assertAllocatesNothing(board::step, List.of(Thread.currentThread()));
+    }
+
+    @Test
+    public void stepAndRecordAllocatesNothing() {
+        LifeEngine board = soup(512, 512);
+        // Small enough to fill while warming up, after which frames reuse the space of the oldest
+        History history = new History(8L << 20);
+        assertAllocatesNothing(() -> {
+            board.step();
+            history.record(board);
+        }, List.of(Thread.currentThread()));
+    }
+
+    @Test
+    public void parallelStepAllocatesNothing() {
+        List<Thread> threads = new CopyOnWriteArrayList<>(List.of(Thread.currentThread()));
+        ForkJoinPool pool = new ForkJoinPool(4, p -> {
+            ForkJoinWorkerThread worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            threads.add(worker);
+            return worker;
+        }, null, false);
+        try {
+            LifeEngine board = soup(1024, 1024);
+            board.setPool(pool);
+            assertAllocatesNothing(board::step, threads);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void fillAllocatesNothing() {
+        LifeEngine board = soup(512, 512);
+        board.setTrackCounts(true);
+        BoardPixels pixels = new BoardPixels(board);
+        pixels.setShowGrowth(true);
+        int[] frame = new int[640 * 480];
+        assertAllocatesNothing(() -> pixels.fill(frame, 640, 480, 10.5, 20.25, 3), List.of(Thread.currentThread()));
+    }
+
+    private static LifeEngine soup(int width, int height) {
+        LifeEngine board = new LifeEngine(width, height);
+        board.randomize(1, 0.5);
+        return board;
+    }
+
+    /**
+     * Warm up a run, then check more runs leave what the threads allocated unchanged
+     */
+    private static void assertAllocatesNothing(Runnable run, List<Thread> threads) {
+        for (int i = 0; i < WARMUP; i++)
+            run.run();
+        long[] ids = new long[threads.size()];
+        for (int i = 0; i < ids.length; i++)
+            ids[i] = threads.get(i).getId();
+        long before = allocated(ids);
+        for (int i = 0; i < RUNS; i++)
+            run.run();
+        long after = allocated(ids);
+        assertEquals(0, after - before, "bytes allocated over " + RUNS + " runs");
+    }
+
+    private static long allocated(long[] ids) {
+        long bytes = 0;
+        for (long id : ids)
+            bytes += THREADS.getThreadAllocatedBytes(id);
+        return bytes;
+    }
+}
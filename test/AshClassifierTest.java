@@ -0,0 +1,91 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Checks the objects left on a board are named as Catagolue names them
+ *
+ * Known still lifes, oscillators and a spaceship are put on a board far
+ * enough apart to be objects of their own, some in other orientations or
+ * across the wrap, and the census has to hold each by its apgcode. Two
+ * blocks close enough to be found together are counted as two blocks.
+ */
+
+public class AshClassifierTest {
+
+    private static final int[][] BLOCK = {{0, 0}, {0, 1}, {1, 0}, {1, 1}};
+    private static final int[][] BLINKER = {{0, 0}, {0, 1}, {0, 2}};
+    private static final int[][] GLIDER = {{0, 1}, {1, 2}, {2, 0}, {2, 1}, {2, 2}};
+    private static final int[][] BEACON = {{0, 0}, {0, 1}, {1, 0}, {2, 3}, {3, 2}, {3, 3}};
+    private static final int[][] LOAF = {{0, 1}, {0, 2}, {1, 0}, {1, 3}, {2, 1}, {2, 3}, {3, 2}};
+
+    @Test
+    public void knownObjectsAreNamed() {
+        LifeEngine board = new LifeEngine(128, 96);
+        put(board, BLOCK, 10, 10, false);
+        put(board, BLINKER, 10, 40, false);
+        put(board, GLIDER, 10, 70, false);
+        put(board, BEACON, 40, 10, false);
+        put(board, LOAF, 40, 40, false);
+        // Turned, and across the bottom and right edges
+        put(board, BLINKER, 40, 70, true);
+        put(board, LOAF, 94, 126, true);
+        put(board, GLIDER, 70, 10, true);
+        // Two blocks a column apart, found as one object
+        put(board, BLOCK, 70, 40, false);
+        put(board, BLOCK, 70, 43, false);
+
+        Census census = new Census();
+        new AshClassifier(Rule.LIFE).classify(board, census);
+        Map<String, Long> counts = counts(census);
+        assertEquals(3L, counts.get("xs4_33"), counts.toString());
+        assertEquals(2L, counts.get("xp2_7"), counts.toString());
+        assertEquals(2L, counts.get("xq4_153"), counts.toString());
+        assertEquals(1L, counts.get("xp2_318c"), counts.toString());
+        assertEquals(2L, counts.get("xs7_2596"), counts.toString());
+        assertEquals(10, census.getObjects(), counts.toString());
+        assertEquals(5, census.getDistinct(), counts.toString());
+    }
+
+    @Test
+    public void namesDontChangeWithThePhase() {
+        for (int g = 0; g < 8; g++) {
+            LifeEngine board = new LifeEngine(64, 64);
+            put(board, GLIDER, 10, 10, false);
+            put(board, BEACON, 40, 40, false);
+            put(board, BLINKER, 10, 40, true);
+            for (int i = 0; i < g; i++)
+                board.step();
+            Census census = new Census();
+            new AshClassifier(Rule.LIFE).classify(board, census);
+            Map<String, Long> counts = counts(census);
+            assertEquals(1L, counts.get("xq4_153"), "generation " + g + " " + counts);
+            assertEquals(1L, counts.get("xp2_318c"), "generation " + g + " " + counts);
+            assertEquals(1L, counts.get("xp2_7"), "generation " + g + " " + counts);
+        }
+    }
+
+    /**
+     * Set the cells of an object with its top left at row, col, turned a quarter if turned,
+     * wrapping at the edges
+     */
+    private static void put(LifeEngine board, int[][] cells, int row, int col, boolean turned) {
+        for (int[] cell : cells) {
+            int r = turned ? cell[1] : cell[0];
+            int c = turned ? 3 - cell[0] : cell[1];
+            board.set(Math.floorMod(row + r, board.getHeight()), Math.floorMod(col + c, board.getWidth()), true);
+        }
+    }
+
+    private static Map<String, Long> counts(Census census) {
+        Map<String, Long> counts = new HashMap<>();
+        for (Map.Entry<String, Long> entry : census.sorted())
+            counts.put(entry.getKey(), entry.getValue());
+        return counts;
+    }
+}
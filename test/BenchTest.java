@@ -0,0 +1,21 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Checks the benchmarks can still find the game's methods
+ *
+ * The benchmarks in bench reach the game through method handles looked
+ * up by name and type when bench.App is loaded, so a changed signature
+ * only shows up once they run. Loading it here finds that in the build.
+ */
+
+public class BenchTest {
+
+    @Test
+    public void handlesResolve() {
+        assertDoesNotThrow(() -> Class.forName("bench.App", true, BenchTest.class.getClassLoader()));
+    }
+}
@@ -0,0 +1,172 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Checks the neighbor counts and growth kept while stepping
+ *
+ * After every step and edit, getCount and getGrowth are compared for
+ * every cell with counting its eight neighbors one by one and asking the
+ * rule, and each step is checked to give what that said it would. Boards
+ * are left to settle so most tiles sleep, then edited far from anything
+ * still moving, so the edited tiles have to be woken and stepped.
+ */
+
+public class CountTest {
+
+    private static final int[][] SIZES = {{300, 200}, {64, 64}, {130, 33}, {5, 7}, {700, 257}};
+
+    @Test
+    public void serialCountsMatch() {
+        for (int[] size : SIZES)
+            randomSteps(new LifeEngine(size[0], size[1]), "serial");
+    }
+
+    @Test
+    public void parallelCountsMatch() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int[] size : SIZES) {
+                LifeEngine board = new LifeEngine(size[0], size[1]);
+                board.setPool(pool);
+                randomSteps(board, "parallel");
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void scalarCountsMatch() {
+        for (int[] size : SIZES) {
+            LifeEngine board = new LifeEngine(size[0], size[1]);
+            board.setVectorized(false);
+            randomSteps(board, "scalar");
+        }
+    }
+
+    @Test
+    public void editsWakeSleepingTiles() {
+        LifeEngine board = new LifeEngine(256, 256);
+        board.setTrackCounts(true);
+        // A blinker at the top keeps one tile awake, everything else settles
+        board.set(2, 100, true);
+        board.set(2, 101, true);
+        board.set(2, 102, true);
+        for (int g = 0; g < 4; g++)
+            board.step();
+        assertTrue(board.getActiveTiles() < 256 / 32, "tiles asleep");
+        SplittableRandom random = new SplittableRandom(5);
+        for (int edit = 0; edit < 40; edit++) {
+            // Edit well away from the blinker, on tile edges too
+            int row = 40 + random.nextInt(216);
+            int col = random.nextInt(256);
+            if (edit % 4 == 0)
+                row = 32 * (2 + random.nextInt(6)) - random.nextInt(2);
+            board.set(row, col, true);
+            board.set(row, (col + 1) % 256, true);
+            board.set((row + 1) % 256, col, true);
+            assertCounts(board, "edit " + edit);
+            for (int g = 0; g < 3; g++)
+                step(board, "edit " + edit + " step " + g);
+            // Wipe a row of a sleeping tile straight in
+            if (edit % 5 == 0) {
+                board.setRow(row, new long[board.getWords()]);
+                assertCounts(board, "row " + row);
+                step(board, "row " + row + " step");
+            }
+        }
+    }
+
+    /**
+     * Step a board from a few random cells, editing it and changing rule along the way
+     */
+    private static void randomSteps(LifeEngine board, String mode) {
+        int width = board.getWidth();
+        int height = board.getHeight();
+        String what = mode + " " + width + "x" + height;
+        SplittableRandom random = new SplittableRandom(width * 31L + height);
+        board.setTrackCounts(true);
+        for (int k = 0; k < 30; k++)
+            board.set(random.nextInt(height), random.nextInt(width), true);
+        assertCounts(board, what);
+        for (int g = 0; g < 150; g++) {
+            if (g % 23 == 5)
+                board.set(random.nextInt(height), random.nextInt(width), random.nextBoolean());
+            if (g % 37 == 9) {
+                long[] row = new long[board.getWords()];
+                row[0] = random.nextLong();
+                board.setRow(random.nextInt(height), row);
+            }
+            if (g == 60)
+                board.setRule(Rule.HIGHLIFE);
+            if (g == 100)
+                board.setRule(Rule.forName("B0/S8"));
+            if (g == 101)
+                board.setRule(Rule.LIFE);
+            step(board, what + " generation " + board.getGeneration());
+        }
+        board.setTrackCounts(false);
+        board.step();
+        board.setTrackCounts(true);
+        assertCounts(board, what + " counted again");
+    }
+
+    /**
+     * Step a board, checking every cell came out as counting its neighbors one by one said,
+     * then checking the counts for the next
+     */
+    private static void step(LifeEngine board, String what) {
+        int width = board.getWidth();
+        int height = board.getHeight();
+        boolean[] expected = new boolean[width * height];
+        for (int row = 0; row < height; row++)
+            for (int col = 0; col < width; col++)
+                expected[row * width + col] = board.getRule().next(board.get(row, col), count(board, row, col));
+        board.step();
+        for (int row = 0; row < height; row++)
+            for (int col = 0; col < width; col++)
+                if (board.get(row, col) != expected[row * width + col])
+                    assertEquals(expected[row * width + col], board.get(row, col), what + " at " + row + "," + col);
+        assertCounts(board, what);
+    }
+
+    /**
+     * Check every cell's kept count and growth against counting its neighbors one by one
+     */
+    private static void assertCounts(LifeEngine board, String what) {
+        int width = board.getWidth();
+        int height = board.getHeight();
+        for (int row = 0; row < height; row++)
+            for (int col = 0; col < width; col++) {
+                int count = count(board, row, col);
+                boolean alive = board.get(row, col);
+                boolean next = board.getRule().next(alive, count);
+                int growth = alive == next ? 1 : next ? 2 : 0;
+                if (board.getCount(row, col) != count || board.getGrowth(row, col) != growth) {
+                    String cell = what + " at " + row + "," + col;
+                    assertEquals(count, board.getCount(row, col), cell);
+                    assertEquals(growth, board.getGrowth(row, col), cell);
+                }
+            }
+    }
+
+    /**
+     * Count the live neighbors of a cell one by one, wrapping at the edges
+     */
+    private static int count(LifeEngine board, int row, int col) {
+        int count = 0;
+        for (int i = -1; i <= 1; i++)
+            for (int j = -1; j <= 1; j++)
+                if ((i != 0 || j != 0)
+                        && board.get(Math.floorMod(row + i, board.getHeight()), Math.floorMod(col + j, board.getWidth())))
+                    count++;
+        return count;
+    }
+}
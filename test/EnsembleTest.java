@@ -0,0 +1,145 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Checks the 64 boards of an Ensemble step the same as 64 LifeEngines
+ *
+ * Every board is copied out onto a LifeEngine of its own, then both are
+ * stepped by Life, which has a path of its own, and by rules that use
+ * counts of 0 and 8, comparing every cell of every board each generation
+ * along with the populations and the masks of boards alive, changed and
+ * unsettled.
+ */
+
+public class EnsembleTest {
+
+    private static final Rule[] RULES = {Rule.LIFE, Rule.HIGHLIFE, Rule.DAYNIGHT, Rule.forName("B0/S8")};
+    private static final int[][] SIZES = {{37, 23}, {8, 64}, {3, 3}};
+
+    @Test
+    public void boardsMatchLifeEngines() {
+        for (Rule rule : RULES)
+            for (int[] size : SIZES) {
+                Ensemble ensemble = new Ensemble(size[0], size[1]);
+                ensemble.randomize(size[0] * 31L + size[1], 0.35);
+                ensemble.setRule(rule);
+                LifeEngine[] boards = new LifeEngine[Ensemble.BOARDS];
+                for (int k = 0; k < boards.length; k++)
+                    boards[k] = ensemble.toEngine(k);
+                long[][] last = new long[boards.length][];
+                String what = rule + " " + size[0] + "x" + size[1];
+                for (int g = 0; g < 200; g++) {
+                    long changed = 0;
+                    long unsettled = 0;
+                    ensemble.step();
+                    for (int k = 0; k < boards.length; k++) {
+                        long[] state = cells(boards[k]);
+                        boards[k].step();
+                        long[] now = cells(boards[k]);
+                        if (!Arrays.equals(state, now))
+                            changed |= 1L << k;
+                        if (!Arrays.equals(last[k], now))
+                            unsettled |= 1L << k;
+                        last[k] = state;
+                    }
+                    String at = what + " generation " + ensemble.getGeneration();
+                    assertBoards(ensemble, boards, at);
+                    assertEquals(changed, ensemble.getChanged(), at);
+                    // Two generations ago is only known after two steps
+                    assertEquals(g < 1 ? -1L : unsettled, ensemble.getUnsettled(), at);
+                }
+                assertEquals(200, ensemble.getGeneration());
+            }
+    }
+
+    @Test
+    public void editsAreStepped() {
+        Ensemble ensemble = new Ensemble(40, 30);
+        ensemble.randomize(9, 0.3);
+        LifeEngine[] boards = new LifeEngine[Ensemble.BOARDS];
+        for (int k = 0; k < boards.length; k++)
+            boards[k] = ensemble.toEngine(k);
+        for (int g = 0; g < 60; g++) {
+            int k = g % Ensemble.BOARDS;
+            if (g % 7 == 3) {
+                ensemble.set(k, g % 30, g % 40, true);
+                boards[k].set(g % 30, g % 40, true);
+            }
+            if (g % 20 == 10) {
+                // Put one board's cells on another
+                ensemble.load(k, boards[(k + 1) % boards.length]);
+                boards[(k + 1) % boards.length].copyTo(boards[k]);
+            }
+            if (g == 30) {
+                ensemble.setRule(Rule.HIGHLIFE);
+                for (LifeEngine board : boards)
+                    board.setRule(Rule.HIGHLIFE);
+            }
+            ensemble.step();
+            for (LifeEngine board : boards)
+                board.step();
+            assertBoards(ensemble, boards, "generation " + g);
+        }
+    }
+
+    @Test
+    public void randomBoardsHaveTheirDensity() {
+        Ensemble ensemble = new Ensemble(100, 100);
+        for (double density : new double[] {0, 0.1, 0.25, 0.5, 0.9, 1}) {
+            ensemble.randomize(3, density);
+            long[] populations = ensemble.populations();
+            for (int k = 0; k < Ensemble.BOARDS; k++)
+                assertEquals(density, populations[k] / 10_000.0, 0.03, "board " + k + " at " + density);
+            if (density > 0 && density < 1)
+                assertFalse(Arrays.equals(cells(ensemble.toEngine(0)), cells(ensemble.toEngine(1))));
+            assertEquals(density == 0 ? 0 : -1L, ensemble.getAlive());
+        }
+
+        // The same seed makes the same boards
+        ensemble.randomize(5, 0.4);
+        LifeEngine first = ensemble.toEngine(17);
+        ensemble.randomize(6, 0.4);
+        ensemble.randomize(5, 0.4);
+        assertTrue(Arrays.equals(cells(first), cells(ensemble.toEngine(17))));
+    }
+
+    /**
+     * Check every cell, population and whether alive of every board against its own LifeEngine
+     */
+    private static void assertBoards(Ensemble ensemble, LifeEngine[] boards, String what) {
+        long[] populations = ensemble.populations();
+        long alive = 0;
+        for (int k = 0; k < boards.length; k++) {
+            LifeEngine board = boards[k];
+            for (int row = 0; row < board.getHeight(); row++)
+                for (int col = 0; col < board.getWidth(); col++)
+                    if (board.get(row, col) != ensemble.get(k, row, col))
+                        assertEquals(board.get(row, col), ensemble.get(k, row, col),
+                                what + " board " + k + " at " + row + "," + col);
+            assertEquals(board.population(), populations[k], what + " board " + k);
+            if (board.population() > 0)
+                alive |= 1L << k;
+        }
+        assertEquals(alive, ensemble.getAlive(), what);
+    }
+
+    /**
+     * Return the cells of a board, row after row
+     */
+    private static long[] cells(LifeEngine board) {
+        long[] row = new long[board.getWords()];
+        long[] cells = new long[board.getWords() * board.getHeight()];
+        for (int r = 0; r < board.getHeight(); r++) {
+            board.getRow(r, row);
+            System.arraycopy(row, 0, cells, r * row.length, row.length);
+        }
+        return cells;
+    }
+}
@@ -0,0 +1,78 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Checks HashLife jumps to the same board as stepping a LifeEngine
+ *
+ * Soups on tori wider, taller and as tall as they are wide are jumped
+ * by amounts that are and aren't powers of two, and compared cell by
+ * cell with a board stepped one generation at a time. Caches far too
+ * small for the jump make it give up part way and go in smaller steps,
+ * and jumps stopped part way have to leave a generation that was reached.
+ */
+
+public class HashLifeTest {
+
+    private static final int[][] SIZES = {{64, 128}, {256, 32}, {128, 128}, {8, 8}};
+    private static final long[] JUMPS = {1, 300, 37, 128, 3};
+
+    @Test
+    public void jumpsMatchStepping() {
+        for (Rule rule : new Rule[] {Rule.LIFE, Rule.HIGHLIFE})
+            for (int maxNodes : new int[] {1 << 22, 5_000})
+                for (int[] size : SIZES) {
+                    String what = rule + " " + size[0] + "x" + size[1] + " in " + maxNodes + " nodes";
+                    LifeEngine board = new LifeEngine(size[0], size[1]);
+                    board.setRule(rule);
+                    board.randomize(size[0] * 31L + size[1], 0.3);
+                    LifeEngine stepped = new LifeEngine(size[0], size[1]);
+                    board.copyTo(stepped);
+                    HashLife hashLife = new HashLife(rule, maxNodes);
+                    hashLife.load(board);
+                    for (long jump : JUMPS) {
+                        hashLife.jump(jump);
+                        for (long g = 0; g < jump; g++)
+                            stepped.step();
+                        hashLife.store(board);
+                        assertSame(stepped, board, what + " at generation " + stepped.getGeneration());
+                    }
+                    // Small caches are cleared between jumps, and only grow a few times past them
+                    assertTrue(hashLife.size() <= Math.max(4 * maxNodes, 1 << 16), what + " kept " + hashLife.size());
+                }
+    }
+
+    @Test
+    public void stoppedJumpsLeaveAGenerationReached() {
+        for (int checks : new int[] {0, 1, 50, 5000}) {
+            LifeEngine board = new LifeEngine(128, 128);
+            board.randomize(checks, 0.4);
+            LifeEngine stepped = new LifeEngine(128, 128);
+            board.copyTo(stepped);
+            HashLife hashLife = new HashLife(Rule.LIFE, 1 << 22);
+            hashLife.load(board);
+            int[] asked = {0};
+            hashLife.jump(1L << 40, () -> asked[0]++ >= checks);
+            long reached = hashLife.getGeneration();
+            assertTrue(reached < 1L << 40, "stopped after " + checks);
+            hashLife.store(board);
+            for (long g = 0; g < reached; g++)
+                stepped.step();
+            assertSame(stepped, board, "stopped after " + checks + " at generation " + reached);
+        }
+    }
+
+    /**
+     * Check a board jumped to matches the one stepped, cell by cell
+     */
+    private static void assertSame(LifeEngine stepped, LifeEngine board, String what) {
+        assertEquals(stepped.getGeneration(), board.getGeneration(), what);
+        for (int r = 0; r < board.getHeight(); r++)
+            for (int c = 0; c < board.getWidth(); c++)
+                if (board.get(r, c) != stepped.get(r, c))
+                    assertEquals(stepped.get(r, c), board.get(r, c), what + " at " + r + "," + c);
+    }
+}
@@ -0,0 +1,104 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Checks generations restored from history are the ones recorded
+ *
+ * Boards are stepped and recorded, sometimes edited in between, which
+ * has to be compared in full rather than by the tiles the step changed,
+ * and every generation still kept is restored and compared with a copy
+ * taken when it was recorded. Small budgets make the words of frames
+ * wrap round and reuse the space of those dropped.
+ */
+
+public class HistoryTest {
+
+    @Test
+    public void restoresEveryGenerationKept() {
+        for (long budget : new long[] {64L << 20, 1L << 20, 300_000}) {
+            LifeEngine board = new LifeEngine(200, 150);
+            board.randomize(3, 0.3);
+            History history = new History(budget);
+            Map<Long, long[]> states = new HashMap<>();
+            SplittableRandom random = new SplittableRandom(budget);
+            for (int g = 0; g < 800; g++) {
+                if (g % 50 == 17)
+                    board.set(random.nextInt(150), random.nextInt(200), true);
+                if (g % 170 == 90) {
+                    board.randomize(g, 0.2);
+                    board.setGeneration(g);
+                }
+                record(board, history, states);
+                board.step();
+                assertTrue(history.getBytes() <= budget, "within budget");
+            }
+            assertRestores(history, states, 200, 150, "budget " + budget);
+            if (budget > 1L << 20)
+                assertEquals(0, history.getOldest());
+
+            // A smaller budget drops the oldest, leaving the rest as they were
+            history.setBudget(200_000);
+            assertTrue(history.getBytes() <= 200_000, "within smaller budget");
+            assertRestores(history, states, 200, 150, "budget " + budget + " made smaller");
+        }
+    }
+
+    @Test
+    public void recordingAfterRestoreReplacesLaterGenerations() {
+        LifeEngine board = new LifeEngine(100, 70);
+        board.randomize(3, 0.4);
+        History history = new History(64L << 20);
+        Map<Long, long[]> states = new HashMap<>();
+        for (int g = 0; g < 300; g++) {
+            record(board, history, states);
+            board.step();
+        }
+        assertEquals(150, history.restore(150, board));
+        board.set(5, 5, !board.get(5, 5));
+        record(board, history, states);
+        for (int g = 0; g < 20; g++) {
+            board.step();
+            record(board, history, states);
+        }
+        assertEquals(170, history.getNewest());
+        assertRestores(history, states, 100, 70, "after restore");
+
+        // Stepping back from a restored generation without recording it first
+        history.restore(100, board);
+        board.step();
+        record(board, history, states);
+        assertEquals(101, history.getNewest());
+        assertRestores(history, states, 100, 70, "after stepping back");
+    }
+
+    private static void record(LifeEngine board, History history, Map<Long, long[]> states) {
+        history.record(board);
+        long[] state = new long[board.getStateLength()];
+        board.getState(state);
+        states.put(board.getGeneration(), state);
+    }
+
+    /**
+     * Restore every generation kept onto a new board and compare it with the copy taken when recorded
+     */
+    private static void assertRestores(History history, Map<Long, long[]> states, int width, int height,
+            String what) {
+        LifeEngine board = new LifeEngine(width, height);
+        long[] state = new long[board.getStateLength()];
+        for (long g = history.getOldest(); g <= history.getNewest(); g++) {
+            assertEquals(g, history.restore(g, board), what);
+            assertEquals(g, board.getGeneration(), what);
+            board.getState(state);
+            assertArrayEquals(states.get(g), state, what + " at generation " + g);
+        }
+    }
+}
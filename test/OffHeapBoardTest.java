@@ -0,0 +1,118 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Checks boards off the heap step the same as a LifeEngine
+ *
+ * Boards in direct buffers and mapped from a file are randomized with
+ * the same seed as a LifeEngine, then both are stepped on one thread, on
+ * a pool and without the Vector API, by rules that use counts of 0 and 8
+ * too, comparing every row each generation. Rows are replaced and rules
+ * changed along the way, waking rows that had stopped changing.
+ */
+
+public class OffHeapBoardTest {
+
+    private static final int[][] SIZES = {{64, 3}, {128, 100}, {192, 37}, {64, 64}};
+    private static final Rule[] RULES = {Rule.LIFE, Rule.HIGHLIFE, Rule.forName("B0/S8")};
+
+    @Test
+    public void directBoardsMatch() throws IOException {
+        for (int[] size : SIZES)
+            for (Rule rule : RULES)
+                try (OffHeapBoard board = new OffHeapBoard(size[0], size[1])) {
+                    randomSteps(board, rule, "direct");
+                }
+    }
+
+    @Test
+    public void mappedBoardsMatch(@TempDir File dir) throws IOException {
+        for (int[] size : SIZES)
+            try (OffHeapBoard board = new OffHeapBoard(size[0], size[1], new File(dir, "board.map"))) {
+                randomSteps(board, Rule.LIFE, "mapped");
+            }
+    }
+
+    @Test
+    public void parallelBoardsMatch() throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int[] size : SIZES)
+                for (Rule rule : RULES)
+                    try (OffHeapBoard board = new OffHeapBoard(size[0], size[1])) {
+                        board.setPool(pool);
+                        randomSteps(board, rule, "parallel");
+                    }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void scalarBoardsMatch() throws IOException {
+        for (int[] size : SIZES)
+            for (Rule rule : RULES)
+                try (OffHeapBoard board = new OffHeapBoard(size[0], size[1])) {
+                    board.setVectorized(false);
+                    randomSteps(board, rule, "scalar");
+                }
+    }
+
+    /**
+     * Randomize a board and a LifeEngine alike, then step both, editing them along the way
+     */
+    private static void randomSteps(OffHeapBoard board, Rule rule, String mode) {
+        int width = board.getWidth();
+        int height = board.getHeight();
+        String what = mode + " " + rule + " " + width + "x" + height;
+        LifeEngine engine = new LifeEngine(width, height);
+        board.randomize(width * 31L + height, 0.3);
+        engine.randomize(width * 31L + height, 0.3);
+        board.setRule(rule);
+        engine.setRule(rule);
+        assertRows(engine, board, what + " randomized");
+        SplittableRandom random = new SplittableRandom(height);
+        long[] row = new long[board.getWords()];
+        for (int g = 0; g < 200; g++) {
+            if (g % 37 == 20) {
+                for (int w = 0; w < row.length; w++)
+                    row[w] = random.nextLong() & random.nextLong();
+                int r = random.nextInt(height);
+                board.setRow(r, row);
+                engine.setRow(r, row);
+            }
+            if (g == 100) {
+                board.setRule(Rule.LIFE);
+                engine.setRule(Rule.LIFE);
+            }
+            board.step();
+            engine.step();
+            assertEquals(engine.getGeneration(), board.getGeneration(), what);
+            assertRows(engine, board, what + " generation " + engine.getGeneration());
+        }
+    }
+
+    /**
+     * Check every row of a board off the heap against a LifeEngine
+     */
+    private static void assertRows(LifeEngine engine, OffHeapBoard board, String what) {
+        long[] expected = new long[engine.getWords()];
+        long[] row = new long[board.getWords()];
+        for (int r = 0; r < board.getHeight(); r++) {
+            engine.getRow(r, expected);
+            board.getRow(r, row);
+            assertArrayEquals(expected, row, what + " row " + r);
+        }
+        assertEquals(engine.population(), board.population(), what);
+    }
+}
@@ -0,0 +1,70 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Checks patterns read back as they were written
+ *
+ * Boards of sizes that are and aren't powers of two, wider than tall
+ * and taller than wide, are written in each format and read back onto a
+ * board of the same size. Macrocell only keeps the live part, which is
+ * read back in the middle, so it is compared from the top left live cell.
+ */
+
+public class PatternFileTest {
+
+    private static final int[][] SIZES = {{5, 7}, {8, 8}, {64, 64}, {300, 20}, {20, 300}, {513, 100}, {9, 200}};
+
+    @Test
+    public void formatsReadBackAsWritten(@TempDir File dir) throws IOException {
+        for (String name : new String[] {"board.rle", "board.mc", "board.cells", "board.sav"})
+            for (int[] size : SIZES)
+                for (double density : new double[] {0, 0.02, 0.4}) {
+                    String what = name + " " + size[0] + "x" + size[1] + " at " + density;
+                    LifeEngine board = new LifeEngine(size[0], size[1]);
+                    board.setRule(Rule.HIGHLIFE);
+                    if (density > 0) {
+                        board.randomize(size[0] * 31L + size[1], density);
+                        // Out in the last leaf, which may be cut off by the board's edge
+                        board.set(size[1] - 1, size[0] - 1, true);
+                    }
+                    File file = new File(dir, name);
+                    PatternFile.write(file, board);
+                    LifeEngine read = PatternFile.read(file, size[0], size[1]);
+                    assertEquals(board.getWidth(), read.getWidth(), what);
+                    assertEquals(board.getHeight(), read.getHeight(), what);
+                    // Plaintext has no rule
+                    if (!name.endsWith(".cells"))
+                        assertEquals(Rule.HIGHLIFE, read.getRule(), what);
+                    assertEquals(board.population(), read.population(), what);
+                    int[] from = first(board);
+                    int[] to = first(read);
+                    for (int r = 0; r + from[0] < size[1]; r++)
+                        for (int c = 0; c + from[1] < size[0]; c++)
+                            if (board.get(r + from[0], c + from[1]) != read.get(r + to[0], c + to[1]))
+                                assertEquals(board.get(r + from[0], c + from[1]), read.get(r + to[0], c + to[1]),
+                                        what + " at " + r + "," + c);
+                }
+    }
+
+    /**
+     * Return the top row and leftmost column with a live cell, 0 if there are none
+     */
+    private static int[] first(LifeEngine board) {
+        int top = board.getHeight();
+        int left = board.getWidth();
+        for (int r = 0; r < board.getHeight(); r++)
+            for (int c = 0; c < board.getWidth(); c++)
+                if (board.get(r, c)) {
+                    top = Math.min(top, r);
+                    left = Math.min(left, c);
+                }
+        return top == board.getHeight() ? new int[2] : new int[] {top, left};
+    }
+}
@@ -0,0 +1,117 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Checks the endless plane steps the same as one LifeEngine
+ *
+ * Soups are put on a plane across the corners of chunks, at negative
+ * rows and columns too, and on a board big enough that nothing reaches
+ * its edges to wrap, and every cell is compared after each generation.
+ * Planes written as RLE are read back and compared with what was
+ * written, and B0 rules are turned away.
+ */
+
+public class SparseBoardTest {
+
+    private static final int SIDE = 512;
+    private static final int SOUP = 40;
+
+    @Test
+    public void soupsMatchOneBoard() {
+        Rule[] rules = {Rule.LIFE, Rule.HIGHLIFE, Rule.MORLEY, Rule.forName("B36/S245")};
+        int[][] corners = {{0, 0}, {-20, -20}, {-1000, 3000}, {40, -64}};
+        for (Rule rule : rules)
+            for (int[] corner : corners) {
+                String what = rule + " at " + corner[0] + "," + corner[1];
+                LifeEngine board = new LifeEngine(SIDE, SIDE);
+                board.setRule(rule);
+                LifeEngine soup = new LifeEngine(SOUP, SOUP);
+                soup.randomize(corner[0] * 31L + corner[1], 0.4);
+                int offset = (SIDE - SOUP) / 2;
+                for (int r = 0; r < SOUP; r++)
+                    for (int c = 0; c < SOUP; c++)
+                        board.set(offset + r, offset + c, soup.get(r, c));
+                SparseBoard plane = new SparseBoard();
+                plane.setRule(rule);
+                plane.load(soup, corner[0] + offset, corner[1] + offset);
+                for (int g = 0; g < 200; g++) {
+                    board.step();
+                    plane.step();
+                    assertSame(board, plane, corner[0], corner[1], what + " generation " + plane.getGeneration());
+                }
+            }
+    }
+
+    @Test
+    public void rleReadsBackAsWritten(@TempDir File dir) throws IOException {
+        SparseBoard plane = new SparseBoard();
+        plane.setRule(Rule.HIGHLIFE);
+        plane.setGeneration(12);
+        // A glider heading away up and left, a block, and a line across chunk edges
+        int[][] glider = {{0, 1}, {0, 2}, {1, 0}, {1, 2}, {2, 2}};
+        for (int[] cell : glider)
+            plane.set(-300 + cell[0], -450 + cell[1], true);
+        plane.set(5, 5, true);
+        plane.set(5, 6, true);
+        plane.set(6, 5, true);
+        plane.set(6, 6, true);
+        for (int c = 30; c < 200; c++)
+            if (c % 50 != 0)
+                plane.set(70, c, true);
+        plane.set(127, 63, true);
+        plane.set(127, 64, true);
+        File file = new File(dir, "plane.rle");
+        for (int round = 0; round < 2; round++) {
+            PatternFile.write(file, plane);
+            LifeEngine board = PatternFile.read(file, 1, 1);
+            int top = plane.getTop();
+            int left = plane.getLeft();
+            assertEquals(plane.getRight() - left + 1, board.getWidth());
+            assertEquals(plane.getBottom() - top + 1, board.getHeight());
+            assertEquals(Rule.HIGHLIFE, board.getRule());
+            assertEquals(plane.getGeneration(), board.getGeneration());
+            assertSame(board, plane, top, left, "round " + round);
+            for (int g = 0; g < 100; g++)
+                plane.step();
+        }
+    }
+
+    @Test
+    public void emptyPlaneWritesAnEmptyPattern(@TempDir File dir) throws IOException {
+        File file = new File(dir, "empty.rle");
+        PatternFile.write(file, new SparseBoard());
+        assertEquals(0, PatternFile.read(file, 1, 1).population());
+    }
+
+    @Test
+    public void b0RulesAreTurnedAway(@TempDir File dir) {
+        Rule b0 = Rule.forName("B0/S8");
+        assertThrows(IllegalArgumentException.class, () -> new SparseBoard().setRule(b0));
+        assertThrows(IllegalArgumentException.class, () -> new AshClassifier(b0));
+        assertThrows(IllegalArgumentException.class, () -> new SoupSearch(64, 64, 16, 0.5, b0, 100));
+        assertThrows(IllegalArgumentException.class,
+                () -> PatternFile.write(new File(dir, "plane.mc"), new SparseBoard()));
+        assertEquals(1, LifeBatch.run(new String[] {"--width=64", "--height=64", "--rule=B0/S8", "--unbounded",
+                "--generations=1"}, System.out));
+    }
+
+    /**
+     * Check a board matches the plane with the board's top left at top, left, and nothing is
+     * alive on the plane off the board
+     */
+    private static void assertSame(LifeEngine board, SparseBoard plane, int top, int left, String what) {
+        for (int r = 0; r < board.getHeight(); r++)
+            for (int c = 0; c < board.getWidth(); c++)
+                if (board.get(r, c) != plane.get(top + r, left + c))
+                    assertEquals(board.get(r, c), plane.get(top + r, left + c), what + " at " + r + "," + c);
+        assertEquals(board.population(), plane.population(), what);
+    }
+}
@@ -0,0 +1,157 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author Quinn Brittain
+ *
+ * Checks a board split into stripes steps the same as one LifeEngine
+ *
+ * Stripes are stepped by StripeWorkers on threads of this JVM, linked
+ * over loopback just as StripeCluster links them, so the population and
+ * hash can be compared with one board after every generation. Gliders
+ * are sent across the edges between stripes and round the wrap, and the
+ * cluster itself is run in other processes on the same soup.
+ */
+
+public class StripeTest {
+
+    private static final int WIDTH = 100;
+    private static final int HEIGHT = 48;
+
+    @Test
+    public void soupMatchesOneBoard() throws Exception {
+        for (int workers = 1; workers <= 4; workers++)
+            for (int depth = 1; depth <= 3; depth++) {
+                LifeEngine board = new LifeEngine(WIDTH, HEIGHT);
+                board.setRule(Rule.HIGHLIFE);
+                board.randomize(7, 0.4);
+                compare(board, workers, depth, 60);
+            }
+    }
+
+    @Test
+    public void glidersCrossStripesAndWrap() throws Exception {
+        for (int workers = 1; workers <= 4; workers++)
+            for (int depth = 1; depth <= 2; depth++) {
+                LifeEngine board = new LifeEngine(WIDTH, HEIGHT);
+                // One heading down and right across every stripe and the bottom edge,
+                // one heading up and left across the top edge
+                glider(board, HEIGHT / workers - 2, 10, 1, 1);
+                glider(board, 1, WIDTH - 3, -1, -1);
+                compare(board, workers, depth, 4 * HEIGHT + 8);
+            }
+    }
+
+    @Test
+    public void clusterMatchesOneBoard() throws IOException {
+        for (int workers = 1; workers <= 3; workers++) {
+            StripeCluster cluster = new StripeCluster(WIDTH, HEIGHT, workers, 2, 1, Rule.LIFE);
+            cluster.run(11, 0.5, 50);
+            LifeEngine board = new LifeEngine(WIDTH, HEIGHT);
+            board.randomize(11, 0.5);
+            for (int g = 0; g < 50; g++)
+                board.step();
+            assertEquals(board.population(), cluster.getPopulation(), workers + " workers");
+            assertEquals(board.getHash(), cluster.getHash(), workers + " workers");
+        }
+    }
+
+    /**
+     * Put a glider with its top left at row, col, heading down if down is 1 or up if -1,
+     * and right if right is 1 or left if -1
+     */
+    private static void glider(LifeEngine board, int row, int col, int down, int right) {
+        int[][] cells = {{0, 1}, {1, 2}, {2, 0}, {2, 1}, {2, 2}};
+        for (int[] cell : cells) {
+            int r = down > 0 ? cell[0] : 2 - cell[0];
+            int c = right > 0 ? cell[1] : 2 - cell[1];
+            board.set(Math.floorMod(row + r, board.getHeight()), Math.floorMod(col + c, board.getWidth()), true);
+        }
+    }
+
+    /**
+     * Split a copy of the board between workers, then step both a generation at a time and then
+     * a few at a time, comparing the population and hash each time
+     */
+    private static void compare(LifeEngine board, int workers, int depth, int generations) throws Exception {
+        List<StripeWorker> stripes = link(board.getWidth(), board.getHeight(), workers, depth);
+        ExecutorService threads = Executors.newFixedThreadPool(workers);
+        try {
+            for (StripeWorker stripe : stripes) {
+                stripe.getEngine().setRule(board.getRule());
+                stripe.load(board);
+            }
+            String what = workers + " workers, halo " + depth;
+            for (int g = 0; g < generations; g++)
+                step(board, stripes, threads, 1, what);
+            for (int n = 1; n <= depth * 3; n++)
+                step(board, stripes, threads, n, what);
+        } finally {
+            threads.shutdown();
+            for (StripeWorker stripe : stripes)
+                stripe.close();
+        }
+    }
+
+    private static void step(LifeEngine board, List<StripeWorker> stripes, ExecutorService threads, int n,
+            String what) throws Exception {
+        List<Future<?>> running = new ArrayList<>();
+        for (StripeWorker stripe : stripes)
+            running.add(threads.submit(() -> {
+                stripe.run(n);
+                return null;
+            }));
+        for (Future<?> done : running)
+            done.get();
+        for (int i = 0; i < n; i++)
+            board.step();
+        long population = 0;
+        long hash = 0;
+        for (StripeWorker stripe : stripes) {
+            population += stripe.population();
+            hash ^= stripe.hash();
+        }
+        assertEquals(board.population(), population, what + " at generation " + board.getGeneration());
+        assertEquals(board.getHash(), hash, what + " at generation " + board.getGeneration());
+    }
+
+    /**
+     * Make workers for stripes of a board, each linked to the stripes above and below
+     */
+    private static List<StripeWorker> link(int width, int height, int workers, int depth) throws IOException {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        List<ServerSocketChannel> servers = new ArrayList<>();
+        List<StripeWorker> stripes = new ArrayList<>();
+        try {
+            for (int i = 0; i < workers; i++)
+                servers.add(ServerSocketChannel.open().bind(new InetSocketAddress(loopback, 0)));
+            SocketChannel[] down = new SocketChannel[workers];
+            SocketChannel[] up = new SocketChannel[workers];
+            for (int i = 0; i < workers; i++) {
+                down[i] = SocketChannel.open(servers.get((i + 1) % workers).getLocalAddress());
+                up[(i + 1) % workers] = servers.get((i + 1) % workers).accept();
+            }
+            for (int i = 0; i < workers; i++) {
+                int first = height * i / workers;
+                int last = height * (i + 1) / workers;
+                stripes.add(new StripeWorker(width, first, last - first, depth, up[i], down[i]));
+            }
+            return stripes;
+        } finally {
+            for (ServerSocketChannel server : servers)
+                server.close();
+        }
+    }
+}